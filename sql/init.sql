@@ -1,6 +1,8 @@
 -- Создание схемы
 CREATE SCHEMA IF NOT EXISTS s408402;
 
+-- Приложение берёт id из TimeOrderedIds (53 бита, время создания в старших битах), последовательности
+-- остались для строк, добавленных вручную, и для id, выданных до перехода
 -- Создание последовательности для users
 CREATE SEQUENCE IF NOT EXISTS s408402.users_id_seq
     INCREMENT 1
@@ -15,10 +17,15 @@ CREATE TABLE IF NOT EXISTS s408402.users
     id bigint NOT NULL DEFAULT nextval('s408402.users_id_seq'::regclass),
     username character varying(255),
     password character varying(255),
+    admin boolean NOT NULL DEFAULT false,
     CONSTRAINT users_pkey PRIMARY KEY (id),
     CONSTRAINT username_unique UNIQUE (username)
     );
 
+-- Администраторы (AdminOnly): обслуживание и общие для всех настройки. Назначаются только вручную:
+-- UPDATE s408402.users SET admin = true WHERE username = '...'
+ALTER TABLE s408402.users ADD COLUMN IF NOT EXISTS admin boolean NOT NULL DEFAULT false;
+
 -- Создание последовательности для results_table
 CREATE SEQUENCE IF NOT EXISTS s408402.results_table_id_seq
     INCREMENT 1
@@ -27,7 +34,35 @@ CREATE SEQUENCE IF NOT EXISTS s408402.results_table_id_seq
     MAXVALUE 9223372036854775807
     CACHE 1;
 
--- Создание таблицы results_table
+-- Переход на таблицу, секционированную по месяцам (для баз, где results_table ещё обычная таблица).
+-- Старая таблица переименовывается и ниже подключается секцией за всё время до конца текущего месяца.
+-- Когда добавлены старые точки, неизвестно: им ставится время перехода
+DO
+$$
+BEGIN
+    IF EXISTS (SELECT 1
+               FROM pg_class c
+                        JOIN pg_namespace n ON n.oid = c.relnamespace
+               WHERE n.nspname = 's408402'
+                 AND c.relname = 'results_table'
+                 AND c.relkind = 'r') THEN
+        ALTER TABLE s408402.results_table ADD COLUMN IF NOT EXISTS hit_mask integer;
+        EXECUTE format('ALTER TABLE s408402.results_table ADD COLUMN IF NOT EXISTS created_at timestamp NOT NULL DEFAULT %L',
+                       now()::timestamp);
+        ALTER TABLE s408402.results_table ALTER COLUMN created_at SET DEFAULT now();
+        DROP TRIGGER IF EXISTS user_stats_insert ON s408402.results_table;
+        DROP TRIGGER IF EXISTS user_stats_update ON s408402.results_table;
+        DROP TRIGGER IF EXISTS user_stats_delete ON s408402.results_table;
+        ALTER TABLE s408402.results_table RENAME TO results_table_legacy;
+        ALTER TABLE s408402.results_table_legacy RENAME CONSTRAINT results_table_pkey TO results_table_legacy_pkey;
+        ALTER INDEX IF EXISTS s408402.idx_results_table_user_id_id RENAME TO results_table_legacy_user_id_id_idx;
+        DROP INDEX IF EXISTS s408402.idx_results_table_user_id;
+    END IF;
+END
+$$;
+
+-- Создание таблицы results_table, секции по месяцам created_at.
+-- Ключ секционирования обязан входить в первичный ключ, id уникален и сам по себе (последовательность)
 CREATE TABLE IF NOT EXISTS s408402.results_table
 (
     id bigint NOT NULL DEFAULT nextval('s408402.results_table_id_seq'::regclass),
@@ -35,14 +70,461 @@ CREATE TABLE IF NOT EXISTS s408402.results_table
     y double precision,
     r integer,
     result boolean,
+    hit_mask integer,
     user_id bigint NOT NULL,
-    CONSTRAINT results_table_pkey PRIMARY KEY (id),
+    created_at timestamp NOT NULL DEFAULT now(),
+    CONSTRAINT results_table_pkey PRIMARY KEY (id, created_at),
     CONSTRAINT fk_user FOREIGN KEY (user_id)
     REFERENCES s408402.users (id) MATCH SIMPLE
     ON UPDATE NO ACTION
     ON DELETE NO ACTION
-    );
+    ) PARTITION BY RANGE (created_at);
+
+-- Маска попаданий для всех r (для уже существующих таблиц)
+ALTER TABLE s408402.results_table ADD COLUMN IF NOT EXISTS hit_mask integer;
 
 -- Создание индексов для улучшения производительности
-CREATE INDEX IF NOT EXISTS idx_results_table_user_id ON s408402.results_table(user_id);
-CREATE INDEX IF NOT EXISTS idx_users_username ON s408402.users(username);
\ No newline at end of file
+-- (user_id, id): история пользователя читается по порядку id страницами от курсора.
+-- Индекс секционированной таблицы создаётся в каждой секции
+CREATE INDEX IF NOT EXISTS idx_results_table_user_id_id ON s408402.results_table(user_id, id);
+CREATE INDEX IF NOT EXISTS idx_users_username ON s408402.users(username);
+
+-- Подключение старой таблицы секцией; её индекс (user_id, id) подходит и становится частью общего
+DO
+$$
+BEGIN
+    IF to_regclass('s408402.results_table_legacy') IS NOT NULL
+        AND NOT EXISTS (SELECT 1 FROM pg_inherits WHERE inhrelid = 's408402.results_table_legacy'::regclass) THEN
+        EXECUTE format('ALTER TABLE s408402.results_table ATTACH PARTITION s408402.results_table_legacy ' ||
+                       'FOR VALUES FROM (MINVALUE) TO (%L)',
+                       date_trunc('month', now()) + interval '1 month');
+    END IF;
+END
+$$;
+
+-- Верхняя граница секции results_table ('FOR VALUES FROM (...) TO (''...'')')
+CREATE OR REPLACE FUNCTION s408402.results_partition_upper(partition regclass) RETURNS timestamp
+    LANGUAGE sql
+    STABLE AS
+$$
+SELECT substring(pg_get_expr(c.relpartbound, c.oid) FROM 'TO \(''([^'']+)''\)')::timestamp
+FROM pg_class c
+WHERE c.oid = partition
+$$;
+
+-- Секции на текущий и months_ahead следующих месяцев, уже существующие пропускаются.
+-- Секции по умолчанию нет: точка вне секций не вставится, поэтому задача обслуживания
+-- (PartitionService) создаёт их заранее
+CREATE OR REPLACE FUNCTION s408402.results_create_partitions(months_ahead integer) RETURNS integer
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    month      timestamp := date_trunc('month', now());
+    covered_to timestamp;
+    created    integer   := 0;
+    name       text;
+BEGIN
+    SELECT max(s408402.results_partition_upper(i.inhrelid))
+    INTO covered_to
+    FROM pg_inherits i
+    WHERE i.inhparent = 's408402.results_table'::regclass;
+    IF covered_to IS NOT NULL AND covered_to > month THEN
+        month := covered_to;
+    END IF;
+    WHILE month <= date_trunc('month', now()) + make_interval(months => months_ahead) LOOP
+        name := 'results_table_p' || to_char(month, 'YYYYMM');
+        EXECUTE format('CREATE TABLE IF NOT EXISTS s408402.%I PARTITION OF s408402.results_table ' ||
+                       'FOR VALUES FROM (%L) TO (%L)', name, month, month + interval '1 month');
+        created := created + 1;
+        month := month + interval '1 month';
+    END LOOP;
+    RETURN created;
+END;
+$$;
+
+-- Создаёт недостающие месячные секции для точек, отправленных с from_ts по to_ts (импорт истории).
+-- Месяц, уже входящий в другую секцию (например, в перенесённую старую таблицу), пропускается
+CREATE OR REPLACE FUNCTION s408402.results_ensure_partitions(from_ts timestamp, to_ts timestamp) RETURNS integer
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    month   timestamp := date_trunc('month', from_ts);
+    created integer   := 0;
+    name    text;
+BEGIN
+    WHILE month <= to_ts LOOP
+        name := 'results_table_p' || to_char(month, 'YYYYMM');
+        IF to_regclass('s408402.' || name) IS NULL THEN
+            BEGIN
+                EXECUTE format('CREATE TABLE s408402.%I PARTITION OF s408402.results_table ' ||
+                               'FOR VALUES FROM (%L) TO (%L)', name, month, month + interval '1 month');
+                created := created + 1;
+            EXCEPTION
+                -- пересечение с другой секцией или параллельный импорт успел создать эту
+                WHEN invalid_object_definition OR duplicate_table THEN
+                    NULL;
+            END;
+        END IF;
+        month := month + interval '1 month';
+    END LOOP;
+    RETURN created;
+END;
+$$;
+
+-- Отключает секции, целиком лежащие раньше keep_months последних месяцев.
+-- Отключённая секция остаётся отдельной таблицей с теми же данными, из запросов к results_table,
+-- из сводки user_stats и из счётчиков result_counts её точки пропадают (DETACH триггеры удаления
+-- не вызывает, вычитаем сами)
+CREATE OR REPLACE FUNCTION s408402.results_detach_partitions(keep_months integer) RETURNS SETOF text
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    part record;
+BEGIN
+    FOR part IN
+        SELECT i.inhrelid::regclass AS partition
+        FROM pg_inherits i
+        WHERE i.inhparent = 's408402.results_table'::regclass
+          AND s408402.results_partition_upper(i.inhrelid)
+            <= date_trunc('month', now()) - make_interval(months => keep_months)
+        ORDER BY s408402.results_partition_upper(i.inhrelid)
+        LOOP
+            EXECUTE format('UPDATE s408402.user_stats s SET total = s.total - d.total, hits = s.hits - d.hits ' ||
+                           'FROM (SELECT user_id, r, count(*) AS total, count(*) FILTER (WHERE result) AS hits ' ||
+                           'FROM %s GROUP BY user_id, r) d WHERE s.user_id = d.user_id AND s.r = d.r',
+                           part.partition);
+            -- иначе повторная отправка точки из секции посчиталась бы, а сама точка в results_table не вернулась
+            EXECUTE format('DELETE FROM s408402.result_counts c USING %s p ' ||
+                           'WHERE c.user_id = p.user_id AND c.x = p.x AND c.y = p.y AND c.r = p.r',
+                           part.partition);
+            EXECUTE format('ALTER TABLE s408402.results_table DETACH PARTITION %s', part.partition);
+            RETURN NEXT part.partition::text;
+        END LOOP;
+END;
+$$;
+
+SELECT s408402.results_create_partitions(3);
+
+-- Контрольные точки фоновых задач (перерасчёт результатов)
+CREATE TABLE IF NOT EXISTS s408402.backfill_checkpoint
+(
+    job character varying(64) NOT NULL,
+    last_id bigint NOT NULL,
+    updated_at timestamp NOT NULL DEFAULT now(),
+    CONSTRAINT backfill_checkpoint_pkey PRIMARY KEY (job)
+    );
+
+-- Область, установленная через PUT /area (AreaService), одна строка; без неё используется встроенная.
+-- При запуске приложения устанавливается снова (AreaRestoreService)
+CREATE TABLE IF NOT EXISTS s408402.active_area
+(
+    id integer NOT NULL DEFAULT 1,
+    source text NOT NULL,
+    updated_at timestamp NOT NULL DEFAULT now(),
+    CONSTRAINT active_area_pkey PRIMARY KEY (id),
+    CONSTRAINT active_area_single CHECK (id = 1)
+    );
+
+-- Именованные области каталога (PUT /area/catalog/{name}), тоже устанавливаются заново при запуске
+CREATE TABLE IF NOT EXISTS s408402.area_catalog
+(
+    name character varying(255) NOT NULL,
+    source text NOT NULL,
+    updated_at timestamp NOT NULL DEFAULT now(),
+    CONSTRAINT area_catalog_pkey PRIMARY KEY (name)
+    );
+
+-- Сводка по пользователям: число точек и попаданий для каждого r.
+-- Ведётся триггерами на results_table в той же транзакции, что и запись точек,
+-- так что чтение статистики не зависит от числа точек
+CREATE TABLE IF NOT EXISTS s408402.user_stats
+(
+    user_id bigint NOT NULL,
+    r integer NOT NULL,
+    total bigint NOT NULL DEFAULT 0,
+    hits bigint NOT NULL DEFAULT 0,
+    first_at timestamp,
+    last_at timestamp,
+    CONSTRAINT user_stats_pkey PRIMARY KEY (user_id, r),
+    CONSTRAINT fk_user_stats_user FOREIGN KEY (user_id)
+    REFERENCES s408402.users (id) MATCH SIMPLE
+    ON UPDATE NO ACTION
+    ON DELETE CASCADE
+    );
+
+-- Архив старых точек (ArchiveService): точки пользователя за месяц, вынесенные из results_table
+-- одним сжатым блоком (формат в PointArchive). Индексы results_table их больше не содержат
+CREATE TABLE IF NOT EXISTS s408402.results_archive
+(
+    user_id bigint NOT NULL,
+    period timestamp NOT NULL,
+    points integer NOT NULL,
+    -- первый и последний id в блоке: страница истории читает только блоки, которые её задевают
+    min_id bigint,
+    max_id bigint,
+    data bytea NOT NULL,
+    CONSTRAINT results_archive_pkey PRIMARY KEY (user_id, period),
+    CONSTRAINT fk_results_archive_user FOREIGN KEY (user_id)
+    REFERENCES s408402.users (id) MATCH SIMPLE
+    ON UPDATE NO ACTION
+    ON DELETE CASCADE
+    );
+
+-- Границы id (для уже существующих таблиц): у старых блоков они пусты до следующей записи блока,
+-- такие блоки читаются для любой страницы
+ALTER TABLE s408402.results_archive ADD COLUMN IF NOT EXISTS min_id bigint;
+ALTER TABLE s408402.results_archive ADD COLUMN IF NOT EXISTS max_id bigint;
+
+-- Сводка по архивным точкам в том же виде, что user_stats: архивные точки остаются в user_stats,
+-- а пересчёт сводки берёт их отсюда
+CREATE TABLE IF NOT EXISTS s408402.results_archive_stats
+(
+    user_id bigint NOT NULL,
+    r integer NOT NULL,
+    total bigint NOT NULL DEFAULT 0,
+    hits bigint NOT NULL DEFAULT 0,
+    first_at timestamp,
+    last_at timestamp,
+    CONSTRAINT results_archive_stats_pkey PRIMARY KEY (user_id, r),
+    CONSTRAINT fk_results_archive_stats_user FOREIGN KEY (user_id)
+    REFERENCES s408402.users (id) MATCH SIMPLE
+    ON UPDATE NO ACTION
+    ON DELETE CASCADE
+    );
+
+-- Триггеры уровня оператора: пачка вставок или массовый UPDATE перерасчёта
+-- дают одно обновление на пару (user_id, r), а не на каждую строку
+CREATE OR REPLACE FUNCTION s408402.user_stats_apply() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO s408402.user_stats AS s (user_id, r, total, hits, first_at, last_at)
+        SELECT user_id, r, count(*), count(*) FILTER (WHERE result), min(created_at), max(created_at)
+        FROM new_rows
+        GROUP BY user_id, r
+        ON CONFLICT (user_id, r) DO UPDATE
+            SET total = s.total + EXCLUDED.total,
+                hits = s.hits + EXCLUDED.hits,
+                first_at = least(s.first_at, EXCLUDED.first_at),
+                last_at = greatest(s.last_at, EXCLUDED.last_at);
+    ELSIF TG_OP = 'UPDATE' THEN
+        -- приложение меняет только result и hit_mask, user_id и r у строки прежние
+        UPDATE s408402.user_stats s
+        SET hits = s.hits + d.delta
+        FROM (SELECT n.user_id, n.r, sum(n.result::integer - o.result::integer) AS delta
+              FROM new_rows n
+                       JOIN old_rows o ON o.id = n.id
+              GROUP BY n.user_id, n.r) d
+        WHERE s.user_id = d.user_id
+          AND s.r = d.r
+          AND d.delta <> 0;
+    ELSE
+        UPDATE s408402.user_stats s
+        SET total = s.total - d.total,
+            hits = s.hits - d.hits
+        FROM (SELECT user_id, r, count(*) AS total, count(*) FILTER (WHERE result) AS hits
+              FROM old_rows
+              GROUP BY user_id, r) d
+        WHERE s.user_id = d.user_id
+          AND s.r = d.r;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS user_stats_insert ON s408402.results_table;
+CREATE TRIGGER user_stats_insert
+    AFTER INSERT ON s408402.results_table
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION s408402.user_stats_apply();
+
+DROP TRIGGER IF EXISTS user_stats_update ON s408402.results_table;
+CREATE TRIGGER user_stats_update
+    AFTER UPDATE ON s408402.results_table
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION s408402.user_stats_apply();
+
+DROP TRIGGER IF EXISTS user_stats_delete ON s408402.results_table;
+CREATE TRIGGER user_stats_delete
+    AFTER DELETE ON s408402.results_table
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION s408402.user_stats_apply();
+
+-- Пересчёт сводки по results_table, архиву и повторным отправкам (после ручных правок базы или для уже
+-- существующих точек). Записи точек на это время блокируются, чтобы пересчёт не разошёлся с триггерами
+CREATE OR REPLACE FUNCTION s408402.user_stats_rebuild() RETURNS bigint
+    LANGUAGE plpgsql AS
+$$
+DECLARE
+    n bigint;
+BEGIN
+    LOCK TABLE s408402.results_table IN SHARE MODE;
+    LOCK TABLE s408402.result_counts IN SHARE MODE;
+    DELETE FROM s408402.user_stats s
+    WHERE NOT EXISTS (SELECT 1 FROM s408402.results_table p WHERE p.user_id = s.user_id AND p.r = s.r)
+      AND NOT EXISTS (SELECT 1 FROM s408402.results_archive_stats a WHERE a.user_id = s.user_id AND a.r = s.r);
+    INSERT INTO s408402.user_stats AS s (user_id, r, total, hits, first_at, last_at)
+    SELECT user_id, r, sum(total), sum(hits), min(first_at), max(last_at)
+    FROM (SELECT user_id, r, count(*) AS total, count(*) FILTER (WHERE result) AS hits,
+                 min(created_at) AS first_at, max(created_at) AS last_at
+          FROM s408402.results_table
+          GROUP BY user_id, r
+          UNION ALL
+          SELECT user_id, r, total, hits, first_at, last_at
+          FROM s408402.results_archive_stats
+          UNION ALL
+          SELECT user_id, r, sum(occurrences - 1), coalesce(sum(occurrences - 1) FILTER (WHERE result), 0),
+                 NULL, max(last_seen)
+          FROM s408402.result_counts
+          GROUP BY user_id, r) t
+    GROUP BY user_id, r
+    ON CONFLICT (user_id, r) DO UPDATE
+        SET total = EXCLUDED.total,
+            hits = EXCLUDED.hits,
+            first_at = EXCLUDED.first_at,
+            last_at = EXCLUDED.last_at;
+    GET DIAGNOSTICS n = ROW_COUNT;
+    RETURN n;
+END;
+$$;
+
+-- Повторные отправки точек. В results_table хранится только первая отправка точки (user_id, x, y, r),
+-- здесь - её id, сколько раз точку отправили и когда последний раз. Пишется одним
+-- INSERT ... ON CONFLICT DO UPDATE вместе с results_table (ResultUpsert).
+-- Уникальный ключ на самой results_table невозможен: ключ секционированной таблицы содержит created_at
+CREATE TABLE IF NOT EXISTS s408402.result_counts
+(
+    user_id bigint NOT NULL,
+    x integer NOT NULL,
+    y double precision NOT NULL,
+    r integer NOT NULL,
+    result_id bigint NOT NULL,
+    -- результат хранимой отправки, NULL у счётчиков, заведённых до появления столбца для архивных точек
+    result boolean,
+    occurrences bigint NOT NULL,
+    last_seen timestamp NOT NULL,
+    CONSTRAINT result_counts_pkey PRIMARY KEY (user_id, x, y, r),
+    CONSTRAINT fk_result_counts_user FOREIGN KEY (user_id)
+    REFERENCES s408402.users (id) MATCH SIMPLE
+    ON UPDATE NO ACTION
+    ON DELETE CASCADE
+    );
+
+-- Переход на хранение без повторов: счётчики по уже накопленным точкам, повторы удаляются.
+-- Триггер удаления вычитает их из user_stats, пересчёт возвращает их туда как повторные отправки.
+-- Выполняется, пока счётчиков нет
+DO
+$$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM s408402.result_counts) THEN
+        INSERT INTO s408402.result_counts (user_id, x, y, r, result_id, result, occurrences, last_seen)
+        SELECT user_id, x, y, r, min(id), (array_agg(result ORDER BY id))[1], count(*), max(created_at)
+        FROM s408402.results_table
+        WHERE x IS NOT NULL AND y IS NOT NULL AND r IS NOT NULL
+        GROUP BY user_id, x, y, r;
+        DELETE FROM s408402.results_table p
+        USING s408402.result_counts c
+        WHERE c.user_id = p.user_id AND c.x = p.x AND c.y = p.y AND c.r = p.r
+          AND p.id <> c.result_id;
+        IF EXISTS (SELECT 1 FROM s408402.user_stats) THEN
+            PERFORM s408402.user_stats_rebuild();
+        END IF;
+    END IF;
+END
+$$;
+
+-- Повторные отправки в сводке: первую отправку точки считают триггеры results_table, остальные
+-- occurrences - 1 - триггеры result_counts, так что user_stats считает отправки, а last_at - время
+-- последней из них. Повтор получает результат хранимой отправки, он хранится здесь же (result)
+DO
+$$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.columns
+                   WHERE table_schema = 's408402' AND table_name = 'result_counts' AND column_name = 'result') THEN
+        ALTER TABLE s408402.result_counts ADD COLUMN result boolean;
+        -- у точек, уже ушедших в архив, результат остаётся NULL: его берёт из блоков архива
+        -- ArchiveService, до того их повторы считаются промахами
+        UPDATE s408402.result_counts c
+        SET result = p.result
+        FROM s408402.results_table p
+        WHERE p.user_id = c.user_id AND p.id = c.result_id;
+        IF EXISTS (SELECT 1 FROM s408402.user_stats) THEN
+            PERFORM s408402.user_stats_rebuild();
+        END IF;
+    END IF;
+END
+$$;
+
+-- перерасчёт (BackfillDAOImpl) обновляет результат повторов по id хранимой отправки
+CREATE INDEX IF NOT EXISTS idx_result_counts_result_id ON s408402.result_counts(result_id);
+-- счётчики архивных точек без результата, которые ещё заполняет ArchiveService
+CREATE INDEX IF NOT EXISTS idx_result_counts_unknown ON s408402.result_counts(user_id) WHERE result IS NULL;
+
+CREATE OR REPLACE FUNCTION s408402.result_counts_apply() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        -- точка, отправленная в пачке несколько раз, вставляется сразу с occurrences > 1
+        INSERT INTO s408402.user_stats AS s (user_id, r, total, hits, last_at)
+        SELECT user_id, r, sum(occurrences - 1), coalesce(sum(occurrences - 1) FILTER (WHERE result), 0),
+               max(last_seen)
+        FROM new_rows
+        WHERE occurrences > 1
+        GROUP BY user_id, r
+        ON CONFLICT (user_id, r) DO UPDATE
+            SET total = s.total + EXCLUDED.total,
+                hits = s.hits + EXCLUDED.hits,
+                last_at = greatest(s.last_at, EXCLUDED.last_at);
+    ELSIF TG_OP = 'UPDATE' THEN
+        -- повторные отправки (ResultUpsert) и смена результата перерасчётом
+        UPDATE s408402.user_stats s
+        SET total = s.total + d.total,
+            hits = s.hits + d.hits,
+            last_at = greatest(s.last_at, d.last_at)
+        FROM (SELECT n.user_id, n.r, sum(n.occurrences - o.occurrences) AS total,
+                     sum(CASE WHEN n.result THEN n.occurrences - 1 ELSE 0 END
+                         - CASE WHEN o.result THEN o.occurrences - 1 ELSE 0 END) AS hits,
+                     max(n.last_seen) AS last_at
+              FROM new_rows n
+                       JOIN old_rows o USING (user_id, x, y, r)
+              GROUP BY n.user_id, n.r) d
+        WHERE s.user_id = d.user_id
+          AND s.r = d.r;
+    ELSE
+        UPDATE s408402.user_stats s
+        SET total = s.total - d.total,
+            hits = s.hits - d.hits
+        FROM (SELECT user_id, r, sum(occurrences - 1) AS total,
+                     coalesce(sum(occurrences - 1) FILTER (WHERE result), 0) AS hits
+              FROM old_rows
+              WHERE occurrences > 1
+              GROUP BY user_id, r) d
+        WHERE s.user_id = d.user_id
+          AND s.r = d.r;
+    END IF;
+    RETURN NULL;
+END;
+$$;
+
+DROP TRIGGER IF EXISTS result_counts_insert ON s408402.result_counts;
+CREATE TRIGGER result_counts_insert
+    AFTER INSERT ON s408402.result_counts
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION s408402.result_counts_apply();
+
+DROP TRIGGER IF EXISTS result_counts_update ON s408402.result_counts;
+CREATE TRIGGER result_counts_update
+    AFTER UPDATE ON s408402.result_counts
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION s408402.result_counts_apply();
+
+DROP TRIGGER IF EXISTS result_counts_delete ON s408402.result_counts;
+CREATE TRIGGER result_counts_delete
+    AFTER DELETE ON s408402.result_counts
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION s408402.result_counts_apply();
+
+-- Первое заполнение сводки для уже накопленных точек
+SELECT s408402.user_stats_rebuild() WHERE NOT EXISTS (SELECT 1 FROM s408402.user_stats);
@@ -0,0 +1,66 @@
+package web.backend.lab4.area;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import web.backend.lab4.util.Calculator;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The built-in area of the Calculator against the same area written in the DSL: through the
+ * {@link ActiveArea} call site and through a plain {@link CompiledArea} handle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(AreaBenchmark.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AreaBenchmark {
+    static final int N = 1 << 16;
+
+    private final Calculator calculator = new Calculator();
+    private CompiledArea area;
+    private int[] xs;
+    private double[] ys;
+    private int[] rs;
+
+    @Setup
+    public void setUp() throws AreaSyntaxException {
+        SplittableRandom random = new SplittableRandom(42);
+        xs = new int[N];
+        ys = new double[N];
+        rs = new int[N];
+        for (int i = 0; i < N; i++) {
+            xs[i] = random.nextInt(-5, 6);
+            ys[i] = random.nextDouble(-5, 5);
+            rs[i] = random.nextInt(1, 6);
+        }
+        area = AreaCompiler.compile(ActiveArea.BUILT_IN);
+    }
+
+    @Benchmark
+    public void calculator(Blackhole bh) {
+        ActiveArea.reset();
+        for (int i = 0; i < N; i++) {
+            bh.consume(calculator.calculate(xs[i], ys[i], rs[i]));
+        }
+    }
+
+    @Benchmark
+    public void activeArea(Blackhole bh) {
+        ActiveArea.install(area);
+        for (int i = 0; i < N; i++) {
+            bh.consume(ActiveArea.contains(xs[i], ys[i], rs[i]));
+        }
+    }
+
+    @Benchmark
+    public void compiledHandle(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(area.contains(xs[i], ys[i], rs[i]));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package web.backend.lab4.area;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples per second of {@link AreaEstimator} depending on the number of partitions (= pool threads).
+ * With no shared state in the sampling loop the throughput should grow linearly up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AreaEstimatorBenchmark {
+    private static final int SAMPLES = 1 << 22;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int partitions;
+
+    private ForkJoinPool pool;
+    private AreaEstimator estimator;
+
+    @Setup
+    public void setUp() {
+        pool = new ForkJoinPool(partitions);
+        estimator = new AreaEstimator(ActiveArea.region(), 3, 5, 42, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * One operation is one sample, so the score is samples per second over all partitions.
+     */
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public AreaEstimator.Estimate sample() {
+        return estimator.next(SAMPLES / partitions);
+    }
+}
@@ -0,0 +1,133 @@
+package web.backend.lab4.dao;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.jpa.HibernateHints;
+import org.openjdk.jmh.annotations.*;
+import web.backend.lab4.dto.PointDTO;
+import web.backend.lab4.entity.ResultEntity;
+import web.backend.lab4.entity.UserEntity;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read the history of one user into {@code PointDTO}s, through Hibernate with the mapping of the application:
+ * <ul>
+ *     <li>{@code entity} - before: the user is looked up, every row becomes a managed {@code ResultEntity}
+ *     and is copied into a {@code PointDTO} with the builder;</li>
+ *     <li>{@code projection} - {@link HistoryDAOImpl}: a constructor expression into {@link ResultRow}
+ *     with read-only hints, nothing enters the persistence context.</li>
+ * </ul>
+ * Allocation per read is shown by the GC profiler ({@code gc.alloc.rate.norm}). Needs a PostgreSQL database
+ * with the schema from {@code sql/init.sql}, a user with the test rows is created and deleted by the benchmark:
+ * {@code BENCH_JDBC_URL=jdbc:postgresql://localhost:5432/studs BENCH_JDBC_USER=... BENCH_JDBC_PASSWORD=...
+ * ./gradlew jmh -Pjmh.include=HistoryReadBenchmark -Pjmh.prof=gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryReadBenchmark {
+    private static final String USERNAME = "jmh-history";
+
+    @Param({"1000", "10000"})
+    private int rows;
+
+    @Param({"entity", "projection"})
+    private String readPath;
+
+    private SessionFactory sessionFactory;
+    private long userId;
+
+    @Setup
+    public void setUp() {
+        sessionFactory = new Configuration()
+                .addAnnotatedClass(UserEntity.class)
+                .addAnnotatedClass(ResultEntity.class)
+                .setProperty("hibernate.connection.url", env("BENCH_JDBC_URL", "jdbc:postgresql://localhost:5432/studs"))
+                .setProperty("hibernate.connection.username", env("BENCH_JDBC_USER", "postgres"))
+                .setProperty("hibernate.connection.password", env("BENCH_JDBC_PASSWORD", ""))
+                .buildSessionFactory();
+        deleteUser();
+        sessionFactory.inTransaction(session -> session.doWork(connection -> {
+            try (PreparedStatement user = connection.prepareStatement(
+                    "INSERT INTO s408402.users (username, password) VALUES (?, '') RETURNING id")) {
+                user.setString(1, USERNAME);
+                try (ResultSet resultSet = user.executeQuery()) {
+                    resultSet.next();
+                    userId = resultSet.getLong(1);
+                }
+            }
+            SplittableRandom random = new SplittableRandom(42);
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO s408402.results_table (x, y, r, result, hit_mask, user_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    insert.setInt(1, random.nextInt(-5, 6));
+                    insert.setDouble(2, random.nextDouble(-5, 5));
+                    insert.setInt(3, random.nextInt(1, 6));
+                    insert.setBoolean(4, random.nextBoolean());
+                    insert.setInt(5, random.nextInt(1 << 6));
+                    insert.setLong(6, userId);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() {
+        deleteUser();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public List<PointDTO> read() {
+        try (Session session = sessionFactory.openSession()) {
+            if (readPath.equals("entity")) {
+                session.find(UserEntity.class, userId);
+                return session.createQuery("SELECT p FROM ResultEntity p WHERE p.user.id = :userId", ResultEntity.class)
+                        .setParameter("userId", userId)
+                        .getResultList()
+                        .stream()
+                        .map(PointDTO::fromEntity)
+                        .toList();
+            }
+            return session.createQuery(
+                            "SELECT new web.backend.lab4.dao.ResultRow(p.id, p.x, p.y, p.r, p.result, p.hitMask) " +
+                                    "FROM ResultEntity p WHERE p.user.id = :userId ORDER BY p.id", ResultRow.class)
+                    .setParameter("userId", userId)
+                    .setHint(HibernateHints.HINT_READ_ONLY, true)
+                    .setHint(HibernateHints.HINT_FETCH_SIZE, 500)
+                    .getResultList()
+                    .stream()
+                    .map(row -> new PointDTO(row.x(), row.y(), row.r(), row.result()))
+                    .toList();
+        }
+    }
+
+    private void deleteUser() {
+        sessionFactory.inTransaction(session -> session.doWork(connection -> {
+            try (PreparedStatement results = connection.prepareStatement(
+                    "DELETE FROM s408402.results_table WHERE user_id IN (SELECT id FROM s408402.users WHERE username = ?)");
+                 PreparedStatement user = connection.prepareStatement("DELETE FROM s408402.users WHERE username = ?")) {
+                results.setString(1, USERNAME);
+                results.executeUpdate();
+                user.setString(1, USERNAME);
+                user.executeUpdate();
+            }
+        }));
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? value : defaultValue;
+    }
+}
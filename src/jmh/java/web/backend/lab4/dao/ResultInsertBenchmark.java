@@ -0,0 +1,134 @@
+package web.backend.lab4.dao;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inserts per second into a copy of results_table for the statement patterns Hibernate produces:
+ * <ul>
+ *     <li>{@code perRow} - before: allocationSize = 1 and flush after persist, so every point costs
+ *     a nextval round trip and its own INSERT;</li>
+ *     <li>{@code pooled} - one point per transaction as in {@code /point/add}, ids come from a pooled-lo
+ *     block of 50, so nextval is called once per 50 points;</li>
+ *     <li>{@code batched} - {@code /point/add/batch}: pooled ids and one executeBatch per 50 points.</li>
+ * </ul>
+ * Needs a PostgreSQL database, the tables are temporary and vanish with the connection:
+ * {@code BENCH_JDBC_URL=jdbc:postgresql://localhost:5432/studs?reWriteBatchedInserts=true
+ * BENCH_JDBC_USER=... BENCH_JDBC_PASSWORD=... ./gradlew jmh -Pjmh.include=ResultInsertBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ResultInsertBenchmark.N)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResultInsertBenchmark {
+    static final int N = 500;
+    private static final int BLOCK = 50;
+
+    @Param({"perRow", "pooled", "batched"})
+    private String writePath;
+
+    private Connection connection;
+    private PreparedStatement nextval;
+    private PreparedStatement insert;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private long nextId;
+    private long blockEnd;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(
+                env("BENCH_JDBC_URL", "jdbc:postgresql://localhost:5432/studs?reWriteBatchedInserts=true"),
+                env("BENCH_JDBC_USER", "postgres"),
+                env("BENCH_JDBC_PASSWORD", ""));
+        try (Statement statement = connection.createStatement()) {
+            int increment = writePath.equals("perRow") ? 1 : BLOCK;
+            statement.execute("CREATE TEMP SEQUENCE bench_results_id_seq INCREMENT " + increment);
+            statement.execute("CREATE TEMP TABLE bench_results (id bigint PRIMARY KEY, x integer, " +
+                    "y double precision, r integer, result boolean, hit_mask integer, user_id bigint NOT NULL)");
+        }
+        connection.setAutoCommit(false);
+        nextval = connection.prepareStatement("SELECT nextval('bench_results_id_seq')");
+        insert = connection.prepareStatement("INSERT INTO bench_results (x, y, r, result, hit_mask, user_id, id) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void insert() throws SQLException {
+        switch (writePath) {
+            case "perRow" -> {
+                for (int i = 0; i < N; i++) {
+                    bind(sequence());
+                    insert.executeUpdate();
+                    connection.commit();
+                }
+            }
+            case "pooled" -> {
+                for (int i = 0; i < N; i++) {
+                    bind(pooledId());
+                    insert.executeUpdate();
+                    connection.commit();
+                }
+            }
+            default -> {
+                for (int i = 0; i < N; i++) {
+                    bind(pooledId());
+                    insert.addBatch();
+                    if ((i + 1) % BLOCK == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+                connection.commit();
+            }
+        }
+    }
+
+    private void bind(long id) throws SQLException {
+        insert.setInt(1, random.nextInt(-5, 6));
+        insert.setDouble(2, random.nextDouble(-5, 5));
+        insert.setInt(3, random.nextInt(1, 6));
+        insert.setBoolean(4, random.nextBoolean());
+        insert.setInt(5, random.nextInt(1 << 6));
+        insert.setLong(6, 1);
+        insert.setLong(7, id);
+    }
+
+    /**
+     * pooled-lo: the sequence value is the first id of a block of {@link #BLOCK}.
+     */
+    private long pooledId() throws SQLException {
+        if (nextId == blockEnd) {
+            nextId = sequence();
+            blockEnd = nextId + BLOCK;
+        }
+        return nextId++;
+    }
+
+    private long sequence() throws SQLException {
+        try (ResultSet resultSet = nextval.executeQuery()) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? value : defaultValue;
+    }
+}
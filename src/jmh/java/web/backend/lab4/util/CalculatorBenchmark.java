@@ -0,0 +1,84 @@
+package web.backend.lab4.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import web.backend.lab4.dto.PointDTO;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Points per second for the single-point {@link Calculator#calculate(int, double, int)}
+ * (table lookup), the original branchy {@link Calculator#compute(int, double, int)} and the batch kernels.
+ * The inputs are uniformly mixed over all quadrants, so branch profiles are polluted on purpose.
+ * Every benchmark checks {@link #N} points per invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CalculatorBenchmark.N)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+    static final int N = 1 << 16;
+
+    private final Calculator calculator = new Calculator();
+
+    private int[] xs;
+    private double[] ys;
+    private int[] rs;
+    private PointDTO[] dtos;
+    private boolean[] out;
+    private long[] bits;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        xs = new int[N];
+        ys = new double[N];
+        rs = new int[N];
+        dtos = new PointDTO[N];
+        for (int i = 0; i < N; i++) {
+            xs[i] = random.nextInt(-5, 6);
+            ys[i] = random.nextDouble(-5, 5);
+            rs[i] = random.nextInt(1, 6);
+            dtos[i] = new PointDTO(xs[i], ys[i], rs[i], false);
+        }
+        out = new boolean[N];
+        bits = new long[(N + 63) >>> 6];
+    }
+
+    @Benchmark
+    public void scalar(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(calculator.calculate(xs[i], ys[i], rs[i]));
+        }
+    }
+
+    @Benchmark
+    public void reference(Blackhole bh) {
+        for (int i = 0; i < N; i++) {
+            bh.consume(Calculator.compute(xs[i], ys[i], rs[i]));
+        }
+    }
+
+    @Benchmark
+    public void scalarThroughDto(Blackhole bh) {
+        for (PointDTO dto : dtos) {
+            bh.consume(calculator.calculate(dto.getX(), dto.getY(), dto.getR()));
+        }
+    }
+
+    @Benchmark
+    public boolean[] batch() {
+        calculator.calculateAll(xs, ys, rs, out);
+        return out;
+    }
+
+    @Benchmark
+    public long[] batchBits() {
+        calculator.calculateAll(xs, ys, rs, bits);
+        return bits;
+    }
+}
@@ -0,0 +1,50 @@
+package web.backend.lab4.util;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ids per second from one {@link TimeOrderedIds} node: one id at a time from one thread and from four threads
+ * sharing the node, where the CAS is contended, and blocks of 50 as {@code ResultUpsert.reserveIds} takes them.
+ * For the sequence round trip these ids replace see {@code ResultInsertBenchmark}.
+ * <p>
+ * Past 256 ids per millisecond the ids run ahead of the clock, so the numbers show the generator itself,
+ * not a limit of the layout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeOrderedIdsBenchmark {
+    static final int BLOCK = 50;
+
+    private final TimeOrderedIds ids = new TimeOrderedIds(1);
+
+    @State(Scope.Thread)
+    public static class Block {
+        final long[] ids = new long[BLOCK];
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long single() {
+        return ids.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long contended() {
+        return ids.next();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(BLOCK)
+    public long[] blocks(Block block) {
+        ids.next(block.ids);
+        return block.ids;
+    }
+}
@@ -0,0 +1,85 @@
+package web.backend.lab4.area;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MutableCallSite;
+
+/**
+ * The area definition loaded at runtime, if any. While nothing is installed the
+ * {@link web.backend.lab4.util.Calculator} uses its built-in area.
+ * <p>
+ * The compiled handle is the target of a {@link MutableCallSite} whose invoker is a static final constant,
+ * so the JIT inlines the whole shape into {@link #contains} and deoptimizes it when another area is installed.
+ */
+public final class ActiveArea {
+    /**
+     * The built-in area of the Calculator written in the DSL.
+     */
+    public static final String BUILT_IN = """
+            union(
+              sector(0, 0, r, 90, 180),
+              polygon((0, 0), (-r/2, 0), (0, -r)),
+              polygon((0, 0), (r/2, 0), (r/2, -r), (0, -r))
+            )
+            """;
+
+    private static final MutableCallSite SITE = new MutableCallSite(AreaCompiler.TYPE);
+    private static final MethodHandle INVOKER = SITE.dynamicInvoker();
+
+    private static volatile CompiledArea current;
+
+    private static final class BuiltIn {
+        static final CompiledArea AREA;
+
+        static {
+            try {
+                AREA = AreaCompiler.compile(BUILT_IN);
+            } catch (AreaSyntaxException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+
+    private ActiveArea() {
+    }
+
+    public static synchronized void install(CompiledArea area) {
+        if (SITE.getTarget() != area.handle()) {
+            SITE.setTarget(area.handle());
+            MutableCallSite.syncAll(new MutableCallSite[]{SITE});
+        }
+        current = area;
+    }
+
+    public static synchronized void reset() {
+        current = null;
+    }
+
+    public static boolean isInstalled() {
+        return current != null;
+    }
+
+    /**
+     * @return the installed definition or null if the built-in area is used.
+     */
+    public static CompiledArea current() {
+        return current;
+    }
+
+    /**
+     * The current area with continuous x: the installed definition or the built-in one compiled from {@link #BUILT_IN}.
+     */
+    public static Region region() {
+        return isInstalled() ? ActiveArea::contains : BuiltIn.AREA;
+    }
+
+    /**
+     * Checks the point against the installed area. Must only be called when {@link #isInstalled()} is true.
+     */
+    public static boolean contains(double x, double y, double r) {
+        try {
+            return (boolean) INVOKER.invokeExact(x, y, r);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Area check failed", e);
+        }
+    }
+}
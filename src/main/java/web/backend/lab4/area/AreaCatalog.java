@@ -0,0 +1,32 @@
+package web.backend.lab4.area;
+
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.util.List;
+
+/**
+ * Catalog of named areas that points can be checked against, in addition to the main area.
+ * Holds the current {@link CatalogIndex}; every change swaps in a new one.
+ */
+@ApplicationScoped
+public class AreaCatalog {
+    private volatile CatalogIndex index = CatalogIndex.EMPTY;
+
+    public synchronized void put(String name, String source) throws AreaSyntaxException {
+        index = index.with(name, source);
+    }
+
+    public synchronized boolean remove(String name) {
+        CatalogIndex before = index;
+        index = before.without(name);
+        return index != before;
+    }
+
+    public CatalogIndex index() {
+        return index;
+    }
+
+    public List<List<String>> findAll(int[] xs, double[] ys, int[] rs) {
+        return index.findAll(xs, ys, rs);
+    }
+}
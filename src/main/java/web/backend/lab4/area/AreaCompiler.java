@@ -0,0 +1,164 @@
+package web.backend.lab4.area;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+/**
+ * Turns a {@link Shape} tree into a {@code (double x, double y, double r) -> boolean} method handle.
+ * <p>
+ * Leaves are static methods below with their constants bound by {@link MethodHandles#insertArguments},
+ * unions and intersections are short-circuit {@link MethodHandles#guardWithTest} chains. Nothing is
+ * interpreted per point: when the root handle is a JIT constant (see {@link ActiveArea}) the whole tree
+ * is inlined into the caller like hand-written code.
+ */
+public final class AreaCompiler {
+    public static final MethodType TYPE = MethodType.methodType(boolean.class, double.class, double.class, double.class);
+
+    private static final MethodHandle SECTOR;
+    private static final MethodHandle POLYGON;
+    private static final MethodHandle HALF_PLANE;
+    private static final MethodHandle TRUE = MethodHandles.dropArguments(
+            MethodHandles.constant(boolean.class, true), 0, TYPE.parameterList());
+    private static final MethodHandle FALSE = MethodHandles.dropArguments(
+            MethodHandles.constant(boolean.class, false), 0, TYPE.parameterList());
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            SECTOR = lookup.findStatic(AreaCompiler.class, "sector", MethodType.methodType(boolean.class,
+                    double.class, double.class, double.class, double.class, double.class, double.class,
+                    double.class, double.class, double.class, double.class, boolean.class,
+                    double.class, double.class, double.class));
+            POLYGON = lookup.findStatic(AreaCompiler.class, "polygon", MethodType.methodType(boolean.class,
+                    double[].class, double.class, double.class, double.class));
+            HALF_PLANE = lookup.findStatic(AreaCompiler.class, "halfPlane", MethodType.methodType(boolean.class,
+                    double.class, double.class, double.class, double.class, double.class, double.class,
+                    double.class, double.class, double.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private AreaCompiler() {
+    }
+
+    public static CompiledArea compile(String source) throws AreaSyntaxException {
+        return new CompiledArea(source, compile(AreaParser.parse(source)));
+    }
+
+    public static MethodHandle compile(Shape shape) {
+        if (shape instanceof Shape.Sector sector) {
+            return sector(sector);
+        }
+        if (shape instanceof Shape.Polygon polygon) {
+            return polygon(polygon);
+        }
+        if (shape instanceof Shape.HalfPlane plane) {
+            return MethodHandles.insertArguments(HALF_PLANE, 0,
+                    plane.a().k(), plane.a().c(), plane.b().k(), plane.b().c(), plane.c().k(), plane.c().c());
+        }
+        if (shape instanceof Shape.Union union) {
+            return fold(union.parts(), true);
+        }
+        if (shape instanceof Shape.Intersection intersection) {
+            return fold(intersection.parts(), false);
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    /**
+     * union(a, b, c) = a ? true : (b ? true : c), intersection(a, b, c) = a ? (b ? c : false) : false.
+     */
+    private static MethodHandle fold(List<Shape> parts, boolean union) {
+        MethodHandle result = compile(parts.get(parts.size() - 1));
+        for (int i = parts.size() - 2; i >= 0; i--) {
+            MethodHandle test = compile(parts.get(i));
+            result = union
+                    ? MethodHandles.guardWithTest(test, TRUE, result)
+                    : MethodHandles.guardWithTest(test, result, FALSE);
+        }
+        return result;
+    }
+
+    private static MethodHandle sector(Shape.Sector sector) {
+        double span = sector.to() - sector.from();
+        span -= 360 * Math.floor(span / 360);
+        boolean full = span == 0 && sector.to() != sector.from();
+        // начало и конец дуги как единичные векторы; для углов, кратных 90, без ошибок округления
+        double fromX = cos(sector.from()), fromY = sin(sector.from());
+        double toX = cos(sector.to()), toY = sin(sector.to());
+        if (full) {
+            fromX = fromY = toX = toY = 0;
+        }
+        return MethodHandles.insertArguments(SECTOR, 0,
+                sector.cx().k(), sector.cx().c(), sector.cy().k(), sector.cy().c(),
+                sector.radius().k(), sector.radius().c(),
+                fromX, fromY, toX, toY, full || span > 180);
+    }
+
+    private static MethodHandle polygon(Shape.Polygon polygon) {
+        int n = polygon.xs().size();
+        double[] coefficients = new double[4 * n];
+        for (int i = 0; i < n; i++) {
+            coefficients[4 * i] = polygon.xs().get(i).k();
+            coefficients[4 * i + 1] = polygon.xs().get(i).c();
+            coefficients[4 * i + 2] = polygon.ys().get(i).k();
+            coefficients[4 * i + 3] = polygon.ys().get(i).c();
+        }
+        return MethodHandles.insertArguments(POLYGON, 0, (Object) coefficients);
+    }
+
+    private static boolean sector(double cxk, double cxc, double cyk, double cyc, double rk, double rc,
+                                  double fromX, double fromY, double toX, double toY, boolean reflex,
+                                  double x, double y, double r) {
+        double dx = x - (cxk * r + cxc);
+        double dy = y - (cyk * r + cyc);
+        double radius = rk * r + rc;
+        boolean inCircle = dx*dx + dy*dy <= radius*radius;
+        boolean afterFrom = fromX * dy - fromY * dx >= 0;
+        boolean beforeTo = dx * toY - dy * toX >= 0;
+        // дуга больше 180 градусов - это всё, кроме сектора от to до from
+        return inCircle & (reflex ? (afterFrom | beforeTo) : (afterFrom & beforeTo));
+    }
+
+    /**
+     * A point is inside a convex polygon when it is on the same side of every edge,
+     * so the check does not depend on the vertex order.
+     */
+    private static boolean polygon(double[] c, double x, double y, double r) {
+        int n = c.length / 4;
+        boolean left = true;
+        boolean right = true;
+        double px = c[4 * n - 4] * r + c[4 * n - 3];
+        double py = c[4 * n - 2] * r + c[4 * n - 1];
+        for (int i = 0; i < 4 * n; i += 4) {
+            double qx = c[i] * r + c[i + 1];
+            double qy = c[i + 2] * r + c[i + 3];
+            double cross = (qx - px) * (y - py) - (qy - py) * (x - px);
+            left &= cross >= 0;
+            right &= cross <= 0;
+            px = qx;
+            py = qy;
+        }
+        return left | right;
+    }
+
+    private static boolean halfPlane(double ak, double ac, double bk, double bc, double ck, double cc,
+                                     double x, double y, double r) {
+        return (ak * r + ac) * x + (bk * r + bc) * y <= ck * r + cc;
+    }
+
+    private static double cos(double degrees) {
+        double rem = degrees % 90;
+        if (rem == 0) {
+            return new double[]{1, 0, -1, 0}[Math.floorMod((int) (degrees / 90), 4)];
+        }
+        return Math.cos(Math.toRadians(degrees));
+    }
+
+    private static double sin(double degrees) {
+        return cos(degrees - 90);
+    }
+}
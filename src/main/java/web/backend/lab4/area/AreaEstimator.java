@@ -0,0 +1,162 @@
+package web.backend.lab4.area;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+/**
+ * Monte Carlo estimate of the area of a {@link Region} for a fixed r.
+ * <p>
+ * Points are sampled uniformly from the square [-extent, extent]^2. The work is split into one partition
+ * per worker of the executor, each with its own {@link SplittableRandom} split from a common seed, and each partition
+ * counts its hits in a local variable, so nothing is shared inside the sampling loop. The result depends
+ * only on the seed and the number of partitions, not on thread scheduling.
+ * <p>
+ * {@link #runAsync} never waits on a thread of the executor: the next round is submitted when the last
+ * partition of the previous one completes, so it may be started from a task of the same executor.
+ */
+public final class AreaEstimator {
+    private static final int FIRST_ROUND = 1 << 14;
+    private static final int MAX_ROUND = 1 << 22;
+
+    private final Region region;
+    private final double r;
+    private final double extent;
+    private final Executor executor;
+    private final SplittableRandom[] partitions;
+    private long samples;
+    private long hits;
+
+    /**
+     * @param executor    runs the partitions of a round.
+     * @param parallelism number of partitions.
+     */
+    public AreaEstimator(Region region, double r, double extent, long seed, Executor executor, int parallelism) {
+        if (!(extent > 0)) {
+            throw new IllegalArgumentException("Extent must be positive: " + extent);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.region = region;
+        this.r = r;
+        this.extent = extent;
+        this.executor = executor;
+        this.partitions = new SplittableRandom[parallelism];
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = root.split();
+        }
+    }
+
+    public AreaEstimator(Region region, double r, double extent, long seed, ForkJoinPool pool) {
+        this(region, r, extent, seed, pool, pool.getParallelism());
+    }
+
+    public record Estimate(long samples, long hits, double area, double hitProbability, double standardError) {
+    }
+
+    /**
+     * Samples {@code perPartition} more points in every partition and returns the estimate over all samples so far.
+     * The caller waits, so it must not be a thread of the executor.
+     */
+    public Estimate next(int perPartition) {
+        return await(nextAsync(perPartition));
+    }
+
+    /**
+     * Same as {@link #runAsync}, the caller waits for the last estimate.
+     */
+    public Estimate run(double maxError, long maxSamples, Predicate<Estimate> listener) {
+        return await(runAsync(maxError, maxSamples, listener));
+    }
+
+    /**
+     * Runs rounds of growing size until the standard error of the area is at most {@code maxError}
+     * or {@code maxSamples} points are sampled. Every intermediate estimate is passed to {@code listener};
+     * when it returns false the estimation stops.
+     *
+     * @return the last estimate, completed exceptionally if a round or the listener fails.
+     */
+    public CompletableFuture<Estimate> runAsync(double maxError, long maxSamples, Predicate<Estimate> listener) {
+        CompletableFuture<Estimate> result = new CompletableFuture<>();
+        round(FIRST_ROUND, maxError, maxSamples, listener, result);
+        return result;
+    }
+
+    private void round(int size, double maxError, long maxSamples, Predicate<Estimate> listener,
+                       CompletableFuture<Estimate> result) {
+        try {
+            nextAsync(size).whenComplete((estimate, failure) -> {
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                    return;
+                }
+                try {
+                    if (!listener.test(estimate) || isPrecise(estimate, maxError) || estimate.samples() >= maxSamples) {
+                        result.complete(estimate);
+                    } else {
+                        round(Math.min(size * 2, MAX_ROUND), maxError, maxSamples, listener, result);
+                    }
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // исполнитель отказался принять раунд
+            result.completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<Estimate> nextAsync(int perPartition) {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Long>[] tasks = new CompletableFuture[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            SplittableRandom random = partitions[i];
+            tasks[i] = CompletableFuture.supplyAsync(() -> sample(random, perPartition), executor);
+        }
+        // раунды идут друг за другом, счётчики меняет только поток, завершивший раунд
+        return CompletableFuture.allOf(tasks).thenApply(done -> {
+            for (CompletableFuture<Long> task : tasks) {
+                hits += task.join();
+            }
+            samples += (long) perPartition * partitions.length;
+            return estimate();
+        });
+    }
+
+    private static Estimate await(CompletableFuture<Estimate> estimate) {
+        try {
+            return estimate.join();
+        } catch (CompletionException e) {
+            throw new IllegalStateException("Area estimation failed", e.getCause());
+        }
+    }
+
+    public static boolean isPrecise(Estimate estimate, double maxError) {
+        // пока попаданий или промахов нет, оценка ошибки бессмысленна
+        return estimate.hits() > 0 && estimate.hits() < estimate.samples() && estimate.standardError() <= maxError;
+    }
+
+    private long sample(SplittableRandom random, int count) {
+        long local = 0;
+        for (int i = 0; i < count; i++) {
+            double x = random.nextDouble(-extent, extent);
+            double y = random.nextDouble(-extent, extent);
+            if (region.contains(x, y, r)) {
+                local++;
+            }
+        }
+        return local;
+    }
+
+    private Estimate estimate() {
+        double window = 4 * extent * extent;
+        double p = (double) hits / samples;
+        double error = Math.sqrt(p * (1 - p) / samples) * window;
+        return new Estimate(samples, hits, p * window, p, error);
+    }
+}
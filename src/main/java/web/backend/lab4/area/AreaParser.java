@@ -0,0 +1,260 @@
+package web.backend.lab4.area;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser of the area definition language. Example (this is the built-in area of the Calculator):
+ * <pre>
+ * union(
+ *   sector(0, 0, r, 90, 180),
+ *   polygon((0, 0), (-r/2, 0), (0, -r)),
+ *   polygon((0, 0), (r/2, 0), (r/2, -r), (0, -r))
+ * )
+ * </pre>
+ * Shapes:
+ * <ul>
+ *     <li>{@code sector(cx, cy, radius, from, to)} - circle sector, angles in degrees, counterclockwise;</li>
+ *     <li>{@code polygon((x, y), ...)} - convex polygon with at least three vertices;</li>
+ *     <li>{@code halfplane(a, b, c)} - all points with {@code a * x + b * y <= c};</li>
+ *     <li>{@code union(shape, ...)}, {@code intersection(shape, ...)}.</li>
+ * </ul>
+ * Coordinates are sums of terms like {@code 2}, {@code r}, {@code -r/2}, {@code 1.5r} or {@code 3*r/4}.
+ * Everything after {@code #} up to the end of the line is a comment.
+ */
+public final class AreaParser {
+    private final String source;
+    private int pos;
+
+    private AreaParser(String source) {
+        this.source = source;
+    }
+
+    public static Shape parse(String source) throws AreaSyntaxException {
+        if (source == null) {
+            throw new AreaSyntaxException("Area definition is empty");
+        }
+        AreaParser parser = new AreaParser(source);
+        Shape shape = parser.shape();
+        parser.skipSpaces();
+        if (parser.pos < source.length()) {
+            throw parser.error("unexpected '" + source.charAt(parser.pos) + "'");
+        }
+        return shape;
+    }
+
+    private Shape shape() throws AreaSyntaxException {
+        skipSpaces();
+        int start = pos;
+        String name = identifier();
+        expect('(');
+        Shape shape = switch (name) {
+            case "sector" -> sector();
+            case "polygon" -> polygon();
+            case "halfplane" -> new Shape.HalfPlane(linear(), comma(), comma());
+            case "union" -> new Shape.Union(shapes());
+            case "intersection" -> new Shape.Intersection(shapes());
+            default -> {
+                pos = start;
+                throw error("unknown shape '" + name + "'");
+            }
+        };
+        expect(')');
+        return shape;
+    }
+
+    private Shape sector() throws AreaSyntaxException {
+        Linear cx = linear();
+        Linear cy = comma();
+        Linear radius = comma();
+        expect(',');
+        double from = number();
+        expect(',');
+        double to = number();
+        if (radius.k() < 0 || (radius.k() == 0 && radius.c() < 0)) {
+            throw error("sector radius must not be negative");
+        }
+        return new Shape.Sector(cx, cy, radius, from, to);
+    }
+
+    private Shape polygon() throws AreaSyntaxException {
+        List<Linear> xs = new ArrayList<>();
+        List<Linear> ys = new ArrayList<>();
+        do {
+            expect('(');
+            xs.add(linear());
+            ys.add(comma());
+            expect(')');
+        } while (accept(','));
+        if (xs.size() < 3) {
+            throw error("polygon needs at least three vertices");
+        }
+        if (!isConvex(xs, ys)) {
+            throw error("polygon must be convex");
+        }
+        return new Shape.Polygon(List.copyOf(xs), List.copyOf(ys));
+    }
+
+    private List<Shape> shapes() throws AreaSyntaxException {
+        List<Shape> parts = new ArrayList<>();
+        do {
+            parts.add(shape());
+        } while (accept(','));
+        return List.copyOf(parts);
+    }
+
+    private Linear comma() throws AreaSyntaxException {
+        expect(',');
+        return linear();
+    }
+
+    /**
+     * expr := ['+' | '-'] term (('+' | '-') term)*
+     */
+    private Linear linear() throws AreaSyntaxException {
+        Linear value = Linear.ZERO;
+        boolean negative = false;
+        if (accept('-')) {
+            negative = true;
+        } else {
+            accept('+');
+        }
+        while (true) {
+            Linear term = term();
+            value = value.plus(negative ? term.negate() : term);
+            if (accept('+')) {
+                negative = false;
+            } else if (accept('-')) {
+                negative = true;
+            } else {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * term := number ['*'] ['r'] ['/' number] | 'r' ['/' number]
+     */
+    private Linear term() throws AreaSyntaxException {
+        skipSpaces();
+        double factor = 1;
+        boolean hasNumber = false;
+        if (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+            factor = number();
+            hasNumber = true;
+        }
+        boolean hasR = accept('*') ? acceptR(true) : acceptR(!hasNumber);
+        if (accept('/')) {
+            double divisor = number();
+            if (divisor == 0) {
+                throw error("division by zero");
+            }
+            factor /= divisor;
+        }
+        return hasR ? new Linear(factor, 0) : new Linear(0, factor);
+    }
+
+    private boolean acceptR(boolean required) throws AreaSyntaxException {
+        skipSpaces();
+        if (pos < source.length() && source.charAt(pos) == 'r'
+                && (pos + 1 == source.length() || !Character.isLetterOrDigit(source.charAt(pos + 1)))) {
+            pos++;
+            return true;
+        }
+        if (required) {
+            throw error("number or 'r' expected");
+        }
+        return false;
+    }
+
+    private double number() throws AreaSyntaxException {
+        skipSpaces();
+        int start = pos;
+        if (pos < source.length() && source.charAt(pos) == '-') {
+            pos++;
+        }
+        while (pos < source.length() && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '.')) {
+            pos++;
+        }
+        try {
+            return Double.parseDouble(source.substring(start, pos));
+        } catch (NumberFormatException e) {
+            pos = start;
+            throw error("number expected");
+        }
+    }
+
+    private String identifier() throws AreaSyntaxException {
+        skipSpaces();
+        int start = pos;
+        while (pos < source.length() && Character.isLetter(source.charAt(pos))) {
+            pos++;
+        }
+        if (start == pos) {
+            throw error("shape name expected");
+        }
+        return source.substring(start, pos);
+    }
+
+    private void expect(char c) throws AreaSyntaxException {
+        if (!accept(c)) {
+            throw error("'" + c + "' expected");
+        }
+    }
+
+    private boolean accept(char c) {
+        skipSpaces();
+        if (pos < source.length() && source.charAt(pos) == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipSpaces() {
+        while (pos < source.length()) {
+            char c = source.charAt(pos);
+            if (c == '#') {
+                while (pos < source.length() && source.charAt(pos) != '\n') {
+                    pos++;
+                }
+            } else if (Character.isWhitespace(c)) {
+                pos++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private AreaSyntaxException error(String message) {
+        int line = 1;
+        int column = 1;
+        for (int i = 0; i < Math.min(pos, source.length()); i++) {
+            if (source.charAt(i) == '\n') {
+                line++;
+                column = 1;
+            } else {
+                column++;
+            }
+        }
+        return new AreaSyntaxException(line + ":" + column + ": " + message);
+    }
+
+    /**
+     * Convexity is checked for r = 1. Vertices that are multiples of r stay convex for every r > 0.
+     */
+    private static boolean isConvex(List<Linear> xs, List<Linear> ys) {
+        int n = xs.size();
+        boolean positive = false;
+        boolean negative = false;
+        for (int i = 0; i < n; i++) {
+            double x0 = xs.get(i).at(1), y0 = ys.get(i).at(1);
+            double x1 = xs.get((i + 1) % n).at(1), y1 = ys.get((i + 1) % n).at(1);
+            double x2 = xs.get((i + 2) % n).at(1), y2 = ys.get((i + 2) % n).at(1);
+            double cross = (x1 - x0) * (y2 - y1) - (y1 - y0) * (x2 - x1);
+            positive |= cross > 0;
+            negative |= cross < 0;
+        }
+        return !(positive && negative);
+    }
+}
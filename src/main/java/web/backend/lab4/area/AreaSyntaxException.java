@@ -0,0 +1,7 @@
+package web.backend.lab4.area;
+
+public class AreaSyntaxException extends Exception {
+    public AreaSyntaxException(String message) {
+        super(message);
+    }
+}
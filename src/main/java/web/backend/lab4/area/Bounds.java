@@ -0,0 +1,103 @@
+package web.backend.lab4.area;
+
+/**
+ * Axis-aligned box that contains a shape for a given r. Sides may be infinite for unbounded shapes.
+ * The box is conservative: it may be larger than the shape, but never misses a point of it, except for
+ * rounding in the compiled checks right at the border, which users of the box have to allow for ({@link #padded()}).
+ */
+public record Bounds(double minX, double minY, double maxX, double maxY) {
+    public static final Bounds EVERYTHING = new Bounds(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+    public static final Bounds NOTHING = new Bounds(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+            Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+    public static Bounds of(Shape shape, double r) {
+        if (shape instanceof Shape.Sector sector) {
+            double cx = sector.cx().at(r);
+            double cy = sector.cy().at(r);
+            double radius = Math.abs(sector.radius().at(r));
+            return new Bounds(cx - radius, cy - radius, cx + radius, cy + radius);
+        }
+        if (shape instanceof Shape.Polygon polygon) {
+            Bounds bounds = NOTHING;
+            for (int i = 0; i < polygon.xs().size(); i++) {
+                double x = polygon.xs().get(i).at(r);
+                double y = polygon.ys().get(i).at(r);
+                bounds = bounds.union(new Bounds(x, y, x, y));
+            }
+            return bounds;
+        }
+        if (shape instanceof Shape.HalfPlane plane) {
+            return halfPlane(plane.a().at(r), plane.b().at(r), plane.c().at(r));
+        }
+        if (shape instanceof Shape.Union union) {
+            Bounds bounds = NOTHING;
+            for (Shape part : union.parts()) {
+                bounds = bounds.union(of(part, r));
+            }
+            return bounds;
+        }
+        if (shape instanceof Shape.Intersection intersection) {
+            Bounds bounds = EVERYTHING;
+            for (Shape part : intersection.parts()) {
+                bounds = bounds.intersect(of(part, r));
+            }
+            return bounds;
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    public boolean isEmpty() {
+        return !(minX <= maxX && minY <= maxY);
+    }
+
+    public boolean isBounded() {
+        return Double.isFinite(minX) && Double.isFinite(minY) && Double.isFinite(maxX) && Double.isFinite(maxY);
+    }
+
+    public Bounds union(Bounds other) {
+        return new Bounds(Math.min(minX, other.minX), Math.min(minY, other.minY),
+                Math.max(maxX, other.maxX), Math.max(maxY, other.maxY));
+    }
+
+    public Bounds intersect(Bounds other) {
+        return new Bounds(Math.max(minX, other.minX), Math.max(minY, other.minY),
+                Math.min(maxX, other.maxX), Math.min(maxY, other.maxY));
+    }
+
+    /**
+     * The same box grown by a small relative margin, so that points accepted by a check only because of rounding are still inside.
+     */
+    public Bounds padded() {
+        if (isEmpty()) {
+            return this;
+        }
+        return new Bounds(minX - pad(minX), minY - pad(minY), maxX + pad(maxX), maxY + pad(maxY));
+    }
+
+    /**
+     * Only half-planes parallel to an axis limit the box.
+     */
+    private static Bounds halfPlane(double a, double b, double c) {
+        if (a == 0 && b > 0) {
+            return new Bounds(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, c / b);
+        }
+        if (a == 0 && b < 0) {
+            return new Bounds(Double.NEGATIVE_INFINITY, c / b, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        if (b == 0 && a > 0) {
+            return new Bounds(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, c / a, Double.POSITIVE_INFINITY);
+        }
+        if (b == 0 && a < 0) {
+            return new Bounds(c / a, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        if (a == 0 && b == 0) {
+            return c >= 0 ? EVERYTHING : NOTHING;
+        }
+        return EVERYTHING;
+    }
+
+    private static double pad(double value) {
+        return 1e-9 * (1 + Math.abs(value));
+    }
+}
@@ -0,0 +1,213 @@
+package web.backend.lab4.area;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable set of named areas with a spatial index, answers "which areas contain this point".
+ * <p>
+ * Area bounds depend on r, so for every r that is asked for a uniform grid is built over the bounding boxes
+ * of the areas and cached, for at most {@link #MAX_GRIDS} values of r. A point is then only checked against the areas whose box covers its grid cell,
+ * plus the few unbounded ones. Changes produce a new index, readers never see a half-built one.
+ */
+public final class CatalogIndex {
+    public static final CatalogIndex EMPTY = new CatalogIndex(new TreeMap<>());
+
+    private static final int MAX_GRID = 64;
+    // сверх этого сетки строятся на один запрос и не кэшируются
+    static final int MAX_GRIDS = 32;
+    private static final int[] NO_IDS = new int[0];
+
+    private final TreeMap<String, Entry> entries;
+    private final Entry[] byId;
+    private final Map<Integer, Grid> grids = new ConcurrentHashMap<>();
+
+    private CatalogIndex(TreeMap<String, Entry> entries) {
+        this.entries = entries;
+        this.byId = entries.values().toArray(new Entry[0]);
+    }
+
+    public record Entry(String name, Shape shape, CompiledArea area) {
+    }
+
+    public CatalogIndex with(String name, String source) throws AreaSyntaxException {
+        Shape shape = AreaParser.parse(source);
+        TreeMap<String, Entry> copy = new TreeMap<>(entries);
+        copy.put(name, new Entry(name, shape, new CompiledArea(source, AreaCompiler.compile(shape))));
+        return new CatalogIndex(copy);
+    }
+
+    public CatalogIndex without(String name) {
+        if (!entries.containsKey(name)) {
+            return this;
+        }
+        TreeMap<String, Entry> copy = new TreeMap<>(entries);
+        copy.remove(name);
+        return new CatalogIndex(copy);
+    }
+
+    public Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    public int size() {
+        return byId.length;
+    }
+
+    /**
+     * @return names of the areas that contain the point, in alphabetical order.
+     */
+    public List<String> find(double x, double y, int r) {
+        List<String> names = new ArrayList<>();
+        grid(r).forEachCandidate(x, y, id -> {
+            if (byId[id].area().contains(x, y, r)) {
+                names.add(byId[id].name());
+            }
+        });
+        return names;
+    }
+
+    /**
+     * Batch form of {@link #find}. Points are processed grouped by r, so each grid is looked up once per group.
+     */
+    public List<List<String>> findAll(int[] xs, double[] ys, int[] rs) {
+        if (xs.length != ys.length || xs.length != rs.length) {
+            throw new IllegalArgumentException("Coordinate arrays must have the same length");
+        }
+        Integer[] order = new Integer[xs.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(rs[a], rs[b]));
+
+        List<List<String>> result = new ArrayList<>(Collections.nCopies(xs.length, List.of()));
+        Grid grid = null;
+        for (int i : order) {
+            if (grid == null || grid.r != rs[i]) {
+                grid = grid(rs[i]);
+            }
+            int r = rs[i];
+            double x = xs[i];
+            double y = ys[i];
+            List<String> names = new ArrayList<>();
+            grid.forEachCandidate(x, y, id -> {
+                if (byId[id].area().contains(x, y, r)) {
+                    names.add(byId[id].name());
+                }
+            });
+            result.set(i, names);
+        }
+        return result;
+    }
+
+    private Grid grid(int r) {
+        Grid grid = grids.get(r);
+        if (grid != null) {
+            return grid;
+        }
+        grid = buildGrid(r);
+        if (grids.size() < MAX_GRIDS) {
+            Grid cached = grids.putIfAbsent(r, grid);
+            return cached != null ? cached : grid;
+        }
+        return grid;
+    }
+
+    int cachedGrids() {
+        return grids.size();
+    }
+
+    private Grid buildGrid(int r) {
+        List<Integer> unbounded = new ArrayList<>();
+        List<Integer> bounded = new ArrayList<>();
+        Bounds[] boxes = new Bounds[byId.length];
+        Bounds all = Bounds.NOTHING;
+        for (int id = 0; id < byId.length; id++) {
+            Bounds box = Bounds.of(byId[id].shape(), r).padded();
+            boxes[id] = box;
+            if (box.isEmpty()) {
+                continue;
+            }
+            if (box.isBounded()) {
+                bounded.add(id);
+                all = all.union(box);
+            } else {
+                unbounded.add(id);
+            }
+        }
+
+        int side = bounded.isEmpty() ? 1 : Math.min(MAX_GRID, (int) Math.ceil(Math.sqrt(bounded.size())));
+        Grid grid = new Grid(r, all, side, unbounded.stream().mapToInt(Integer::intValue).toArray());
+        List<List<Integer>> cells = new ArrayList<>(side * side);
+        for (int i = 0; i < side * side; i++) {
+            cells.add(new ArrayList<>());
+        }
+        for (int id : bounded) {
+            Bounds box = boxes[id];
+            int fromCol = grid.column(box.minX()), toCol = grid.column(box.maxX());
+            int fromRow = grid.row(box.minY()), toRow = grid.row(box.maxY());
+            for (int row = fromRow; row <= toRow; row++) {
+                for (int col = fromCol; col <= toCol; col++) {
+                    cells.get(row * side + col).add(id);
+                }
+            }
+        }
+        for (int i = 0; i < cells.size(); i++) {
+            grid.cells[i] = cells.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return grid;
+    }
+
+    private static final class Grid {
+        final int r;
+        final Bounds bounds;
+        final int side;
+        final double cellWidth;
+        final double cellHeight;
+        final int[][] cells;
+        final int[] unbounded;
+
+        Grid(int r, Bounds bounds, int side, int[] unbounded) {
+            this.r = r;
+            this.bounds = bounds;
+            this.side = side;
+            this.cellWidth = bounds.isEmpty() ? 1 : Math.max((bounds.maxX() - bounds.minX()) / side, Double.MIN_NORMAL);
+            this.cellHeight = bounds.isEmpty() ? 1 : Math.max((bounds.maxY() - bounds.minY()) / side, Double.MIN_NORMAL);
+            this.cells = new int[side * side][];
+            this.unbounded = unbounded;
+        }
+
+        int column(double x) {
+            return Math.min(side - 1, Math.max(0, (int) ((x - bounds.minX()) / cellWidth)));
+        }
+
+        int row(double y) {
+            return Math.min(side - 1, Math.max(0, (int) ((y - bounds.minY()) / cellHeight)));
+        }
+
+        /**
+         * Calls {@code action} for every area id that may contain the point, in ascending order.
+         */
+        void forEachCandidate(double x, double y, IntConsumer action) {
+            int[] cell = x >= bounds.minX() && x <= bounds.maxX() && y >= bounds.minY() && y <= bounds.maxY()
+                    ? cells[row(y) * side + column(x)]
+                    : NO_IDS;
+            // обе последовательности отсортированы, сливаем их, чтобы имена шли по алфавиту
+            int i = 0;
+            int j = 0;
+            while (i < cell.length || j < unbounded.length) {
+                if (j == unbounded.length || (i < cell.length && cell[i] < unbounded[j])) {
+                    action.accept(cell[i++]);
+                } else {
+                    action.accept(unbounded[j++]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package web.backend.lab4.area;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Area definition together with its compiled handle of type {@link AreaCompiler#TYPE}.
+ * <p>
+ * Calling {@link #contains} goes through a handle stored in a field, which the JIT can not inline.
+ * Hot paths should use {@link ActiveArea}, which keeps the handle in a constant call site.
+ */
+public record CompiledArea(String source, MethodHandle handle) implements Region {
+
+    @Override
+    public boolean contains(double x, double y, double r) {
+        try {
+            return (boolean) handle.invokeExact(x, y, r);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Area check failed", e);
+        }
+    }
+}
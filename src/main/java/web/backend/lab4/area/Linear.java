@@ -0,0 +1,21 @@
+package web.backend.lab4.area;
+
+/**
+ * A coordinate of an area definition: {@code k * r + c}. Every number in the DSL is linear in r,
+ * so that one definition describes the area for all radii.
+ */
+public record Linear(double k, double c) {
+    public static final Linear ZERO = new Linear(0, 0);
+
+    public double at(double r) {
+        return k * r + c;
+    }
+
+    public Linear plus(Linear other) {
+        return new Linear(k + other.k, c + other.c);
+    }
+
+    public Linear negate() {
+        return new Linear(-k, -c);
+    }
+}
@@ -0,0 +1,9 @@
+package web.backend.lab4.area;
+
+/**
+ * Point check with continuous coordinates, implemented by compiled area definitions.
+ */
+@FunctionalInterface
+public interface Region {
+    boolean contains(double x, double y, double r);
+}
@@ -0,0 +1,33 @@
+package web.backend.lab4.area;
+
+import java.util.List;
+
+/**
+ * Syntax tree of an area definition, see {@link AreaParser} for the text form.
+ */
+public sealed interface Shape {
+
+    /**
+     * Circle sector with the center (cx, cy), going counterclockwise from the angle {@code from} to {@code to} (degrees).
+     */
+    record Sector(Linear cx, Linear cy, Linear radius, double from, double to) implements Shape {
+    }
+
+    /**
+     * Convex polygon, the border is included.
+     */
+    record Polygon(List<Linear> xs, List<Linear> ys) implements Shape {
+    }
+
+    /**
+     * Points with {@code a * x + b * y <= c}.
+     */
+    record HalfPlane(Linear a, Linear b, Linear c) implements Shape {
+    }
+
+    record Union(List<Shape> parts) implements Shape {
+    }
+
+    record Intersection(List<Shape> parts) implements Shape {
+    }
+}
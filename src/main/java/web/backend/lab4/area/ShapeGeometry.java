@@ -0,0 +1,101 @@
+package web.backend.lab4.area;
+
+import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts a {@link Shape} for a fixed r into Java2D geometry in math coordinates (y goes up),
+ * so it can be drawn or written out as a vector path. Half-planes are unbounded and are cut to {@code clip}.
+ */
+public final class ShapeGeometry {
+
+    private ShapeGeometry() {
+    }
+
+    public static Area toArea(Shape shape, double r, Rectangle2D clip) {
+        if (shape instanceof Shape.Sector sector) {
+            return sector(sector, r);
+        }
+        if (shape instanceof Shape.Polygon polygon) {
+            Path2D.Double path = new Path2D.Double();
+            for (int i = 0; i < polygon.xs().size(); i++) {
+                double x = polygon.xs().get(i).at(r);
+                double y = polygon.ys().get(i).at(r);
+                if (i == 0) {
+                    path.moveTo(x, y);
+                } else {
+                    path.lineTo(x, y);
+                }
+            }
+            path.closePath();
+            return new Area(path);
+        }
+        if (shape instanceof Shape.HalfPlane plane) {
+            return halfPlane(plane.a().at(r), plane.b().at(r), plane.c().at(r), clip);
+        }
+        if (shape instanceof Shape.Union union) {
+            Area area = new Area();
+            for (Shape part : union.parts()) {
+                area.add(toArea(part, r, clip));
+            }
+            return area;
+        }
+        Shape.Intersection intersection = (Shape.Intersection) shape;
+        Area area = new Area(clip);
+        for (Shape part : intersection.parts()) {
+            area.intersect(toArea(part, r, clip));
+        }
+        return area;
+    }
+
+    private static Area sector(Shape.Sector sector, double r) {
+        double cx = sector.cx().at(r);
+        double cy = sector.cy().at(r);
+        double radius = Math.abs(sector.radius().at(r));
+        double span = sector.to() - sector.from();
+        span -= 360 * Math.floor(span / 360);
+        if (span == 0 && sector.to() != sector.from()) {
+            span = 360;
+        }
+        // Arc2D считает углы для оси y, направленной вниз, поэтому в математических координатах они меняют знак
+        return new Area(new Arc2D.Double(cx - radius, cy - radius, 2 * radius, 2 * radius,
+                -sector.from(), -span, Arc2D.PIE));
+    }
+
+    /**
+     * Cuts the clip rectangle with {@code a * x + b * y <= c}.
+     */
+    private static Area halfPlane(double a, double b, double c, Rectangle2D clip) {
+        double[][] corners = {
+                {clip.getMinX(), clip.getMinY()}, {clip.getMaxX(), clip.getMinY()},
+                {clip.getMaxX(), clip.getMaxY()}, {clip.getMinX(), clip.getMaxY()}};
+        List<double[]> kept = new ArrayList<>();
+        for (int i = 0; i < corners.length; i++) {
+            double[] p = corners[i];
+            double[] q = corners[(i + 1) % corners.length];
+            double sp = a * p[0] + b * p[1] - c;
+            double sq = a * q[0] + b * q[1] - c;
+            if (sp <= 0) {
+                kept.add(p);
+            }
+            if ((sp < 0 && sq > 0) || (sp > 0 && sq < 0)) {
+                double t = sp / (sp - sq);
+                kept.add(new double[]{p[0] + t * (q[0] - p[0]), p[1] + t * (q[1] - p[1])});
+            }
+        }
+        Path2D.Double path = new Path2D.Double();
+        for (int i = 0; i < kept.size(); i++) {
+            if (i == 0) {
+                path.moveTo(kept.get(i)[0], kept.get(i)[1]);
+            } else {
+                path.lineTo(kept.get(i)[0], kept.get(i)[1]);
+            }
+        }
+        path.closePath();
+        return kept.size() < 3 ? new Area() : new Area(path);
+    }
+}
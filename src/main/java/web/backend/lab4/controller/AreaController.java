@@ -0,0 +1,122 @@
+package web.backend.lab4.controller;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.sse.Sse;
+import jakarta.ws.rs.sse.SseEventSink;
+import web.backend.lab4.dto.ErrorDTO;
+import web.backend.lab4.dto.EstimateDTO;
+import web.backend.lab4.filters.AdminOnly;
+import web.backend.lab4.service.AreaService;
+import web.backend.lab4.util.Validator;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+@Path("/area")
+public class AreaController {
+    @Inject
+    private AreaService areaService;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getArea() {
+        return Response.ok(areaService.getArea()).build();
+    }
+
+    /**
+     * Installs the area for every user. Stored results are re-evaluated in the background, see /backfill.
+     */
+    @PUT
+    @AdminOnly
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response setArea(String source) {
+        return areaService.setArea(source)
+                .map(error -> Response.status(Response.Status.BAD_REQUEST).entity(error).build())
+                .orElse(Response.accepted(areaService.getArea()).build());
+    }
+
+    @GET
+    @Path("/catalog")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCatalog() {
+        return Response.ok(areaService.getCatalog()).build();
+    }
+
+    @PUT
+    @Path("/catalog/{name}")
+    @AdminOnly
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response putCatalogArea(@PathParam("name") String name, String source) {
+        return areaService.putCatalogArea(name, source)
+                .map(error -> Response.status(Response.Status.BAD_REQUEST).entity(error).build())
+                .orElse(Response.ok().build());
+    }
+
+    @DELETE
+    @Path("/catalog/{name}")
+    @AdminOnly
+    public Response removeCatalogArea(@PathParam("name") String name) {
+        return areaService.removeCatalogArea(name)
+                ? Response.ok().build()
+                : Response.status(Response.Status.NOT_FOUND)
+                        .entity(ErrorDTO.of("Area not found"))
+                        .build();
+    }
+
+    /**
+     * Streams Monte Carlo estimates of the area for the given r as server-sent events
+     * until the standard error is at most {@code error} or the sample budget of the service is spent.
+     * The estimation runs in the background, the request thread returns right away.
+     */
+    @GET
+    @Path("/estimate")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    public void estimate(@QueryParam("r") Integer r,
+                         @QueryParam("error") @DefaultValue("0.01") double error,
+                         @QueryParam("extent") Double extent,
+                         @QueryParam("seed") Long seed,
+                         @Context SseEventSink sink,
+                         @Context Sse sse) {
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        if (r == null || r < domain.minR() || r > domain.maxR() || !(error > 0) || (extent != null && !(extent > 0))) {
+            throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Invalid r, error or extent"))
+                    .type(MediaType.APPLICATION_JSON)
+                    .build());
+        }
+        areaService.estimateArea(r, error, extent, seed != null ? seed : ThreadLocalRandom.current().nextLong(),
+                estimate -> {
+                    if (sink.isClosed()) {
+                        return false;
+                    }
+                    try {
+                        sink.send(sse.newEventBuilder()
+                                        .name("estimate")
+                                        .mediaType(MediaType.APPLICATION_JSON_TYPE)
+                                        .data(EstimateDTO.class, estimate)
+                                        .build())
+                                .toCompletableFuture()
+                                .join();
+                        return true;
+                    } catch (CompletionException e) {
+                        // клиент отключился
+                        return false;
+                    }
+                },
+                sink::close);
+    }
+
+    @DELETE
+    @AdminOnly
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response resetArea() {
+        areaService.resetArea();
+        return Response.accepted(areaService.getArea()).build();
+    }
+}
@@ -41,15 +41,33 @@ public class AuthController {
     @Path("/refresh")
     @Produces(MediaType.APPLICATION_JSON)
     public Response refreshToken(@CookieParam("refresh_token") String refreshToken) {
+        // непригодный токен, в том числе удалённого аккаунта, стирается вместе с access_token
+        AuthService.AuthResponse cleared = authService.logout();
         return authService.refreshToken(refreshToken)
                 .map(response -> Response.ok()
                         .cookie(response.accessTokenCookie())
                         .build())
                 .orElse(Response.status(Response.Status.UNAUTHORIZED)
+                        .cookie(cleared.accessTokenCookie(), cleared.refreshTokenCookie())
                         .entity(ErrorDTO.of("Invalid or expired refresh token"))
                         .build());
     }
 
+    @POST
+    @Path("/delete")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response deleteAccount(@Valid UserDTO userDTO) {
+        if (!authService.deleteAccount(userDTO)) {
+            return Response.status(Response.Status.UNAUTHORIZED)
+                    .entity(ErrorDTO.of("Wrong username or password"))
+                    .build();
+        }
+        AuthService.AuthResponse response = authService.logout();
+        return Response.ok()
+                .cookie(response.accessTokenCookie(), response.refreshTokenCookie())
+                .build();
+    }
+
     @POST
     @Path("/logout")
     public Response logout() {
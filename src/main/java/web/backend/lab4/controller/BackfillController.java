@@ -0,0 +1,39 @@
+package web.backend.lab4.controller;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import web.backend.lab4.filters.AdminOnly;
+import web.backend.lab4.service.BackfillService;
+
+@Path("/backfill")
+public class BackfillController {
+    @Inject
+    private BackfillService backfillService;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getProgress() {
+        return Response.ok(backfillService.getProgress()).build();
+    }
+
+    @POST
+    @Path("/start")
+    @AdminOnly
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response start(@QueryParam("restart") @DefaultValue("false") boolean restart) {
+        return backfillService.start(restart)
+                .map(error -> Response.status(Response.Status.CONFLICT).entity(error).build())
+                .orElse(Response.accepted(backfillService.getProgress()).build());
+    }
+
+    @POST
+    @Path("/stop")
+    @AdminOnly
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response stop() {
+        backfillService.stop();
+        return Response.accepted(backfillService.getProgress()).build();
+    }
+}
@@ -0,0 +1,53 @@
+package web.backend.lab4.controller;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.CacheControl;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import web.backend.lab4.auth.JwtProvider;
+import web.backend.lab4.dto.ErrorDTO;
+import web.backend.lab4.service.TileService;
+import web.backend.lab4.util.TileRenderer;
+import web.backend.lab4.util.Validator;
+
+import java.util.Locale;
+
+@Path("/graph")
+public class GraphController {
+    @Inject
+    private TileService tileService;
+
+    @Inject
+    private JwtProvider jwtProvider;
+
+    @GET
+    @Path("/tile/{z}/{x}/{y}.{format: png|svg}")
+    public Response getTile(@CookieParam("access_token") String accessToken,
+                            @PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y,
+                            @PathParam("format") String format, @QueryParam("r") Integer r) {
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        if (r == null || r < domain.minR() || r > domain.maxR()) {
+            return badRequest("Invalid r");
+        }
+        if (z < TileRenderer.MIN_ZOOM || z > TileRenderer.MAX_ZOOM) {
+            return badRequest("Invalid zoom");
+        }
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        TileRenderer.Format tileFormat = TileRenderer.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoCache(true);
+        return Response.ok(tileService.getTile(userId, r, new TileRenderer.Tile(z, x, y), tileFormat),
+                        tileFormat.mediaType())
+                .cacheControl(cacheControl)
+                .build();
+    }
+
+    private static Response badRequest(String message) {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(ErrorDTO.of(message))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
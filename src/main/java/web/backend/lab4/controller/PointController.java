@@ -1,21 +1,52 @@
 package web.backend.lab4.controller;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import web.backend.lab4.dto.CompactPointDTO;
 import web.backend.lab4.dto.ErrorDTO;
+import web.backend.lab4.dto.ImportDTO;
 import web.backend.lab4.dto.PointDTO;
+import web.backend.lab4.service.ImportService;
 import web.backend.lab4.service.PointService;
 import web.backend.lab4.auth.JwtProvider;
+import web.backend.lab4.util.ColumnarPointWriter;
+import web.backend.lab4.util.PointExportWriter;
+import web.backend.lab4.util.Validator;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Locale;
 
 @Path("/point")
 public class PointController {
+    private static final int MAX_NEIGHBOURS = 1000;
+    private static final int MAX_BATCH = 10000;
+    private static final int MAX_PAGE = 10000;
+    private static final String VIEW_STORED = "stored";
+    private static final String VIEW_EXPANDED = "expanded";
+    private static final String VIEW_COMPACT = "compact";
+    // поток в ответ не закрываем, это дело контейнера
+    private static final JsonFactory JSON = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
     @Inject
     private PointService pointService;
 
+    @Inject
+    private ImportService importService;
+
     @Inject
     private JwtProvider jwtProvider;
 
@@ -24,23 +55,328 @@ public class PointController {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     public Response addPoint(PointDTO pointDTO, @CookieParam("access_token") String accessToken) {
-        String username = jwtProvider.getUsernameFromToken(accessToken);
-        return pointService.addPoint(pointDTO, username)
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        return pointService.addPoint(pointDTO, userId)
                 .map(result -> Response.status(Response.Status.OK).entity(result).build())
                 .orElse(Response.status(Response.Status.INTERNAL_SERVER_ERROR)
                         .entity(ErrorDTO.of("Error processing point"))
                         .build());
     }
 
+    @POST
+    @Path("/add/batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response addPoints(List<PointDTO> points, @CookieParam("access_token") String accessToken) {
+        if (points == null || points.isEmpty() || points.size() > MAX_BATCH) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Batch must contain from 1 to " + MAX_BATCH + " points"))
+                    .build();
+        }
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        return pointService.addPoints(points, userId)
+                .map(results -> Response.ok(results).build())
+                .orElse(Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(ErrorDTO.of("Error processing points"))
+                        .build());
+    }
+
+    /**
+     * Imports points from a CSV body of any size, one {@code x,y,r[,created_at]} per line.
+     * Lines that cannot be imported are listed in the report and skipped.
+     */
+    @POST
+    @Path("/import")
+    @Consumes({"text/csv", MediaType.TEXT_PLAIN})
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response importPoints(InputStream csv, @CookieParam("access_token") String accessToken) {
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        ImportDTO report = importService.importCsv(userId, csv);
+        return Response.status(report.getError() == null ? Response.Status.OK : Response.Status.INTERNAL_SERVER_ERROR)
+                .entity(report)
+                .build();
+    }
+
+    @POST
+    @Path("/catalog")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response checkCatalog(List<PointDTO> points) {
+        if (points == null || points.isEmpty() || points.size() > MAX_BATCH) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Batch must contain from 1 to " + MAX_BATCH + " points"))
+                    .build();
+        }
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        for (PointDTO point : points) {
+            if (point == null || point.getR() < domain.minR() || point.getR() > domain.maxR()) {
+                return Response.status(Response.Status.BAD_REQUEST)
+                        .entity(ErrorDTO.of("Invalid r"))
+                        .build();
+            }
+        }
+        return Response.ok(pointService.checkCatalog(points)).build();
+    }
+
+    /**
+     * Without {@code limit} the whole history is streamed as a JSON array while it is read from the database.
+     * With {@code limit} one page is returned, the next one is requested with {@code after} set to its
+     * {@code next}. {@code from} (inclusive) and {@code to} (exclusive) limit the points to the time they
+     * were sent, as ISO date or date-time.
+     * <p>
+     * A point sent several times is stored once. By default ({@code view=expanded}) it is streamed as many times
+     * as it was sent, {@code view=compact} streams it once with {@code occurrences} and {@code lastSeen} and
+     * {@code view=stored} once as it is stored. Only {@code view=stored} goes with {@code limit}, {@code from}
+     * or {@code to}.
+     */
     @GET
     @Path("/get")
     @Produces(MediaType.APPLICATION_JSON)
-    public Response getPoints(@CookieParam("access_token") String accessToken) {
+    public Response getPoints(@CookieParam("access_token") String accessToken, @QueryParam("r") Integer r,
+                              @QueryParam("after") @DefaultValue("0") long after, @QueryParam("limit") Integer limit,
+                              @QueryParam("from") String from, @QueryParam("to") String to,
+                              @QueryParam("view") @DefaultValue(VIEW_EXPANDED) String view) {
+        if (!VIEW_STORED.equals(view) && !VIEW_EXPANDED.equals(view) && !VIEW_COMPACT.equals(view)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Unknown view " + view))
+                    .build();
+        }
+        if (!VIEW_STORED.equals(view) && (limit != null || from != null || to != null)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Only view " + VIEW_STORED + " can be paged or limited in time"))
+                    .build();
+        }
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        if (r != null && (r < domain.minR() || r > domain.maxR())) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Invalid r"))
+                    .build();
+        }
+        if (limit != null && (limit < 1 || limit > MAX_PAGE)) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Limit must be from 1 to " + MAX_PAGE))
+                    .build();
+        }
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            fromTime = parseTime(from);
+            toTime = parseTime(to);
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Invalid time range"))
+                    .build();
+        }
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        if (limit != null) {
+            return pointService.getPointsPage(userId, r, after, limit, fromTime, toTime)
+                    .map(page -> Response.ok(page).build())
+                    .orElse(Response.status(Response.Status.BAD_REQUEST)
+                            .entity(ErrorDTO.of("User not found"))
+                            .build());
+        }
+        StreamingOutput body = out -> {
+            try (JsonGenerator json = JSON.createGenerator(out)) {
+                json.writeStartArray();
+                switch (view) {
+                    case VIEW_STORED ->
+                            pointService.forEachPoint(userId, r, fromTime, toTime, point -> writePoint(json, point));
+                    case VIEW_COMPACT -> pointService.forEachCompactPoint(userId, r, point -> writePoint(json, point));
+                    default -> pointService.forEachSubmission(userId, r, point -> writePoint(json, point));
+                }
+                json.writeEndArray();
+            } catch (RuntimeException e) {
+                throw writeFailure(e);
+            }
+        };
+        return Response.ok(body).build();
+    }
+
+    /**
+     * Streams the stored points of the user as CSV or in the binary columnar format of
+     * {@link ColumnarPointWriter}, while they are read from the database. See {@link #getPoints} for
+     * {@code from} and {@code to}.
+     */
+    @GET
+    @Path("/export")
+    public Response exportPoints(@CookieParam("access_token") String accessToken,
+                                 @QueryParam("format") @DefaultValue("csv") String format,
+                                 @QueryParam("from") String from, @QueryParam("to") String to) {
+        PointExportWriter.Format exportFormat;
+        try {
+            exportFormat = PointExportWriter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Format must be csv or columnar"))
+                    .type(MediaType.APPLICATION_JSON)
+                    .build();
+        }
+        LocalDateTime fromTime;
+        LocalDateTime toTime;
+        try {
+            fromTime = parseTime(from);
+            toTime = parseTime(to);
+        } catch (DateTimeParseException e) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity(ErrorDTO.of("Invalid time range"))
+                    .type(MediaType.APPLICATION_JSON)
+                    .build();
+        }
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        StreamingOutput body = out -> {
+            PointExportWriter writer = exportFormat.open(out);
+            try {
+                pointService.exportPoints(userId, fromTime, toTime, row -> {
+                    try {
+                        writer.write(row);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                throw writeFailure(e);
+            }
+            writer.finish();
+        };
+        return Response.ok(body, exportFormat.mediaType())
+                .header("Content-Disposition", "attachment; filename=\"points." +
+                        (exportFormat == PointExportWriter.Format.CSV ? "csv" : "pcol") + "\"")
+                .build();
+    }
+
+    private static IOException writeFailure(RuntimeException e) {
+        // ошибка записи в ответ приходит из-за границы EJB обёрнутой
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof UncheckedIOException io) {
+                return io.getCause();
+            }
+        }
+        throw e;
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        return value.length() == 10 ? LocalDate.parse(value).atStartOfDay() : LocalDateTime.parse(value);
+    }
+
+    private static void writePoint(JsonGenerator json, CompactPointDTO point) {
+        try {
+            json.writeStartObject();
+            json.writeNumberField("x", point.getX());
+            json.writeNumberField("y", point.getY());
+            json.writeNumberField("r", point.getR());
+            json.writeBooleanField("result", point.isResult());
+            json.writeNumberField("occurrences", point.getOccurrences());
+            json.writeStringField("lastSeen", point.getLastSeen().toString());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writePoint(JsonGenerator json, PointDTO point) {
+        try {
+            json.writeStartObject();
+            json.writeNumberField("x", point.getX());
+            json.writeFieldName("y");
+            if (point.getY() != null) {
+                json.writeNumber(point.getY());
+            } else {
+                json.writeNull();
+            }
+            json.writeNumberField("r", point.getR());
+            json.writeBooleanField("result", point.isResult());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @GET
+    @Path("/box")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPointsInBox(@CookieParam("access_token") String accessToken,
+                                   @QueryParam("minX") Double minX, @QueryParam("minY") Double minY,
+                                   @QueryParam("maxX") Double maxX, @QueryParam("maxY") Double maxY) {
+        if (!isFinite(minX, minY, maxX, maxY) || minX > maxX || minY > maxY) {
+            return invalidQuery();
+        }
         Long userId = jwtProvider.getUserIdFromToken(accessToken);
-        return pointService.getPoints(userId)
+        return pointService.getPointsInBox(userId, minX, minY, maxX, maxY)
                 .map(results -> Response.ok(results).build())
-                .orElse(Response.status(Response.Status.BAD_REQUEST)
-                        .entity(ErrorDTO.of("User not found"))
-                        .build());
+                .orElse(invalidQuery());
+    }
+
+    @GET
+    @Path("/circle")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getPointsInCircle(@CookieParam("access_token") String accessToken,
+                                      @QueryParam("x") Double x, @QueryParam("y") Double y,
+                                      @QueryParam("radius") Double radius) {
+        if (!isFinite(x, y, radius) || radius < 0) {
+            return invalidQuery();
+        }
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        return pointService.getPointsInCircle(userId, x, y, radius)
+                .map(results -> Response.ok(results).build())
+                .orElse(invalidQuery());
+    }
+
+    @GET
+    @Path("/nearest")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getNearestPoints(@CookieParam("access_token") String accessToken,
+                                     @QueryParam("x") Double x, @QueryParam("y") Double y,
+                                     @QueryParam("k") @DefaultValue("10") int k) {
+        if (!isFinite(x, y) || k < 1 || k > MAX_NEIGHBOURS) {
+            return invalidQuery();
+        }
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        return pointService.getNearestPoints(userId, x, y, k)
+                .map(results -> Response.ok(results).build())
+                .orElse(invalidQuery());
+    }
+
+    @GET
+    @Path("/density")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getDensity(@CookieParam("access_token") String accessToken,
+                               @QueryParam("cell") @DefaultValue("0.5") double cell) {
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        return pointService.getDensity(userId, cell)
+                .map(cells -> Response.ok(cells).build())
+                .orElse(invalidCell());
+    }
+
+    @GET
+    @Path("/density/all")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getTotalDensity(@QueryParam("cell") @DefaultValue("0.5") double cell) {
+        return pointService.getTotalDensity(cell)
+                .map(cells -> Response.ok(cells).build())
+                .orElse(invalidCell());
+    }
+
+    private static Response invalidCell() {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(ErrorDTO.of("Cell size must be a multiple of 0.25 up to 100"))
+                .build();
+    }
+
+    private static boolean isFinite(Double... values) {
+        for (Double value : values) {
+            if (value == null || !Double.isFinite(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Response invalidQuery() {
+        return Response.status(Response.Status.BAD_REQUEST)
+                .entity(ErrorDTO.of("Invalid query"))
+                .build();
     }
-}
\ No newline at end of file
+}
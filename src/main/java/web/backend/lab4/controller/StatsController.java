@@ -0,0 +1,33 @@
+package web.backend.lab4.controller;
+
+import jakarta.inject.Inject;
+import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import web.backend.lab4.auth.JwtProvider;
+import web.backend.lab4.filters.AdminOnly;
+import web.backend.lab4.service.StatsService;
+
+@Path("/stats")
+public class StatsController {
+    @Inject
+    private StatsService statsService;
+
+    @Inject
+    private JwtProvider jwtProvider;
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getStats(@CookieParam("access_token") String accessToken) {
+        Long userId = jwtProvider.getUserIdFromToken(accessToken);
+        return Response.ok(statsService.getStats(userId)).build();
+    }
+
+    @POST
+    @Path("/rebuild")
+    @AdminOnly
+    public Response rebuild() {
+        statsService.rebuild();
+        return Response.noContent().build();
+    }
+}
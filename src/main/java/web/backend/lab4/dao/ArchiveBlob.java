@@ -0,0 +1,9 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * An archive blob of one user without its points: the month and the first and last id in it.
+ */
+public record ArchiveBlob(LocalDateTime period, long minId, long maxId) {
+}
@@ -0,0 +1,73 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+
+public interface ArchiveDAO {
+
+    /**
+     * @return months, with the users that have points in them, that start before {@code cutoff} and still
+     * have points in results_table.
+     */
+    List<ArchivePeriod> getPeriodsBefore(LocalDateTime cutoff);
+
+    /**
+     * Moves the points of the user sent in the month starting at {@code period} from results_table into
+     * the archive blob of that month, in one transaction. The points stay in user_stats and result_counts.
+     *
+     * @return number of points moved.
+     */
+    int archive(Long userId, LocalDateTime period);
+
+    /**
+     * @return the blobs of the user that may hold points with id greater than {@code afterId}, ordered by
+     * their first id. Blobs stored before the ids were recorded span every id.
+     */
+    List<ArchiveBlob> getBlobsAfter(Long userId, long afterId);
+
+    /**
+     * @return the points of one blob of the user, ordered by id, empty if the blob is gone.
+     */
+    List<ResultRow> getBlobPoints(Long userId, LocalDateTime period);
+
+    /**
+     * Passes the points of each blob of the user, of every user if {@code userId} is null, to {@code action},
+     * one blob at a time and in no particular order.
+     */
+    void forEachBlob(Long userId, Consumer<List<ResultRow>> action);
+
+    /**
+     * Same as {@link #getBlobPoints}, with the number of times each point was sent and the time it was sent
+     * last. A point sent once has the start of the month as that time.
+     */
+    List<CompactRow> getCompactBlobPoints(Long userId, ArchiveBlob blob);
+
+    /**
+     * @return every blob, ordered by user and month.
+     */
+    List<ArchivePeriod> getArchivedPeriods();
+
+    /**
+     * @return blobs of the users that have result_counts rows without a result, ordered by user and month.
+     */
+    List<ArchivePeriod> getPeriodsWithUnknownResults();
+
+    /**
+     * Sets the result of the result_counts rows of the points of one blob that have none, the counters of
+     * points archived before the column was added. The result_counts trigger adds their repeats to user_stats.
+     *
+     * @return number of counters filled.
+     */
+    int fillCountResults(Long userId, LocalDateTime period);
+
+    /**
+     * Replaces the results and hit masks of the points of one blob by the ones {@code reevaluation} returns
+     * for them, in the same order. user_stats, results_archive_stats and result_counts follow the new results.
+     *
+     * @return number of points that changed.
+     */
+    int reevaluate(Long userId, LocalDateTime period, UnaryOperator<List<ResultRow>> reevaluation);
+}
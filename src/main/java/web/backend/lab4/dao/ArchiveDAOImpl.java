@@ -0,0 +1,340 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
+import org.hibernate.jpa.HibernateHints;
+import web.backend.lab4.util.PointArchive;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Archive of old points in results_archive, one {@link PointArchive} blob per user and month.
+ * <p>
+ * Points are moved with one statement that deletes them from results_table and returns them. The delete
+ * trigger takes them out of user_stats, the same statement puts them back and adds them to
+ * results_archive_stats, which {@code user_stats_rebuild()} reads.
+ */
+@Stateless
+public class ArchiveDAOImpl implements ArchiveDAO {
+    private static final String MOVE = "WITH moved AS (DELETE FROM s408402.results_table " +
+            "WHERE user_id = ? AND created_at >= ? AND created_at < ? " +
+            "AND x IS NOT NULL AND y IS NOT NULL AND r IS NOT NULL " +
+            "RETURNING id, x, y, r, result, hit_mask, created_at), " +
+            "summary AS (SELECT r, count(*) AS total, count(*) FILTER (WHERE result) AS hits, " +
+            "min(created_at) AS first_at, max(created_at) AS last_at FROM moved GROUP BY r), " +
+            "kept AS (UPDATE s408402.user_stats s SET total = s.total + m.total, hits = s.hits + m.hits " +
+            "FROM summary m WHERE s.user_id = ? AND s.r = m.r), " +
+            "archived AS (INSERT INTO s408402.results_archive_stats AS a (user_id, r, total, hits, first_at, last_at) " +
+            "SELECT ?, r, total, hits, first_at, last_at FROM summary " +
+            "ON CONFLICT (user_id, r) DO UPDATE SET total = a.total + EXCLUDED.total, hits = a.hits + EXCLUDED.hits, " +
+            "first_at = least(a.first_at, EXCLUDED.first_at), last_at = greatest(a.last_at, EXCLUDED.last_at)) " +
+            "SELECT id, x, y, r, result, hit_mask FROM moved ORDER BY id";
+
+    private static final int BLOB_FETCH_SIZE = 16;
+
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @PersistenceContext(name="replica", unitName=ReplicaRouter.REPLICA_UNIT)
+    private EntityManager replica;
+
+    @EJB
+    private ReplicaRouter router;
+
+    @Override
+    public List<ArchivePeriod> getPeriodsBefore(LocalDateTime cutoff) {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT user_id, date_trunc('month', created_at) FROM s408402.results_table " +
+                                "WHERE created_at < ?1 AND x IS NOT NULL AND y IS NOT NULL AND r IS NOT NULL " +
+                                "GROUP BY 1, 2 ORDER BY 1, 2")
+                .setParameter(1, cutoff)
+                .getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new ArchivePeriod(((Number) row[0]).longValue(),
+                        NativeTimestamps.toLocalDateTime(row[1])))
+                .toList();
+    }
+
+    @Override
+    public int archive(Long userId, LocalDateTime period) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            lock(connection, userId);
+            List<ResultRow> rows = new ArrayList<>(readBlob(connection, userId, period));
+            int archived = rows.size();
+            try (PreparedStatement move = connection.prepareStatement(MOVE)) {
+                move.setLong(1, userId);
+                move.setTimestamp(2, Timestamp.valueOf(period));
+                move.setTimestamp(3, Timestamp.valueOf(period.plusMonths(1)));
+                move.setLong(4, userId);
+                move.setLong(5, userId);
+                try (ResultSet resultSet = move.executeQuery()) {
+                    while (resultSet.next()) {
+                        int hitMask = resultSet.getInt(6);
+                        rows.add(new ResultRow(resultSet.getLong(1), resultSet.getInt(2), resultSet.getDouble(3),
+                                resultSet.getInt(4), resultSet.getBoolean(5), resultSet.wasNull() ? null : hitMask));
+                    }
+                }
+            }
+            int moved = rows.size() - archived;
+            if (moved == 0) {
+                return 0;
+            }
+            // точки, импортированные в уже архивный месяц, получают id позже остальных
+            rows.sort(Comparator.comparingLong(ResultRow::id));
+            save(connection, userId, period, rows);
+            return moved;
+        });
+    }
+
+    @Override
+    public List<ArchivePeriod> getArchivedPeriods() {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT user_id, period FROM s408402.results_archive ORDER BY user_id, period")
+                .getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new ArchivePeriod(((Number) row[0]).longValue(),
+                        NativeTimestamps.toLocalDateTime(row[1])))
+                .toList();
+    }
+
+    @Override
+    public List<ArchivePeriod> getPeriodsWithUnknownResults() {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT a.user_id, a.period FROM s408402.results_archive a " +
+                                "WHERE EXISTS (SELECT 1 FROM s408402.result_counts c " +
+                                "WHERE c.user_id = a.user_id AND c.result IS NULL) " +
+                                "ORDER BY a.user_id, a.period")
+                .getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new ArchivePeriod(((Number) row[0]).longValue(),
+                        NativeTimestamps.toLocalDateTime(row[1])))
+                .toList();
+    }
+
+    @Override
+    public int fillCountResults(Long userId, LocalDateTime period) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            lock(connection, userId);
+            List<ResultRow> rows = readBlob(connection, userId, period);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            Long[] ids = new Long[rows.size()];
+            Boolean[] results = new Boolean[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                ids[i] = rows.get(i).id();
+                results[i] = rows.get(i).result();
+            }
+            // одним оператором: триггер result_counts срабатывает один раз на блок
+            try (PreparedStatement fill = connection.prepareStatement(
+                    "UPDATE s408402.result_counts c SET result = v.result " +
+                            "FROM unnest(?::bigint[], ?::boolean[]) AS v(id, result) " +
+                            "WHERE c.user_id = ? AND c.result_id = v.id AND c.result IS NULL")) {
+                fill.setArray(1, connection.createArrayOf("bigint", ids));
+                fill.setArray(2, connection.createArrayOf("boolean", results));
+                fill.setLong(3, userId);
+                return fill.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public int reevaluate(Long userId, LocalDateTime period, UnaryOperator<List<ResultRow>> reevaluation) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            lock(connection, userId);
+            List<ResultRow> rows = readBlob(connection, userId, period);
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            List<ResultRow> updated = reevaluation.apply(rows);
+            // {0, на сколько уменьшились hits}: архивные точки есть в user_stats и results_archive_stats,
+            // их повторы в user_stats поправит триггер result_counts
+            Map<StatsKey, long[]> stats = new HashMap<>();
+            int changed = 0;
+            try (PreparedStatement counts = connection.prepareStatement(
+                    "UPDATE s408402.result_counts SET result = ? WHERE user_id = ? AND result_id = ?")) {
+                for (int i = 0; i < rows.size(); i++) {
+                    ResultRow before = rows.get(i);
+                    ResultRow after = updated.get(i);
+                    if (after.result() == before.result() && Objects.equals(after.hitMask(), before.hitMask())) {
+                        continue;
+                    }
+                    changed++;
+                    if (after.result() != before.result()) {
+                        stats.computeIfAbsent(new StatsKey(userId, before.r()), key -> new long[2])[1] +=
+                                after.result() ? -1 : 1;
+                        counts.setBoolean(1, after.result());
+                        counts.setLong(2, userId);
+                        counts.setLong(3, before.id());
+                        counts.addBatch();
+                    }
+                }
+                counts.executeBatch();
+            }
+            if (changed == 0) {
+                return 0;
+            }
+            subtract(connection, "s408402.user_stats", stats);
+            subtract(connection, "s408402.results_archive_stats", stats);
+            save(connection, userId, period, updated);
+            return changed;
+        });
+    }
+
+    /**
+     * Until the end of the transaction: another writer of the same user does not overwrite a blob read before it.
+     */
+    private static void lock(Connection connection, Long userId) throws SQLException {
+        try (PreparedStatement lock = connection.prepareStatement("SELECT pg_advisory_xact_lock(?)")) {
+            lock.setLong(1, userId);
+            lock.executeQuery().close();
+        }
+    }
+
+    /**
+     * @param rows ordered by id.
+     */
+    private static void save(Connection connection, Long userId, LocalDateTime period, List<ResultRow> rows)
+            throws SQLException {
+        try (PreparedStatement save = connection.prepareStatement(
+                "INSERT INTO s408402.results_archive (user_id, period, points, min_id, max_id, data) " +
+                        "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (user_id, period) DO UPDATE SET " +
+                        "points = EXCLUDED.points, min_id = EXCLUDED.min_id, max_id = EXCLUDED.max_id, " +
+                        "data = EXCLUDED.data")) {
+            save.setLong(1, userId);
+            save.setTimestamp(2, Timestamp.valueOf(period));
+            save.setInt(3, rows.size());
+            save.setLong(4, rows.get(0).id());
+            save.setLong(5, rows.get(rows.size() - 1).id());
+            save.setBytes(6, PointArchive.encode(rows));
+            save.executeUpdate();
+        }
+    }
+
+    private static List<ResultRow> readBlob(Connection connection, Long userId, LocalDateTime period)
+            throws SQLException {
+        try (PreparedStatement select = connection.prepareStatement(
+                "SELECT data FROM s408402.results_archive WHERE user_id = ? AND period = ?")) {
+            select.setLong(1, userId);
+            select.setTimestamp(2, Timestamp.valueOf(period));
+            try (ResultSet resultSet = select.executeQuery()) {
+                return resultSet.next() ? PointArchive.decode(resultSet.getBytes(1)) : List.of();
+            }
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<ArchiveBlob> getBlobsAfter(Long userId, long afterId) {
+        List<?> rows = router.reader(userId, entityManager, replica).createNativeQuery(
+                        "SELECT period, min_id, max_id FROM s408402.results_archive " +
+                                "WHERE user_id = ?1 AND (max_id IS NULL OR max_id > ?2) ORDER BY coalesce(min_id, 0)")
+                .setParameter(1, userId)
+                .setParameter(2, afterId)
+                .getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new ArchiveBlob(NativeTimestamps.toLocalDateTime(row[0]),
+                        row[1] != null ? ((Number) row[1]).longValue() : 0,
+                        row[2] != null ? ((Number) row[2]).longValue() : Long.MAX_VALUE))
+                .toList();
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<ResultRow> getBlobPoints(Long userId, LocalDateTime period) {
+        List<?> blobs = router.reader(userId, entityManager, replica).createNativeQuery(
+                        "SELECT data FROM s408402.results_archive WHERE user_id = ?1 AND period = ?2")
+                .setParameter(1, userId)
+                .setParameter(2, period)
+                .getResultList();
+        return blobs.isEmpty() ? List.of() : PointArchive.decode((byte[]) blobs.get(0));
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void forEachBlob(Long userId, Consumer<List<ResultRow>> action) {
+        Query query = router.reader(userId, entityManager, replica).createNativeQuery(
+                        "SELECT data FROM s408402.results_archive" + (userId != null ? " WHERE user_id = ?1" : ""))
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, BLOB_FETCH_SIZE);
+        if (userId != null) {
+            query.setParameter(1, userId);
+        }
+        try (Stream<?> blobs = query.getResultStream()) {
+            blobs.forEach(blob -> action.accept(PointArchive.decode((byte[]) blob)));
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<CompactRow> getCompactBlobPoints(Long userId, ArchiveBlob blob) {
+        List<ResultRow> rows = getBlobPoints(userId, blob.period());
+        if (rows.isEmpty()) {
+            return List.of();
+        }
+        // счётчики точек блока: их result_id лежат между первым и последним id блока
+        List<?> counters = router.reader(userId, entityManager, replica).createNativeQuery(
+                        "SELECT result_id, occurrences, last_seen FROM s408402.result_counts " +
+                                "WHERE user_id = ?1 AND result_id BETWEEN ?2 AND ?3")
+                .setParameter(1, userId)
+                .setParameter(2, rows.get(0).id())
+                .setParameter(3, rows.get(rows.size() - 1).id())
+                .getResultList();
+        Map<Long, Object[]> byId = new HashMap<>(counters.size() * 2);
+        for (Object counter : counters) {
+            Object[] row = (Object[]) counter;
+            byId.put(((Number) row[0]).longValue(), row);
+        }
+        List<CompactRow> compact = new ArrayList<>(rows.size());
+        for (ResultRow row : rows) {
+            // точка без счётчика отправлена один раз, своего времени у архивной точки нет
+            Object[] counter = byId.get(row.id());
+            compact.add(new CompactRow(row.id(), row.x(), row.y(), row.r(), row.result(), row.hitMask(),
+                    counter != null ? ((Number) counter[1]).longValue() : 1,
+                    counter != null ? NativeTimestamps.toLocalDateTime(counter[2]) : blob.period()));
+        }
+        return compact;
+    }
+
+    private static void subtract(Connection connection, String table, Map<StatsKey, long[]> stats)
+            throws SQLException {
+        try (PreparedStatement update = connection.prepareStatement(
+                "UPDATE " + table + " SET total = total - ?, hits = hits - ? WHERE user_id = ? AND r = ?")) {
+            for (Map.Entry<StatsKey, long[]> entry : stats.entrySet()) {
+                update.setLong(1, entry.getValue()[0]);
+                update.setLong(2, entry.getValue()[1]);
+                update.setLong(3, entry.getKey().userId());
+                update.setInt(4, entry.getKey().r());
+                update.addBatch();
+            }
+            update.executeBatch();
+        }
+    }
+
+    private record StatsKey(long userId, int r) {
+    }
+}
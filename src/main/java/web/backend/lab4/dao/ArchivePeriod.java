@@ -0,0 +1,9 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * A month of points of one user, the unit of {@link ArchiveDAO#archive}.
+ */
+public record ArchivePeriod(long userId, LocalDateTime period) {
+}
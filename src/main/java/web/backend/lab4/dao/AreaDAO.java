@@ -0,0 +1,32 @@
+package web.backend.lab4.dao;
+
+import java.util.Map;
+import java.util.Optional;
+
+
+public interface AreaDAO {
+
+    /**
+     * @return source of the installed area, empty if the built-in area is used.
+     */
+    Optional<String> getActiveArea();
+
+    void saveActiveArea(String source);
+
+    /**
+     * Goes back to the built-in area.
+     */
+    void deleteActiveArea();
+
+    /**
+     * @return sources of the named areas of the catalog by name.
+     */
+    Map<String, String> getCatalogAreas();
+
+    void saveCatalogArea(String name, String source);
+
+    /**
+     * @return false if there is no such area.
+     */
+    boolean deleteCatalogArea(String name);
+}
@@ -0,0 +1,70 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Area definitions kept in the database, so they survive a restart, see {@code AreaRestoreService}.
+ */
+@Stateless
+public class AreaDAOImpl implements AreaDAO {
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<String> getActiveArea() {
+        return entityManager.createNativeQuery("SELECT source FROM s408402.active_area WHERE id = 1")
+                .getResultStream()
+                .findFirst()
+                .map(String::valueOf);
+    }
+
+    @Override
+    public void saveActiveArea(String source) {
+        entityManager.createNativeQuery(
+                        "INSERT INTO s408402.active_area (id, source) VALUES (1, ?1) " +
+                                "ON CONFLICT (id) DO UPDATE SET source = EXCLUDED.source, updated_at = now()")
+                .setParameter(1, source)
+                .executeUpdate();
+    }
+
+    @Override
+    public void deleteActiveArea() {
+        entityManager.createNativeQuery("DELETE FROM s408402.active_area").executeUpdate();
+    }
+
+    @Override
+    public Map<String, String> getCatalogAreas() {
+        List<?> rows = entityManager.createNativeQuery("SELECT name, source FROM s408402.area_catalog ORDER BY name")
+                .getResultList();
+        Map<String, String> areas = new LinkedHashMap<>();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            areas.put((String) columns[0], (String) columns[1]);
+        }
+        return areas;
+    }
+
+    @Override
+    public void saveCatalogArea(String name, String source) {
+        entityManager.createNativeQuery(
+                        "INSERT INTO s408402.area_catalog (name, source) VALUES (?1, ?2) " +
+                                "ON CONFLICT (name) DO UPDATE SET source = EXCLUDED.source, updated_at = now()")
+                .setParameter(1, name)
+                .setParameter(2, source)
+                .executeUpdate();
+    }
+
+    @Override
+    public boolean deleteCatalogArea(String name) {
+        return entityManager.createNativeQuery("DELETE FROM s408402.area_catalog WHERE name = ?1")
+                .setParameter(1, name)
+                .executeUpdate() > 0;
+    }
+}
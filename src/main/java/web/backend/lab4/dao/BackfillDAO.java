@@ -0,0 +1,29 @@
+package web.backend.lab4.dao;
+
+import java.util.List;
+import java.util.Map;
+
+
+public interface BackfillDAO {
+
+    /**
+     * @return up to {@code limit} rows with id greater than {@code afterId}, ordered by id.
+     */
+    List<ResultRow> getResultsAfter(long afterId, int limit);
+
+    long countResultsAfter(long afterId);
+
+    /**
+     * Writes new results of one chunk and moves the checkpoint of the job in the same transaction.
+     *
+     * @param changes ids of the changed rows grouped by their new result and hit mask.
+     */
+    void saveChunk(String job, Map<Outcome, List<Long>> changes, long lastId);
+
+    long loadCheckpoint(String job);
+
+    void resetCheckpoint(String job);
+
+    record Outcome(boolean result, int hitMask) {
+    }
+}
@@ -0,0 +1,78 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyset-ordered access to results_table for the re-evaluation backfill.
+ * Rows are read as {@link ResultRow} projections and written back with one bulk update per distinct outcome,
+ * so the persistence context stays empty no matter how large the table is.
+ */
+@Stateless
+public class BackfillDAOImpl implements BackfillDAO {
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @Override
+    public List<ResultRow> getResultsAfter(long afterId, int limit) {
+        return entityManager.createQuery(
+                        "SELECT new web.backend.lab4.dao.ResultRow(p.id, p.x, p.y, p.r, p.result, p.hitMask) " +
+                                "FROM ResultEntity p WHERE p.id > :afterId ORDER BY p.id", ResultRow.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public long countResultsAfter(long afterId) {
+        return entityManager.createQuery("SELECT count(p) FROM ResultEntity p WHERE p.id > :afterId", Long.class)
+                .setParameter("afterId", afterId)
+                .getSingleResult();
+    }
+
+    @Override
+    public void saveChunk(String job, Map<Outcome, List<Long>> changes, long lastId) {
+        changes.forEach(this::updateResults);
+        entityManager.createNativeQuery(
+                        "INSERT INTO s408402.backfill_checkpoint (job, last_id, updated_at) VALUES (?1, ?2, now()) " +
+                                "ON CONFLICT (job) DO UPDATE SET last_id = EXCLUDED.last_id, updated_at = now()")
+                .setParameter(1, job)
+                .setParameter(2, lastId)
+                .executeUpdate();
+    }
+
+    @Override
+    public long loadCheckpoint(String job) {
+        List<?> ids = entityManager.createNativeQuery("SELECT last_id FROM s408402.backfill_checkpoint WHERE job = ?1")
+                .setParameter(1, job)
+                .getResultList();
+        return ids.isEmpty() ? 0L : ((Number) ids.get(0)).longValue();
+    }
+
+    @Override
+    public void resetCheckpoint(String job) {
+        entityManager.createNativeQuery("DELETE FROM s408402.backfill_checkpoint WHERE job = ?1")
+                .setParameter(1, job)
+                .executeUpdate();
+    }
+
+    private void updateResults(Outcome outcome, List<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        entityManager.createQuery("UPDATE ResultEntity p SET p.result = :result, p.hitMask = :hitMask WHERE p.id IN :ids")
+                .setParameter("result", outcome.result())
+                .setParameter("hitMask", outcome.hitMask())
+                .setParameter("ids", ids)
+                .executeUpdate();
+        // повторные отправки считаются в user_stats с результатом хранимой
+        entityManager.createNativeQuery("UPDATE s408402.result_counts SET result = :result WHERE result_id IN (:ids)")
+                .setParameter("result", outcome.result())
+                .setParameter("ids", ids)
+                .executeUpdate();
+    }
+}
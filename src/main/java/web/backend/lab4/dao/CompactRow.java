@@ -0,0 +1,14 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored point with the number of times it was sent and the time it was sent last, see {@link ResultUpsert}.
+ */
+public record CompactRow(long id, int x, double y, int r, boolean result, Integer hitMask, long occurrences,
+                         LocalDateTime lastSeen) {
+
+    public ResultRow row() {
+        return new ResultRow(id, x, y, r, result, hitMask);
+    }
+}
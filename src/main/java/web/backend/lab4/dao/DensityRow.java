@@ -0,0 +1,7 @@
+package web.backend.lab4.dao;
+
+/**
+ * Number of results with the given outcome in one base cell of {@link web.backend.lab4.util.DensityGrid}.
+ */
+public record DensityRow(int col, int row, boolean result, long count) {
+}
@@ -0,0 +1,9 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * A results_table row as it is exported, selected with a JPQL constructor expression.
+ */
+public record ExportRow(long id, int x, double y, int r, boolean result, LocalDateTime createdAt) {
+}
@@ -0,0 +1,38 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+
+public interface HistoryDAO {
+
+    /**
+     * @return every row of the user, ordered by id.
+     */
+    List<ResultRow> getPoints(Long userId);
+
+    /**
+     * @param from inclusive, null for no lower bound. With a bound only the partitions of results_table
+     *             that overlap the range are read.
+     * @param to   exclusive, null for no upper bound.
+     * @return up to {@code limit} rows of the user with id greater than {@code afterId}, ordered by id.
+     */
+    List<ResultRow> getPointsAfter(Long userId, long afterId, int limit, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Passes every row of the user to {@code action} in id order while they are read from the database,
+     * without collecting them first. See {@link #getPointsAfter} for {@code from} and {@code to}.
+     */
+    void forEachPoint(Long userId, LocalDateTime from, LocalDateTime to, Consumer<ResultRow> action);
+
+    /**
+     * Same as {@link #forEachPoint}, but with the id and the time each point was sent, for export.
+     */
+    void forEachExportRow(Long userId, LocalDateTime from, LocalDateTime to, Consumer<ExportRow> action);
+
+    /**
+     * Passes every stored point of the user to {@code action} in id order, with the number of times it was sent.
+     */
+    void forEachCompactRow(Long userId, Consumer<CompactRow> action);
+}
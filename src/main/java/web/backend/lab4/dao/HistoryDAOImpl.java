@@ -0,0 +1,133 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.FlushModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Read model of the point history. Rows are selected straight into {@link ResultRow} with a constructor
+ * expression: no {@code ResultEntity} is built, nothing enters the persistence context, so there is no
+ * dirty checking and no eager load of the user. The user id is the filter, the user itself is never read.
+ * A time range is a condition on created_at, the partition key, so only the months in it are scanned.
+ * <p>
+ * Reads go to the replica when {@link ReplicaRouter} allows it, each in a transaction of its own so the replica
+ * is never enlisted next to the primary.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+public class HistoryDAOImpl implements HistoryDAO {
+    private static final String SELECT =
+            "SELECT new web.backend.lab4.dao.ResultRow(p.id, p.x, p.y, p.r, p.result, p.hitMask) " +
+                    "FROM ResultEntity p WHERE p.user.id = :userId ";
+    private static final String EXPORT =
+            "SELECT new web.backend.lab4.dao.ExportRow(p.id, p.x, p.y, p.r, p.result, p.createdAt) " +
+                    "FROM ResultEntity p WHERE p.user.id = :userId ";
+    // точка без счётчика отправлена один раз
+    private static final String COMPACT =
+            "SELECT p.id, p.x, p.y, p.r, p.result, p.hit_mask, coalesce(c.occurrences, 1), " +
+                    "coalesce(c.last_seen, p.created_at) " +
+                    "FROM s408402.results_table p LEFT JOIN s408402.result_counts c " +
+                    "ON c.user_id = p.user_id AND c.x = p.x AND c.y = p.y AND c.r = p.r " +
+                    "WHERE p.user_id = ?1 ORDER BY p.id";
+    private static final int FETCH_SIZE = 500;
+
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @PersistenceContext(name="replica", unitName=ReplicaRouter.REPLICA_UNIT)
+    private EntityManager replica;
+
+    @EJB
+    private ReplicaRouter router;
+
+    @Override
+    public List<ResultRow> getPoints(Long userId) {
+        return query(ResultRow.class, SELECT + "ORDER BY p.id", userId)
+                .getResultList();
+    }
+
+    @Override
+    public List<ResultRow> getPointsAfter(Long userId, long afterId, int limit, LocalDateTime from, LocalDateTime to) {
+        return ranged(ResultRow.class, SELECT + "AND p.id > :afterId " + range(from, to) + "ORDER BY p.id",
+                userId, from, to)
+                .setParameter("afterId", afterId)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public void forEachPoint(Long userId, LocalDateTime from, LocalDateTime to, Consumer<ResultRow> action) {
+        // курсор драйвера: строки приходят пачками по FETCH_SIZE, а не все сразу
+        try (Stream<ResultRow> rows = ranged(ResultRow.class, SELECT + range(from, to) + "ORDER BY p.id",
+                userId, from, to).getResultStream()) {
+            rows.forEach(action);
+        }
+    }
+
+    @Override
+    public void forEachExportRow(Long userId, LocalDateTime from, LocalDateTime to, Consumer<ExportRow> action) {
+        try (Stream<ExportRow> rows = ranged(ExportRow.class, EXPORT + range(from, to) + "ORDER BY p.id",
+                userId, from, to).getResultStream()) {
+            rows.forEach(action);
+        }
+    }
+
+    @Override
+    public void forEachCompactRow(Long userId, Consumer<CompactRow> action) {
+        try (Stream<?> rows = router.reader(userId, entityManager, replica).createNativeQuery(COMPACT)
+                .setParameter(1, userId)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE)
+                .getResultStream()) {
+            rows.map(row -> (Object[]) row)
+                    .map(row -> new CompactRow(
+                            ((Number) row[0]).longValue(),
+                            ((Number) row[1]).intValue(),
+                            ((Number) row[2]).doubleValue(),
+                            ((Number) row[3]).intValue(),
+                            (Boolean) row[4],
+                            row[5] != null ? ((Number) row[5]).intValue() : null,
+                            ((Number) row[6]).longValue(),
+                            NativeTimestamps.toLocalDateTime(row[7])))
+                    .forEach(action);
+        }
+    }
+
+    /**
+     * Condition on created_at, the partition key of results_table, so the planner skips partitions outside it.
+     */
+    private static String range(LocalDateTime from, LocalDateTime to) {
+        return (from != null ? "AND p.createdAt >= :from " : "") + (to != null ? "AND p.createdAt < :to " : "");
+    }
+
+    private <T> TypedQuery<T> ranged(Class<T> type, String jpql, Long userId, LocalDateTime from, LocalDateTime to) {
+        TypedQuery<T> query = query(type, jpql, userId);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        return query;
+    }
+
+    private <T> TypedQuery<T> query(Class<T> type, String jpql, Long userId) {
+        // только чтение: перед запросом нечего сбрасывать в базу
+        return router.reader(userId, entityManager, replica).createQuery(jpql, type)
+                .setParameter("userId", userId)
+                .setFlushMode(FlushModeType.COMMIT)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, FETCH_SIZE);
+    }
+}
@@ -0,0 +1,23 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+public interface ImportDAO {
+
+    /**
+     * Stores the points of the user in the current transaction.
+     *
+     * @return true if they were written with COPY, false if passed as arrays. Points that are already stored
+     * are only counted, see {@link ResultUpsert}.
+     */
+    boolean insert(Long userId, List<ImportedPoint> points);
+
+    /**
+     * Creates the missing monthly partitions of results_table for the points sent from {@code from} to {@code to}.
+     *
+     * @return number of partitions created.
+     */
+    int ensurePartitions(LocalDateTime from, LocalDateTime to);
+}
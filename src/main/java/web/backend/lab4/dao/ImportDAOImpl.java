@@ -0,0 +1,105 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bulk writes of imported points through {@link ResultUpsert}, so a point that is already stored only gets
+ * counted. On PostgreSQL a batch goes in as one {@code COPY ... FROM STDIN} into a temporary table the upsert
+ * reads from, with ids from the same generator Hibernate uses. A driver that is
+ * not visible to the deployment gets the rows as arrays.
+ */
+@Stateless
+@Slf4j
+public class ImportDAOImpl implements ImportDAO {
+    // строки удаляются при фиксации, сама таблица живёт, пока живёт соединение в пуле
+    private static final String STAGING = "CREATE TEMPORARY TABLE IF NOT EXISTS import_batch " +
+            "(ord bigint, id bigint, user_id bigint, x integer, y double precision, r integer, result boolean, " +
+            "hit_mask integer, created_at timestamp) ON COMMIT DELETE ROWS";
+    private static final String COPY = "COPY import_batch (ord, id, user_id, x, y, r, result, hit_mask, created_at) " +
+            "FROM STDIN WITH (FORMAT csv)";
+
+    // предупреждение о переходе на массивы пишется один раз
+    private static volatile boolean fallbackLogged;
+
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @EJB
+    private ReplicaRouter router;
+
+    @Override
+    public boolean insert(Long userId, List<ImportedPoint> points) {
+        router.wrote(userId);
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            if (supportsCopy(connection)) {
+                copy(connection, userId, points);
+                return true;
+            }
+            Long[] userIds = new Long[points.size()];
+            Arrays.fill(userIds, userId);
+            ResultUpsert.upsert(connection, userIds, points, new long[points.size()]);
+            return false;
+        });
+    }
+
+    @Override
+    public int ensurePartitions(LocalDateTime from, LocalDateTime to) {
+        return ((Number) entityManager.createNativeQuery("SELECT s408402.results_ensure_partitions(?1, ?2)")
+                .setParameter(1, from)
+                .setParameter(2, to)
+                .getSingleResult()).intValue();
+    }
+
+    private static boolean supportsCopy(Connection connection) {
+        try {
+            return connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException | LinkageError e) {
+            // драйвер PostgreSQL не виден приложению
+            if (!fallbackLogged) {
+                fallbackLogged = true;
+                log.warn("COPY is not available, imports fall back to arrays. " +
+                        "Is the org.postgresql module a dependency of the deployment?", e);
+            }
+            return false;
+        }
+    }
+
+    private static void copy(Connection connection, Long userId, List<ImportedPoint> points) throws SQLException {
+        long[] ids = ResultUpsert.reserveIds(points.size());
+        StringBuilder csv = new StringBuilder(points.size() * 56);
+        for (int i = 0; i < points.size(); i++) {
+            ImportedPoint point = points.get(i);
+            csv.append(i).append(',')
+                    .append(ids[i]).append(',')
+                    .append(userId).append(',')
+                    .append(point.x()).append(',')
+                    .append(point.y()).append(',')
+                    .append(point.r()).append(',')
+                    .append(point.result() ? 't' : 'f').append(',')
+                    .append(point.hitMask() != null ? point.hitMask().toString() : "").append(',')
+                    .append(point.createdAt()).append('\n');
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(STAGING);
+            connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY, new StringReader(csv.toString()));
+            statement.execute(ResultUpsert.UPSERT.formatted("SELECT * FROM import_batch"));
+        } catch (IOException e) {
+            throw new SQLException("COPY into import_batch failed", e);
+        }
+    }
+}
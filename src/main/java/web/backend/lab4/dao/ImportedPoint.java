@@ -0,0 +1,9 @@
+package web.backend.lab4.dao;
+
+import java.time.LocalDateTime;
+
+/**
+ * An evaluated point ready to be stored, see {@link ResultUpsert}.
+ */
+public record ImportedPoint(int x, double y, int r, boolean result, Integer hitMask, LocalDateTime createdAt) {
+}
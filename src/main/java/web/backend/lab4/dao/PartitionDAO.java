@@ -0,0 +1,22 @@
+package web.backend.lab4.dao;
+
+import java.util.List;
+
+
+public interface PartitionDAO {
+
+    /**
+     * Creates the monthly partitions of results_table up to {@code monthsAhead} months from now.
+     *
+     * @return number of partitions created.
+     */
+    int createPartitions(int monthsAhead);
+
+    /**
+     * Detaches the partitions that end before the last {@code keepMonths} months. They stay in the database
+     * as separate tables.
+     *
+     * @return names of the detached tables.
+     */
+    List<String> detachPartitions(int keepMonths);
+}
@@ -0,0 +1,34 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.Stateless;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.List;
+
+/**
+ * Maintenance of the monthly partitions of results_table, the work is done by the functions
+ * in {@code sql/init.sql}.
+ */
+@Stateless
+public class PartitionDAOImpl implements PartitionDAO {
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @Override
+    public int createPartitions(int monthsAhead) {
+        return ((Number) entityManager.createNativeQuery("SELECT s408402.results_create_partitions(?1)")
+                .setParameter(1, monthsAhead)
+                .getSingleResult()).intValue();
+    }
+
+    @Override
+    public List<String> detachPartitions(int keepMonths) {
+        List<?> names = entityManager.createNativeQuery("SELECT s408402.results_detach_partitions(?1)")
+                .setParameter(1, keepMonths)
+                .getResultList();
+        return names.stream()
+                .map(String::valueOf)
+                .toList();
+    }
+}
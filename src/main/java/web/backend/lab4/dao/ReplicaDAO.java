@@ -0,0 +1,11 @@
+package web.backend.lab4.dao;
+
+
+public interface ReplicaDAO {
+
+    /**
+     * @return how far the replica is behind the primary in seconds, 0 if it has replayed everything it received
+     * or is not a standby at all.
+     */
+    double lagSeconds();
+}
@@ -0,0 +1,30 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Health of the read replica, see {@link ReplicaRouter}.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+public class ReplicaDAOImpl implements ReplicaDAO {
+    // без записанного времени воспроизведения реплика считается отставшей
+    private static final double UNKNOWN_LAG = 1e9;
+
+    @PersistenceContext(name="replica", unitName=ReplicaRouter.REPLICA_UNIT)
+    private EntityManager replica;
+
+    @Override
+    public double lagSeconds() {
+        return ((Number) replica.createNativeQuery(
+                        "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+                                "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+                                "ELSE coalesce(extract(epoch FROM now() - pg_last_xact_replay_timestamp()), ?1) END")
+                .setParameter(1, UNKNOWN_LAG)
+                .getSingleResult()).doubleValue();
+    }
+}
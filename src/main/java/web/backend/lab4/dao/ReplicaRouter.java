@@ -0,0 +1,100 @@
+package web.backend.lab4.dao;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether a read goes to the replica persistence unit or to the primary one.
+ * <p>
+ * Reads go to the replica unless it is more than {@link #MAX_LAG_SECONDS} behind or could not be checked,
+ * the lag is measured every {@link #CHECK_SECONDS} seconds. Reads about something written in the last
+ * {@link #STICKY_SECONDS} seconds, a user's points or a new user name, go to the primary, so the writer
+ * sees its own writes. DAOs report their writes with {@link #wrote}.
+ * <p>
+ * The replica unit in persistence.xml uses the default datasource unless a replica datasource is set there,
+ * then both units read the same database and only the routing runs.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@Slf4j
+public class ReplicaRouter {
+    public static final String PRIMARY_UNIT = "default";
+    public static final String REPLICA_UNIT = "replica";
+    static final double MAX_LAG_SECONDS = 2;
+    static final long CHECK_SECONDS = 5;
+    // не меньше допустимого отставания и интервала проверки, иначе своя запись может не успеть дойти до реплики
+    static final long STICKY_SECONDS = 10;
+
+    @EJB
+    private ReplicaDAO replicaDAO;
+
+    LongSupplier clock = System::nanoTime;
+    // время последней записи по пользователю или имени
+    private final Map<Object, Long> writes = new ConcurrentHashMap<>();
+    private volatile boolean replicaUsable;
+
+    @PostConstruct
+    void init() {
+        checkLag();
+    }
+
+    /**
+     * @param key user id or user name the read is about, null if it is not about one user.
+     */
+    public EntityManager reader(Object key, EntityManager primary, EntityManager replica) {
+        return useReplica(key) ? replica : primary;
+    }
+
+    public boolean useReplica(Object key) {
+        if (!replicaUsable) {
+            return false;
+        }
+        Long wroteAt = key != null ? writes.get(key) : null;
+        return wroteAt == null || clock.getAsLong() - wroteAt >= TimeUnit.SECONDS.toNanos(STICKY_SECONDS);
+    }
+
+    /**
+     * @param key user id or user name that was written.
+     */
+    public void wrote(Object key) {
+        writes.put(key, clock.getAsLong());
+    }
+
+    @Schedule(hour = "*", minute = "*", second = "*/5", persistent = false)
+    public void checkLag() {
+        boolean usable;
+        try {
+            double lag = replicaDAO.lagSeconds();
+            usable = lag <= MAX_LAG_SECONDS;
+            if (!usable && replicaUsable) {
+                log.warn("Replica is {} s behind, reading from the primary", String.format("%.1f", lag));
+            }
+        } catch (RuntimeException e) {
+            usable = false;
+            if (replicaUsable) {
+                log.warn("Replica cannot be checked, reading from the primary", e);
+            }
+        }
+        if (usable && !replicaUsable) {
+            log.info("Reading from the replica");
+        }
+        replicaUsable = usable;
+
+        long now = clock.getAsLong();
+        writes.values().removeIf(wroteAt -> now - wroteAt >= TimeUnit.SECONDS.toNanos(STICKY_SECONDS));
+    }
+}
@@ -11,7 +11,19 @@ public interface ResultDAO {
 
     void addNewResult(ResultEntity result);
 
-    List<ResultEntity> getResultsByUserId(Long userId);
+    /**
+     * Stores the results that are not stored yet and counts the others, a result is the same as a stored one
+     * if it has the same user, x, y and r. Sets the id of every result to the id of its stored row and marks
+     * the ones that were already stored as {@link ResultEntity#isRepeated() repeated}.
+     */
+    void addNewResults(List<ResultEntity> results);
+
+    List<ResultRow> getRowsByUserId(Long userId);
+
+    /**
+     * @param userId the user or null for the results of all users.
+     */
+    List<DensityRow> getDensity(Long userId);
 
     Optional<UserEntity> findUserByUserId(Long userId);
 }
@@ -1,11 +1,19 @@
 package web.backend.lab4.dao;
 
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.Session;
 import web.backend.lab4.entity.ResultEntity;
 import web.backend.lab4.entity.UserEntity;
+import web.backend.lab4.util.DensityGrid;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,22 +23,84 @@ import java.util.Optional;
  */
 @Stateless
 public class ResultDAOImpl implements ResultDAO {
-    @PersistenceContext(name="idk")
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
     private EntityManager entityManager;
 
+    @PersistenceContext(name="replica", unitName=ReplicaRouter.REPLICA_UNIT)
+    private EntityManager replica;
+
+    @EJB
+    private ReplicaRouter router;
+
     @Override
     public void addNewResult(ResultEntity result) {
-        entityManager.persist(result);
-        entityManager.flush();
+        addNewResults(List.of(result));
+    }
+
+    /**
+     * One statement for the whole list, see {@link ResultUpsert}. The id of each result is set to the id
+     * of its stored row, results that were already stored are marked as repeated.
+     */
+    @Override
+    public void addNewResults(List<ResultEntity> results) {
+        if (results.isEmpty()) {
+            return;
+        }
+        Long[] userIds = new Long[results.size()];
+        List<ImportedPoint> points = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            ResultEntity result = results.get(i);
+            userIds[i] = result.getUser().getId();
+            router.wrote(userIds[i]);
+            if (result.getCreatedAt() == null) {
+                result.setCreatedAt(LocalDateTime.now());
+            }
+            points.add(new ImportedPoint(result.getX(), result.getY(), result.getR(), result.isResult(),
+                    result.getHitMask(), result.getCreatedAt()));
+        }
+        long[] ids = new long[results.size()];
+        boolean[] inserted = entityManager.unwrap(Session.class)
+                .doReturningWork(connection -> ResultUpsert.upsert(connection, userIds, points, ids));
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).setId(ids[i]);
+            results.get(i).setRepeated(!inserted[i]);
+        }
     }
 
-    public List<ResultEntity> getResultsByUserId(Long userId) {
-        Optional<UserEntity> user = findUserByUserId(userId);
-        return entityManager.createQuery("SELECT p FROM ResultEntity p WHERE p.user.id = :userId", ResultEntity.class)
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<ResultRow> getRowsByUserId(Long userId) {
+        return router.reader(userId, entityManager, replica).createQuery(
+                        "SELECT new web.backend.lab4.dao.ResultRow(p.id, p.x, p.y, p.r, p.result, p.hitMask) " +
+                                "FROM ResultEntity p WHERE p.user.id = :userId", ResultRow.class)
                 .setParameter("userId", userId)
                 .getResultList();
     }
 
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<DensityRow> getDensity(Long userId) {
+        // группировка по номеру ячейки на стороне базы, сюда приходит по строке на ячейку и исход
+        String cells = DensityGrid.CELLS_PER_UNIT + ".0";
+        Query query = router.reader(userId, entityManager, replica).createNativeQuery(
+                "SELECT floor(x * " + cells + "), floor(y * " + cells + "), result, count(*) " +
+                        "FROM s408402.results_table " +
+                        (userId != null ? "WHERE user_id = ?1 " : "") +
+                        "GROUP BY 1, 2, 3");
+        if (userId != null) {
+            query.setParameter(1, userId);
+        }
+        List<?> rows = query.getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new DensityRow(
+                        (int) ((Number) row[0]).doubleValue(),
+                        (int) ((Number) row[1]).doubleValue(),
+                        (Boolean) row[2],
+                        ((Number) row[3]).longValue()))
+                .toList();
+    }
+
     @Override
     public Optional<UserEntity> findUserByUserId(Long userId) {
         UserEntity user = entityManager.find(UserEntity.class, userId);
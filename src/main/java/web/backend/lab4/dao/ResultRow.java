@@ -0,0 +1,8 @@
+package web.backend.lab4.dao;
+
+/**
+ * Flat projection of a results_table row, selected with a JPQL constructor expression
+ * so no entities are hydrated.
+ */
+public record ResultRow(long id, int x, double y, int r, boolean result, Integer hitMask) {
+}
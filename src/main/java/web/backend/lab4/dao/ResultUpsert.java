@@ -0,0 +1,107 @@
+package web.backend.lab4.dao;
+
+import web.backend.lab4.entity.TimeOrderedIdGenerator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * The one statement that stores points, shared by {@link ResultDAOImpl} and {@link ImportDAOImpl}.
+ * <p>
+ * results_table keeps only the first submission of a point (user_id, x, y, r). Each point is counted in
+ * result_counts with one {@code INSERT ... ON CONFLICT DO UPDATE}: a new key gets a row there and its
+ * first submission goes to results_table in the same statement, a known key only gets its count and
+ * last_seen updated. The triggers of result_counts add the repeated submissions to user_stats, so the stats
+ * still count submissions. A unique key on (user_id, x, y, r) cannot be put on results_table itself, the key of
+ * a partitioned table has to contain created_at.
+ */
+final class ResultUpsert {
+    /**
+     * {@code %s} is a query with the columns ord, id, user_id, x, y, r, result, hit_mask, created_at.
+     * Returns, in ord order, the id of the stored row of each point and whether the point was stored now.
+     */
+    static final String UPSERT = "WITH batch AS (%s), " +
+            // повторы внутри пачки сворачиваются заранее: ON CONFLICT не может изменить строку дважды
+            "firsts AS (SELECT DISTINCT ON (user_id, x, y, r) id, user_id, x, y, r, result, hit_mask, created_at, " +
+            "count(*) OVER w AS occurrences, max(created_at) OVER w AS last_seen " +
+            "FROM batch WINDOW w AS (PARTITION BY user_id, x, y, r) ORDER BY user_id, x, y, r, ord), " +
+            "counted AS (INSERT INTO s408402.result_counts AS c (user_id, x, y, r, result_id, result, occurrences, last_seen) " +
+            "SELECT user_id, x, y, r, id, result, occurrences, last_seen FROM firsts " +
+            "ON CONFLICT (user_id, x, y, r) DO UPDATE " +
+            "SET occurrences = c.occurrences + EXCLUDED.occurrences, last_seen = greatest(c.last_seen, EXCLUDED.last_seen) " +
+            // xmax = 0 только у вставленной строки
+            "RETURNING c.user_id, c.x, c.y, c.r, c.result_id, c.xmax = 0 AS inserted), " +
+            "stored AS (INSERT INTO s408402.results_table (id, x, y, r, result, hit_mask, user_id, created_at) " +
+            "SELECT f.id, f.x, f.y, f.r, f.result, f.hit_mask, f.user_id, f.created_at " +
+            "FROM firsts f JOIN counted c ON c.result_id = f.id AND c.inserted) " +
+            "SELECT c.result_id, c.inserted AND c.result_id = b.id " +
+            "FROM batch b JOIN counted c USING (user_id, x, y, r) ORDER BY b.ord";
+    private static final String ARRAYS = "SELECT * FROM unnest(?::bigint[], ?::bigint[], ?::integer[], " +
+            "?::double precision[], ?::integer[], ?::boolean[], ?::integer[], ?::timestamp[]) " +
+            "WITH ORDINALITY AS b(id, user_id, x, y, r, result, hit_mask, created_at, ord)";
+
+    private ResultUpsert() {
+    }
+
+    /**
+     * Stores points passed as arrays, works with any JDBC driver for PostgreSQL.
+     *
+     * @param userIds owner of each point.
+     * @param ids     filled with the id of the stored row of each point, an earlier one for a repeated point.
+     * @return whether each point was stored now, false for a repeated one.
+     */
+    static boolean[] upsert(Connection connection, Long[] userIds, List<ImportedPoint> points, long[] ids)
+            throws SQLException {
+        int n = points.size();
+        long[] reserved = reserveIds(n);
+        Long[] newIds = new Long[n];
+        Integer[] xs = new Integer[n];
+        Double[] ys = new Double[n];
+        Integer[] rs = new Integer[n];
+        Boolean[] results = new Boolean[n];
+        Integer[] masks = new Integer[n];
+        Timestamp[] times = new Timestamp[n];
+        for (int i = 0; i < n; i++) {
+            ImportedPoint point = points.get(i);
+            newIds[i] = reserved[i];
+            xs[i] = point.x();
+            ys[i] = point.y();
+            rs[i] = point.r();
+            results[i] = point.result();
+            masks[i] = point.hitMask();
+            times[i] = Timestamp.valueOf(point.createdAt());
+        }
+
+        boolean[] inserted = new boolean[n];
+        try (PreparedStatement statement = connection.prepareStatement(UPSERT.formatted(ARRAYS))) {
+            statement.setArray(1, connection.createArrayOf("bigint", newIds));
+            statement.setArray(2, connection.createArrayOf("bigint", userIds));
+            statement.setArray(3, connection.createArrayOf("integer", xs));
+            statement.setArray(4, connection.createArrayOf("float8", ys));
+            statement.setArray(5, connection.createArrayOf("integer", rs));
+            statement.setArray(6, connection.createArrayOf("boolean", results));
+            statement.setArray(7, connection.createArrayOf("integer", masks));
+            statement.setArray(8, connection.createArrayOf("timestamp", times));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                for (int i = 0; i < n && resultSet.next(); i++) {
+                    ids[i] = resultSet.getLong(1);
+                    inserted[i] = resultSet.getBoolean(2);
+                }
+            }
+        }
+        return inserted;
+    }
+
+    /**
+     * @return {@code count} unused ids of results_table, from the generator of ResultEntity.
+     */
+    static long[] reserveIds(int count) {
+        long[] ids = new long[count];
+        TimeOrderedIdGenerator.IDS.next(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,19 @@
+package web.backend.lab4.dao;
+
+import java.util.List;
+
+
+public interface StatsDAO {
+
+    /**
+     * @return one row per r the user has points for, ordered by r.
+     */
+    List<StatsRow> getStats(Long userId);
+
+    /**
+     * Recomputes the counts of every user from results_table.
+     *
+     * @return number of (user, r) rows written.
+     */
+    long rebuild();
+}
@@ -0,0 +1,51 @@
+package web.backend.lab4.dao;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import java.util.List;
+
+/**
+ * Reads the per-user summary kept by the triggers on results_table, see user_stats in {@code sql/init.sql}.
+ * A read touches at most one row per r, however many points the user has.
+ */
+@Stateless
+public class StatsDAOImpl implements StatsDAO {
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
+    private EntityManager entityManager;
+
+    @PersistenceContext(name="replica", unitName=ReplicaRouter.REPLICA_UNIT)
+    private EntityManager replica;
+
+    @EJB
+    private ReplicaRouter router;
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<StatsRow> getStats(Long userId) {
+        List<?> rows = router.reader(userId, entityManager, replica).createNativeQuery(
+                        "SELECT r, total, hits, first_at, last_at FROM s408402.user_stats " +
+                                "WHERE user_id = ?1 AND total > 0 ORDER BY r")
+                .setParameter(1, userId)
+                .getResultList();
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new StatsRow(
+                        ((Number) row[0]).intValue(),
+                        ((Number) row[1]).longValue(),
+                        ((Number) row[2]).longValue(),
+                        NativeTimestamps.toInstant(row[3]),
+                        NativeTimestamps.toInstant(row[4])))
+                .toList();
+    }
+
+    @Override
+    public long rebuild() {
+        return ((Number) entityManager.createNativeQuery("SELECT s408402.user_stats_rebuild()")
+                .getSingleResult()).longValue();
+    }
+}
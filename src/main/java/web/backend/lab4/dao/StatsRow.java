@@ -0,0 +1,11 @@
+package web.backend.lab4.dao;
+
+import java.time.Instant;
+
+/**
+ * Row of user_stats: counts of one user for one r.
+ *
+ * @param firstAt null if unknown, e.g. for points that were only counted by a rebuild.
+ */
+public record StatsRow(int r, long total, long hits, Instant firstAt, Instant lastAt) {
+}
@@ -13,4 +13,20 @@ public interface UserDAO {
     Optional<UserEntity> getUserById(Long userId);
 
     Optional<UserEntity> getUserByUsername(String userName);
+
+    /**
+     * Deletes up to {@code limit} stored points of the user with the smallest ids and up to {@code limit}
+     * of its occurrence counters, with bulk statements in the current transaction. Nothing is loaded.
+     *
+     * @return number of rows deleted, 0 when nothing is left.
+     */
+    int deletePointsChunk(Long userId, int limit);
+
+    /**
+     * Deletes the user with a bulk statement, its stats and archive go with it (ON DELETE CASCADE).
+     * The points must be deleted before, see {@link #deletePointsChunk}.
+     *
+     * @return false if there is no such user.
+     */
+    boolean deleteUser(Long userId);
 }
@@ -1,21 +1,30 @@
 package web.backend.lab4.dao;
 
+import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.TypedQuery;
-import jakarta.transaction.Transactional;
 import web.backend.lab4.entity.UserEntity;
 
 import java.util.Optional;
 
 @Stateless
 public class UserDAOImpl implements UserDAO{
-    @PersistenceContext(name="idk")
+    @PersistenceContext(name="idk", unitName=ReplicaRouter.PRIMARY_UNIT)
     private EntityManager entityManager;
 
+    @PersistenceContext(name="replica", unitName=ReplicaRouter.REPLICA_UNIT)
+    private EntityManager replica;
+
+    @EJB
+    private ReplicaRouter router;
+
     @Override
     public void addNewUser(UserEntity user) {
+        router.wrote(user.getUsername());
         entityManager.persist(user);
         entityManager.flush();
     }
@@ -26,13 +35,54 @@ public class UserDAOImpl implements UserDAO{
         return Optional.ofNullable(user);
     }
 
+    /**
+     * Read from the replica, in a transaction of its own so it is not enlisted next to the primary.
+     */
     @Override
-    @Transactional
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public Optional<UserEntity> getUserByUsername(String username) {
-        TypedQuery<UserEntity> query = entityManager
+        TypedQuery<UserEntity> query = router.reader(username, entityManager, replica)
                 .createQuery("SELECT u FROM UserEntity u WHERE u.username = :username", UserEntity.class);
         query.setParameter("username", username);
         return query.getResultStream().findFirst();
     }
 
+    @Override
+    public int deletePointsChunk(Long userId, int limit) {
+        // граница пачки по индексу (user_id, id); диапазон created_at её строк передаётся в DELETE константами,
+        // чтобы затрагивались только секции этих месяцев
+        Object[] chunk = (Object[]) entityManager.createNativeQuery(
+                        "SELECT max(id), min(created_at), max(created_at) FROM " +
+                                "(SELECT id, created_at FROM s408402.results_table WHERE user_id = ?1 ORDER BY id LIMIT ?2) c")
+                .setParameter(1, userId)
+                .setParameter(2, limit)
+                .getSingleResult();
+        int points = 0;
+        if (chunk[0] != null) {
+            // строки пользователя с id не больше последнего в пачке - это и есть пачка
+            points = entityManager.createNativeQuery(
+                            "DELETE FROM s408402.results_table " +
+                                    "WHERE user_id = ?1 AND id <= ?2 AND created_at BETWEEN ?3 AND ?4")
+                    .setParameter(1, userId)
+                    .setParameter(2, ((Number) chunk[0]).longValue())
+                    .setParameter(3, NativeTimestamps.toLocalDateTime(chunk[1]))
+                    .setParameter(4, NativeTimestamps.toLocalDateTime(chunk[2]))
+                    .executeUpdate();
+        }
+        int counts = entityManager.createNativeQuery(
+                        "DELETE FROM s408402.result_counts WHERE user_id = ?1 AND (x, y, r) IN " +
+                                "(SELECT x, y, r FROM s408402.result_counts WHERE user_id = ?1 ORDER BY x, y, r LIMIT ?2)")
+                .setParameter(1, userId)
+                .setParameter(2, limit)
+                .executeUpdate();
+        return points + counts;
+    }
+
+    @Override
+    public boolean deleteUser(Long userId) {
+        return entityManager.createQuery("DELETE FROM UserEntity u WHERE u.id = :userId")
+                .setParameter("userId", userId)
+                .executeUpdate() > 0;
+    }
+
 }
@@ -0,0 +1,17 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AreaDTO {
+    // имя области каталога, у основной области null
+    private String name;
+
+    private String source;
+
+    private boolean builtIn;
+}
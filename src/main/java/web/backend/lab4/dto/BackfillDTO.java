@@ -0,0 +1,34 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder(toBuilder = true)
+public class BackfillDTO {
+    public static final String IDLE = "IDLE";
+    public static final String RUNNING = "RUNNING";
+    public static final String STOPPED = "STOPPED";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    private String state;
+
+    // строки, проверенные в этом запуске, и сколько из них поменяли результат
+    private long scanned;
+
+    private long changed;
+
+    // сколько строк оставалось после контрольной точки на момент запуска
+    private long total;
+
+    private long lastId;
+
+    private double rowsPerSecond;
+
+    private String error;
+}
@@ -0,0 +1,23 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CatalogHitDTO {
+    private int x;
+
+    private Double y;
+
+    private int r;
+
+    // имена областей каталога, в которые попала точка
+    private List<String> areas;
+}
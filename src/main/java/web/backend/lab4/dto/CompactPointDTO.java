@@ -0,0 +1,27 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class CompactPointDTO {
+    private int x;
+
+    private Double y;
+
+    private int r;
+
+    private boolean result;
+
+    // сколько раз точку отправляли
+    private long occurrences;
+
+    private LocalDateTime lastSeen;
+}
@@ -0,0 +1,23 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class DensityCellDTO {
+    // левый нижний угол ячейки
+    private double x;
+
+    private double y;
+
+    private double size;
+
+    private long hits;
+
+    private long misses;
+}
@@ -0,0 +1,25 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class EstimateDTO {
+    private int r;
+
+    private long samples;
+
+    private double area;
+
+    private double hitProbability;
+
+    private double standardError;
+
+    // последнее событие потока: точность достигнута или исчерпан лимит выборок
+    private boolean done;
+}
@@ -0,0 +1,31 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class ImportDTO {
+    // сохранённые строки и отклонённые, отклонённых в rejects не больше первой тысячи
+    private long imported;
+
+    private long rejected;
+
+    private List<ImportRejectDTO> rejects;
+
+    private double seconds;
+
+    private double rowsPerSecond;
+
+    // COPY или ARRAYS
+    private String method;
+
+    // причина остановки, строки до неё сохранены
+    private String error;
+}
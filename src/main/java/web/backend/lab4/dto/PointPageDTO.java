@@ -0,0 +1,19 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class PointPageDTO {
+    private List<PointDTO> points;
+
+    // значение after для следующей страницы, null на последней
+    private Long next;
+}
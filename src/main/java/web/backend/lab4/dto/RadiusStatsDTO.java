@@ -0,0 +1,20 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class RadiusStatsDTO {
+    private int r;
+
+    private long total;
+
+    private long hits;
+
+    private double hitRate;
+}
@@ -0,0 +1,29 @@
+package web.backend.lab4.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class StatsDTO {
+    private long total;
+
+    private long hits;
+
+    private long misses;
+
+    private double hitRate;
+
+    // ISO-8601, null если точек нет или время неизвестно
+    private String first;
+
+    private String last;
+
+    private List<RadiusStatsDTO> radii;
+}
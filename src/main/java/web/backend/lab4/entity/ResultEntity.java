@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.LocalDateTime;
+
 @Entity
 @Table(name = "results_table", schema = "s408402")
 @Data
@@ -14,8 +16,7 @@ import lombok.NoArgsConstructor;
 @Builder
 public class ResultEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "result-sequence-generator")
-    @SequenceGenerator(name = "result-sequence-generator", sequenceName = "s408402.results_table_id_seq", allocationSize = 1)
+    @TimeOrderedId
     private long id;
 
     @ManyToOne
@@ -33,4 +34,23 @@ public class ResultEntity {
 
     @Column(name = "result")
     private boolean result;
+
+    // бит r установлен, если точка попадает в область при этом r (см. Calculator.calculateMask)
+    @Column(name = "hit_mask")
+    private Integer hitMask;
+
+    // ключ секционирования results_table по месяцам, время отправки точки
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // точка уже была сохранена раньше: id - у первой отправки, сама строка не записывалась (см. ResultDAO)
+    @Transient
+    private boolean repeated;
+
+    @PrePersist
+    void onPersist() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
 }
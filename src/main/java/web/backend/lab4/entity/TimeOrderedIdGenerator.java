@@ -0,0 +1,32 @@
+package web.backend.lab4.entity;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import web.backend.lab4.util.TimeOrderedIds;
+
+/**
+ * Hibernate side of {@link TimeOrderedIds}. All entities and the bulk inserts of the DAOs share {@link #IDS},
+ * so every id of an instance grows with time. Each instance needs its own node, set with
+ * {@code -Dlab4.node-id=<0..15>} or a system property of the server. Without it the node is 0 and a warning
+ * is logged when Hibernate creates the generators at deployment: two instances on node 0 may give out the same id.
+ */
+@Slf4j
+public class TimeOrderedIdGenerator implements IdentifierGenerator {
+    static final String NODE_PROPERTY = "lab4.node-id";
+    public static final TimeOrderedIds IDS = new TimeOrderedIds(nodeId());
+
+    private static int nodeId() {
+        Integer node = Integer.getInteger(NODE_PROPERTY);
+        if (node == null) {
+            log.warn("{} is not set, ids are generated as node 0. Give every instance its own node", NODE_PROPERTY);
+            return 0;
+        }
+        return node;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        return IDS.next();
+    }
+}
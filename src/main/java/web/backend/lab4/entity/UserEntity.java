@@ -16,8 +16,7 @@ import java.util.Set;
 @Builder
 public class UserEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users-sequence-generator")
-    @SequenceGenerator(name = "users-sequence-generator", sequenceName = "s408402.users_id_seq", allocationSize = 1)
+    @TimeOrderedId
     private long id;
 
     @Column(name = "username")
@@ -26,7 +25,12 @@ public class UserEntity {
     @Column(name = "password")
     private String password;
 
-    @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
+    // назначается только в базе, см. AdminOnly
+    @Column(name = "admin", updatable = false, insertable = false)
+    private boolean admin;
+
+    // без каскада: точки удаляются пачками (UserDAO.deletePointsChunk), а не загрузкой в контекст
+    @OneToMany(mappedBy = "user")
     private Set<ResultEntity> points;
 
     @Override
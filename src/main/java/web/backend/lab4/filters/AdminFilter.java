@@ -0,0 +1,33 @@
+package web.backend.lab4.filters;
+
+import jakarta.annotation.Priority;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.Provider;
+import web.backend.lab4.service.AuthService;
+
+/**
+ * Lets only admins through to {@link AdminOnly} endpoints. Runs after {@link AuthFilter}, so the access token
+ * is there and valid.
+ */
+@Provider
+@AdminOnly
+@Priority(Priorities.AUTHORIZATION)
+public class AdminFilter implements ContainerRequestFilter {
+
+    @Inject
+    private AuthService authService;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        String accessToken = requestContext.getCookies().get("access_token").getValue();
+        if (!authService.isAdmin(accessToken)) {
+            requestContext.abortWith(Response.status(Response.Status.FORBIDDEN)
+                    .entity("Admin role required")
+                    .build());
+        }
+    }
+}
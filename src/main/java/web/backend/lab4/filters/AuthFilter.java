@@ -1,28 +1,36 @@
 package web.backend.lab4.filters;
 
+import jakarta.annotation.Priority;
 import jakarta.inject.Inject;
+import jakarta.ws.rs.Priorities;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.core.Cookie;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.ext.Provider;
 import web.backend.lab4.auth.JwtProvider;
+import web.backend.lab4.service.AuthService;
 
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
 @Provider
+@Priority(Priorities.AUTHENTICATION)
 public class AuthFilter implements jakarta.ws.rs.container.ContainerRequestFilter {
 
     @Inject
     private JwtProvider jwtProvider;
 
+    @Inject
+    private AuthService authService;
+
 
     private static final Set<String> SKIP_PATHS = new HashSet<>(Arrays.asList(
             "/auth/signup",
             "/auth/login",
             "/auth/logout",
-            "/auth/refresh"));
+            "/auth/refresh",
+            "/auth/delete"));
 
     @Override
     public void filter(ContainerRequestContext requestContext){
@@ -48,6 +56,17 @@ public class AuthFilter implements jakarta.ws.rs.container.ContainerRequestFilte
             requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED)
                     .entity("Invalid or expired access token")
                     .build());
+            return;
+        }
+
+        // Аккаунт могли удалить, пока токен ещё действует: сбрасываем его cookie
+        if (!authService.isActive(accessToken)) {
+            AuthService.AuthResponse cleared = authService.logout();
+            requestContext.abortWith(Response.status(Response.Status.UNAUTHORIZED)
+                    .cookie(cleared.accessTokenCookie(), cleared.refreshTokenCookie())
+                    .entity("Account no longer exists")
+                    .build());
+            return;
         }
 
         // Если токен валиден, разрешаем выполнение запроса
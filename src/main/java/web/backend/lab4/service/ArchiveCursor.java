@@ -0,0 +1,98 @@
+package web.backend.lab4.service;
+
+import web.backend.lab4.dao.ArchiveBlob;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Archived points of a user with id greater than a cursor, read in id order. A blob is decoded only when
+ * the points before it are used up, so a page near the end of the history does not read the old months
+ * and a full pass holds one blob at a time.
+ *
+ * @param <T> form of a point, loaded by blob.
+ */
+final class ArchiveCursor<T> {
+    private final Function<ArchiveBlob, List<T>> loader;
+    private final ToLongFunction<T> id;
+    private final long afterId;
+    private final Iterator<ArchiveBlob> blobs;
+    private ArchiveBlob nextBlob;
+    private List<T> rows = List.of();
+    private int next;
+
+    /**
+     * @param blobs  ordered by their first id, see {@link ArchiveDAO#getBlobsAfter}.
+     * @param loader points of a blob, ordered by id.
+     */
+    ArchiveCursor(List<ArchiveBlob> blobs, Function<ArchiveBlob, List<T>> loader, ToLongFunction<T> id, long afterId) {
+        this.loader = loader;
+        this.id = id;
+        this.afterId = afterId;
+        this.blobs = blobs.iterator();
+        this.nextBlob = this.blobs.hasNext() ? this.blobs.next() : null;
+    }
+
+    static ArchiveCursor<ResultRow> points(ArchiveDAO archiveDAO, Long userId, long afterId) {
+        return new ArchiveCursor<>(archiveDAO.getBlobsAfter(userId, afterId),
+                blob -> archiveDAO.getBlobPoints(userId, blob.period()), ResultRow::id, afterId);
+    }
+
+    /**
+     * @return whether there is a point with id below {@code before}. Blobs starting at or after it are not read.
+     */
+    boolean hasNextBefore(long before) {
+        while (true) {
+            long head = next < rows.size() ? id.applyAsLong(rows.get(next)) : Long.MAX_VALUE;
+            // блоки упорядочены по первому id, но могут перекрываться: импорт в архивный месяц получает новые id
+            if (nextBlob == null || nextBlob.minId() >= Math.min(head, before)) {
+                return head < before;
+            }
+            rows = merge(rows.subList(next, rows.size()), loader.apply(nextBlob));
+            next = 0;
+            nextBlob = blobs.hasNext() ? blobs.next() : null;
+        }
+    }
+
+    /**
+     * @return the next point, call only after {@link #hasNextBefore} returned true.
+     */
+    T next() {
+        return rows.get(next++);
+    }
+
+    /**
+     * Passes the points with id below {@code before} to {@code action}.
+     */
+    void forEachBefore(long before, Consumer<? super T> action) {
+        while (hasNextBefore(before)) {
+            action.accept(next());
+        }
+    }
+
+    private List<T> merge(List<T> left, List<T> right) {
+        int j = 0;
+        while (j < right.size() && id.applyAsLong(right.get(j)) <= afterId) {
+            j++;
+        }
+        if (left.isEmpty()) {
+            return right.subList(j, right.size());
+        }
+        List<T> merged = new ArrayList<>(left.size() + right.size() - j);
+        int i = 0;
+        while (i < left.size() || j < right.size()) {
+            if (j == right.size() || i < left.size() && id.applyAsLong(left.get(i)) < id.applyAsLong(right.get(j))) {
+                merged.add(left.get(i++));
+            } else {
+                merged.add(right.get(j++));
+            }
+        }
+        return merged;
+    }
+}
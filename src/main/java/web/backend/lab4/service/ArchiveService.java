@@ -0,0 +1,90 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.ArchivePeriod;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Cold tier of results_table: every night the points sent more than {@link #ARCHIVE_AFTER_MONTHS} months
+ * ago are moved, a user and a month at a time, into compressed blobs of results_archive
+ * (see {@link web.backend.lab4.util.PointArchive}), so the table and its indexes only hold recent points.
+ * Archived points are kept for good.
+ * <p>
+ * The history of a user, its cache, the point index, export, the compact and expanded views, the density
+ * counts and backfill read archived points together with the others, so moving points changes none of them.
+ * Only time ranges of the history cover results_table alone, an archived point keeps just its month.
+ * <p>
+ * Space per point: by its layout a row of results_table takes 84 bytes with the tuple header and the line
+ * pointer, plus 28 in each of the two indexes, around 140 bytes. An archived point takes 4.1 bytes when y has
+ * two decimals, as typed in the form, and 9.6 bytes for arbitrary doubles (10,000 points, measured with
+ * {@code PointArchive.encode}). For a real database compare
+ * {@code pg_total_relation_size('s408402.results_table') / count(*)} with
+ * {@code sum(length(data)) / sum(points)} from results_archive.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@Slf4j
+public class ArchiveService {
+    static final int ARCHIVE_AFTER_MONTHS = 12;
+
+    @EJB
+    private ArchiveDAO archiveDAO;
+
+    @Schedule(hour = "4", minute = "30", persistent = false)
+    public void archive() {
+        fillCountResults();
+        LocalDateTime month = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+        try {
+            long moved = 0;
+            int periods = 0;
+            // каждый месяц пользователя - своя транзакция
+            for (ArchivePeriod period : archiveDAO.getPeriodsBefore(month.minusMonths(ARCHIVE_AFTER_MONTHS))) {
+                try {
+                    moved += archiveDAO.archive(period.userId(), period.period());
+                    periods++;
+                } catch (RuntimeException e) {
+                    log.error("Could not archive points of user {} for {}", period.userId(), period.period(), e);
+                }
+            }
+            if (moved > 0) {
+                log.info("Archived {} points in {} user months", moved, periods);
+            }
+        } catch (Exception e) {
+            log.error("Archiving failed", e);
+        }
+    }
+
+    /**
+     * Gives the counters of repeated points archived before result_counts had a result the result of their
+     * archived point, until then user_stats counts their repeats as misses. Once they are all filled this is
+     * one query finding nothing.
+     */
+    void fillCountResults() {
+        try {
+            long filled = 0;
+            for (ArchivePeriod period : archiveDAO.getPeriodsWithUnknownResults()) {
+                try {
+                    filled += archiveDAO.fillCountResults(period.userId(), period.period());
+                } catch (RuntimeException e) {
+                    log.error("Could not fill counters of user {} for {}", period.userId(), period.period(), e);
+                }
+            }
+            if (filled > 0) {
+                log.info("Filled the result of {} archived point counters", filled);
+            }
+        } catch (Exception e) {
+            log.error("Filling archived point counters failed", e);
+        }
+    }
+}
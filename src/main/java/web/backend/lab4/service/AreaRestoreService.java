@@ -0,0 +1,57 @@
+package web.backend.lab4.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.area.ActiveArea;
+import web.backend.lab4.area.AreaCatalog;
+import web.backend.lab4.area.AreaCompiler;
+import web.backend.lab4.area.AreaSyntaxException;
+import web.backend.lab4.dao.AreaDAO;
+
+/**
+ * Installs the area definition and the catalog areas stored by {@link AreaService} when the application
+ * starts. Stored results were already evaluated against the area, so nothing is re-evaluated. Other instances
+ * pick up a change on their next start.
+ */
+@Singleton
+@Startup
+@Slf4j
+public class AreaRestoreService {
+    @EJB
+    private AreaDAO areaDAO;
+
+    @Inject
+    private AreaCatalog areaCatalog;
+
+    @PostConstruct
+    void init() {
+        try {
+            areaDAO.getActiveArea().ifPresent(source -> {
+                try {
+                    ActiveArea.install(AreaCompiler.compile(source));
+                    log.info("Installed stored area definition: {}", source);
+                } catch (AreaSyntaxException e) {
+                    log.error("Stored area definition does not compile, using the built-in area: {}", e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            log.error("Could not load the stored area definition", e);
+        }
+        try {
+            areaDAO.getCatalogAreas().forEach((name, source) -> {
+                try {
+                    areaCatalog.put(name, source);
+                } catch (AreaSyntaxException e) {
+                    log.error("Stored catalog area {} does not compile, skipped: {}", name, e.getMessage());
+                }
+            });
+            log.info("Loaded {} catalog areas", areaCatalog.index().entries().size());
+        } catch (Exception e) {
+            log.error("Could not load the stored catalog areas", e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package web.backend.lab4.service;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.area.ActiveArea;
+import web.backend.lab4.area.AreaCatalog;
+import web.backend.lab4.area.AreaCompiler;
+import web.backend.lab4.area.AreaEstimator;
+import web.backend.lab4.area.AreaParser;
+import web.backend.lab4.area.AreaSyntaxException;
+import web.backend.lab4.area.CompiledArea;
+import web.backend.lab4.dao.AreaDAO;
+import web.backend.lab4.dto.AreaDTO;
+import web.backend.lab4.dto.ErrorDTO;
+import web.backend.lab4.dto.EstimateDTO;
+import web.backend.lab4.util.BackpressureException;
+import web.backend.lab4.util.Validator;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.function.Predicate;
+
+@Stateless
+@Slf4j
+public class AreaService {
+    // для ошибки 0.01 в окне домена по умолчанию (площадь 100) нужно не больше p(1 - p) * 10^8 <= 2.5 * 10^7 точек
+    static final long MAX_SAMPLES = 1L << 26;
+    static final int MAX_ESTIMATES = 2;
+    // общий для всех экземпляров бина
+    private static final Semaphore ESTIMATES = new Semaphore(MAX_ESTIMATES);
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @EJB
+    private AreaDAO areaDAO;
+
+    @EJB
+    private BackfillService backfillService;
+
+    @EJB
+    private TileService tileService;
+
+    @Inject
+    private AreaCatalog areaCatalog;
+
+    public AreaDTO getArea() {
+        CompiledArea area = ActiveArea.current();
+        return area == null
+                ? new AreaDTO(null, ActiveArea.BUILT_IN, true)
+                : new AreaDTO(null, area.source(), false);
+    }
+
+    /**
+     * Installs and stores the definition and restarts the backfill in the background.
+     */
+    public Optional<ErrorDTO> setArea(String source) {
+        try {
+            CompiledArea area = AreaCompiler.compile(source);
+            areaDAO.saveActiveArea(source);
+            ActiveArea.install(area);
+            log.info("Installed area definition: {}", source);
+            tileService.invalidateAll();
+            backfillService.restart();
+            return Optional.empty();
+        } catch (AreaSyntaxException e) {
+            return Optional.of(ErrorDTO.of("Invalid area definition: " + e.getMessage()));
+        }
+    }
+
+    public List<AreaDTO> getCatalog() {
+        return areaCatalog.index().entries().values().stream()
+                .map(entry -> new AreaDTO(entry.name(), entry.area().source(), false))
+                .toList();
+    }
+
+    public Optional<ErrorDTO> putCatalogArea(String name, String source) {
+        if (name == null || name.isBlank()) {
+            return Optional.of(ErrorDTO.of("Area name is empty"));
+        }
+        try {
+            // сохраняется только то, что разбирается
+            AreaParser.parse(source);
+            areaDAO.saveCatalogArea(name, source);
+            areaCatalog.put(name, source);
+            return Optional.empty();
+        } catch (AreaSyntaxException e) {
+            return Optional.of(ErrorDTO.of("Invalid area definition: " + e.getMessage()));
+        }
+    }
+
+    public boolean removeCatalogArea(String name) {
+        boolean stored = areaDAO.deleteCatalogArea(name);
+        return areaCatalog.remove(name) || stored;
+    }
+
+    /**
+     * Starts estimating the area of the current region for the given r, see {@link AreaEstimator}, and returns.
+     * Points are sampled from the square [-extent, extent]^2, by default the square that holds every x
+     * and r of the validator domain. Each intermediate estimate goes to {@code listener} until the standard
+     * error is at most {@code maxError}, {@link #MAX_SAMPLES} points are sampled or the listener returns false,
+     * then {@code finished} is called.
+     * <p>
+     * The partitions of the rounds run on the managed executor, no thread of it waits for them. At most
+     * {@link #MAX_ESTIMATES} estimates run at once, so they never take all of its threads.
+     *
+     * @throws BackpressureException if {@link #MAX_ESTIMATES} estimates are running.
+     */
+    public void estimateArea(int r, double maxError, Double extent, long seed, Predicate<EstimateDTO> listener,
+                             Runnable finished) {
+        if (!ESTIMATES.tryAcquire()) {
+            throw new BackpressureException(BackpressureException.TOO_MANY_REQUESTS, 5,
+                    "Too many area estimates are running");
+        }
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        double window = extent != null ? extent
+                : Math.max(Math.max(-domain.minX(), domain.maxX()), domain.maxR());
+        AreaEstimator estimator = new AreaEstimator(ActiveArea.region(), r, window, seed, executor,
+                Runtime.getRuntime().availableProcessors());
+        estimator.runAsync(maxError, MAX_SAMPLES, estimate -> listener.test(EstimateDTO.builder()
+                        .r(r)
+                        .samples(estimate.samples())
+                        .area(estimate.area())
+                        .hitProbability(estimate.hitProbability())
+                        .standardError(estimate.standardError())
+                        .done(AreaEstimator.isPrecise(estimate, maxError) || estimate.samples() >= MAX_SAMPLES)
+                        .build()))
+                .whenComplete((estimate, failure) -> {
+                    if (failure != null) {
+                        log.error("Area estimation for r = {} failed", r, failure);
+                    }
+                    ESTIMATES.release();
+                    finished.run();
+                });
+    }
+
+    public void resetArea() {
+        areaDAO.deleteActiveArea();
+        ActiveArea.reset();
+        log.info("Switched back to the built-in area");
+        tileService.invalidateAll();
+        backfillService.restart();
+    }
+}
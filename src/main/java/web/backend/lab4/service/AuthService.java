@@ -1,6 +1,8 @@
 package web.backend.lab4.service;
 
 import jakarta.ejb.EJB;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import lombok.extern.slf4j.Slf4j;
@@ -18,14 +20,37 @@ import jakarta.ejb.Stateless;
 @Stateless
 @Slf4j
 public class AuthService {
+    // строк за одну транзакцию удаления
+    static final int DELETE_CHUNK = 1000;
+    // попыток удалить пользователя, если во время удаления он успел отправить точку
+    static final int DELETE_ATTEMPTS = 3;
+
     @EJB
     private UserDAO userDAO;
 
+    @EJB
+    private UserLookupService userLookup;
+
+    @EJB
+    private HistoryCacheService historyCache;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @EJB
+    private TileService tileService;
+
+    @EJB
+    private DensityService densityService;
+
+    @EJB
+    private IngestionService ingestionService;
+
     @Inject
     private JwtProvider jwtProvider;
 
     public Optional<ErrorDTO> signup(@Valid UserDTO userDTO) {
-        if (userDAO.getUserByUsername(userDTO.getUsername()).isPresent()) {
+        if (userLookup.findByUsername(userDTO.getUsername()).isPresent()) {
             return Optional.of(ErrorDTO.of("User with this name already exists"));
         }
 
@@ -35,12 +60,13 @@ public class AuthService {
                 .build();
 
         userDAO.addNewUser(user);
+        userLookup.invalidate(user.getUsername());
         log.info("Successfully added user: {}", user);
         return Optional.empty();
     }
 
     public Optional<AuthResponse> login(@Valid UserDTO userDTO) {
-        Optional<UserEntity> userOptional = userDAO.getUserByUsername(userDTO.getUsername());
+        Optional<UserEntity> userOptional = userLookup.findByUsername(userDTO.getUsername());
         if (userOptional.isPresent()) {
             UserEntity user = userOptional.get();
             if (PasswordHasher.checkPassword(userDTO.getPassword().toCharArray(), user.getPassword())) {
@@ -50,18 +76,92 @@ public class AuthService {
                 NewCookie refreshTokenCookie = createCookie("refresh_token", refreshToken, JwtProvider.REFRESH_TOKEN_EXPIRATION);
                 NewCookie accessTokenCookie = createCookie("access_token", accessToken, JwtProvider.ACCESS_TOKEN_EXPIRATION);
 
+                historyCache.preload(user.getId());
                 return Optional.of(new AuthResponse(accessTokenCookie, refreshTokenCookie));
             }
         }
         return Optional.empty();
     }
 
+    /**
+     * Deletes the account after checking its password. The points go in chunks of {@link #DELETE_CHUNK}
+     * rows in id order, each chunk in its own transaction, so nothing is loaded into memory and locks are
+     * held for one chunk only. The user row goes last, its stats and archive with it. Points of the user
+     * still in the ingestion queue are written first and new ones are refused, see
+     * {@link IngestionService#closeUser}. Only the caches of this user are dropped.
+     *
+     * @return false if the username or password is wrong.
+     */
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public boolean deleteAccount(@Valid UserDTO userDTO) {
+        Optional<UserEntity> userOptional = userLookup.findByUsername(userDTO.getUsername());
+        if (userOptional.isEmpty()
+                || !PasswordHasher.checkPassword(userDTO.getPassword().toCharArray(), userOptional.get().getPassword())) {
+            return false;
+        }
+        Long userId = userOptional.get().getId();
+
+        if (!ingestionService.closeUser(userId)) {
+            log.warn("Queued points of user {} were not written in time, deleting anyway", userId);
+        }
+        long deleted = 0;
+        try {
+            boolean removed = false;
+            for (int attempt = 1; !removed; attempt++) {
+                int chunk;
+                while ((chunk = userDAO.deletePointsChunk(userId, DELETE_CHUNK)) > 0) {
+                    deleted += chunk;
+                }
+                try {
+                    userDAO.deleteUser(userId);
+                    removed = true;
+                } catch (RuntimeException e) {
+                    // точка, добавленная после последней пачки, держит внешний ключ
+                    if (attempt == DELETE_ATTEMPTS) {
+                        throw e;
+                    }
+                    log.warn("User {} got new points while being deleted, retrying", userId);
+                }
+            }
+        } catch (RuntimeException e) {
+            // аккаунт остался, часть точек уже удалена: общую плотность поправить не из чего
+            ingestionService.openUser(userId);
+            forget(userDTO.getUsername(), userId);
+            densityService.invalidateAll();
+            throw e;
+        }
+
+        // очередь пользователя остаётся закрытой: id не переиспользуются, а запросы с его токеном отсекает AuthFilter
+        forget(userDTO.getUsername(), userId);
+        densityService.remove(userId);
+        log.info("Deleted user {} with {} rows", userId, deleted);
+        return true;
+    }
+
+    /**
+     * @return whether the account the token was issued to still exists. Checked on every request with
+     * a token, the lookup is cached by {@link UserLookupService}.
+     */
+    public boolean isActive(String token) {
+        return findUser(token).isPresent();
+    }
+
+    /**
+     * @return whether the token was issued to an admin, see {@link web.backend.lab4.filters.AdminOnly}.
+     */
+    public boolean isAdmin(String token) {
+        return findUser(token).filter(UserEntity::isAdmin).isPresent();
+    }
+
     public Optional<AuthResponse> refreshToken(String refreshToken) {
         if (refreshToken == null || refreshToken.isEmpty()) {
             return Optional.empty();
         }
 
         try {
+            if (!isActive(refreshToken)) {
+                return Optional.empty();
+            }
             String username = jwtProvider.getUsernameFromToken(refreshToken);
             Long userId = jwtProvider.getUserIdFromToken(refreshToken);
             String newAccessToken = jwtProvider.generateAccessToken(username, userId);
@@ -78,6 +178,21 @@ public class AuthService {
         return new AuthResponse(accessTokenCookie, refreshTokenCookie);
     }
 
+    private Optional<UserEntity> findUser(String token) {
+        String username = jwtProvider.getUsernameFromToken(token);
+        Long userId = jwtProvider.getUserIdFromToken(token);
+        // имя могли занять заново после удаления, поэтому сверяется и id
+        return userLookup.findByUsername(username)
+                .filter(user -> userId != null && user.getId() == userId);
+    }
+
+    private void forget(String username, Long userId) {
+        userLookup.invalidate(username);
+        historyCache.invalidate(userId);
+        pointIndex.invalidate(userId);
+        tileService.invalidate(userId);
+    }
+
     private NewCookie createCookie(String name, String value, int maxAge) {
         return new NewCookie.Builder(name)
                 .value(value)
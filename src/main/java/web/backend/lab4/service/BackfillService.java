@@ -0,0 +1,282 @@
+package web.backend.lab4.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.*;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.ArchivePeriod;
+import web.backend.lab4.dao.BackfillDAO;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.dto.BackfillDTO;
+import web.backend.lab4.dto.ErrorDTO;
+import web.backend.lab4.util.Calculator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Re-evaluates every stored result against the current area and writes back the ones that changed.
+ * <p>
+ * The table is read in id order in chunks of {@link #CHUNK_SIZE} rows, the next chunk is fetched while
+ * the current one is evaluated on a fork-join pool with one worker per core. The result for the stored r
+ * and the hit mask for all radii are recomputed. Changed rows are written with one bulk update per distinct
+ * outcome, together with the checkpoint, so a stopped or failed run continues from the last written chunk.
+ * The archive blobs are re-evaluated after the table, see {@link ArchiveDAO#reevaluate}.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@Slf4j
+public class BackfillService {
+    static final String JOB = "result-reevaluation";
+    static final int CHUNK_SIZE = 5000;
+    private static final int SLICE_SIZE = 256;
+
+    @EJB
+    private BackfillDAO backfillDAO;
+
+    @EJB
+    private ArchiveDAO archiveDAO;
+
+    @EJB
+    private HistoryCacheService historyCache;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @EJB
+    private TileService tileService;
+
+    @EJB
+    private DensityService densityService;
+
+    @Inject
+    private Calculator calculator;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopRequested;
+    // запуск заново после остановки текущего прогона, см. restart
+    private volatile boolean restartRequested;
+    private volatile BackfillDTO progress = BackfillDTO.builder().state(BackfillDTO.IDLE).build();
+
+    /**
+     * Starts the backfill in the background.
+     *
+     * @param fromScratch forget the checkpoint and go through the whole table.
+     */
+    public Optional<ErrorDTO> start(boolean fromScratch) {
+        if (!running.compareAndSet(false, true)) {
+            return Optional.of(ErrorDTO.of("Backfill is already running"));
+        }
+        try {
+            stopRequested = false;
+            if (fromScratch) {
+                backfillDAO.resetCheckpoint(JOB);
+            }
+            progress = BackfillDTO.builder().state(BackfillDTO.RUNNING).build();
+            executor.submit(this::run);
+            return Optional.empty();
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Stops the current run, if any, and starts again from the beginning of the table once it has stopped.
+     * Returns right away. Used when the area changes, since every stored result may be stale then.
+     */
+    public void restart() {
+        restartRequested = true;
+        stop();
+        // идущий прогон сам запустит новый, когда остановится
+        restartIfRequested();
+    }
+
+    public BackfillDTO getProgress() {
+        return progress;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        stop();
+        pool.shutdownNow();
+    }
+
+    void run() {
+        long started = System.nanoTime();
+        long scanned = 0;
+        long changed = 0;
+        long lastId = 0;
+        long total = 0;
+        try {
+            lastId = backfillDAO.loadCheckpoint(JOB);
+            total = backfillDAO.countResultsAfter(lastId);
+            log.info("Backfill started after id {}, {} rows to check", lastId, total);
+
+            List<ResultRow> chunk = backfillDAO.getResultsAfter(lastId, CHUNK_SIZE);
+            while (!chunk.isEmpty() && !stopRequested) {
+                long chunkLastId = chunk.get(chunk.size() - 1).id();
+                // следующий чанк читается из базы, пока считается текущий
+                CompletableFuture<List<ResultRow>> next = CompletableFuture
+                        .supplyAsync(() -> backfillDAO.getResultsAfter(chunkLastId, CHUNK_SIZE), executor);
+
+                boolean[] results = new boolean[chunk.size()];
+                int[] masks = new int[chunk.size()];
+                pool.invoke(new Reevaluation(calculator, chunk, results, masks, 0, chunk.size()));
+
+                Map<BackfillDAO.Outcome, List<Long>> changes = new HashMap<>();
+                int changedInChunk = 0;
+                for (int i = 0; i < results.length; i++) {
+                    ResultRow row = chunk.get(i);
+                    if (results[i] != row.result() || row.hitMask() == null || masks[i] != row.hitMask()) {
+                        changes.computeIfAbsent(new BackfillDAO.Outcome(results[i], masks[i]), k -> new ArrayList<>())
+                                .add(row.id());
+                        changedInChunk++;
+                    }
+                }
+                backfillDAO.saveChunk(JOB, changes, chunkLastId);
+                if (changedInChunk > 0) {
+                    // в загруженных историях, индексах, плитках и счётчиках остались старые результаты
+                    historyCache.invalidateAll();
+                    pointIndex.invalidateAll();
+                    tileService.invalidateAll();
+                    densityService.invalidateAll();
+                }
+
+                scanned += chunk.size();
+                changed += changedInChunk;
+                lastId = chunkLastId;
+                progress = snapshot(BackfillDTO.RUNNING, scanned, changed, total, lastId, started);
+                chunk = next.join();
+            }
+
+            if (!stopRequested) {
+                changed += reevaluateArchive();
+            }
+
+            String state = stopRequested ? BackfillDTO.STOPPED : BackfillDTO.DONE;
+            progress = snapshot(state, scanned, changed, total, lastId, started);
+            log.info("Backfill {}: {} rows checked, {} changed", state.toLowerCase(), scanned, changed);
+        } catch (RuntimeException e) {
+            log.error("Backfill failed after id {}", lastId, e);
+            progress = snapshot(BackfillDTO.FAILED, scanned, changed, total, lastId, started).toBuilder()
+                    .error(e.getMessage())
+                    .build();
+        } finally {
+            running.set(false);
+            restartIfRequested();
+        }
+    }
+
+    private void restartIfRequested() {
+        if (restartRequested && !running.get()) {
+            restartRequested = false;
+            try {
+                // второй поток, увидевший тот же запрос, получит "уже запущен"
+                start(true).ifPresent(error -> log.debug("Backfill was not restarted: {}", error.getError()));
+            } catch (RuntimeException e) {
+                log.error("Backfill could not be restarted", e);
+            }
+        }
+    }
+
+    /**
+     * Re-evaluates the points of the archive blobs, one blob at a time. There is no checkpoint: a stopped run
+     * goes through all of them again, which only costs the time.
+     *
+     * @return number of points that changed.
+     */
+    private long reevaluateArchive() {
+        long changed = 0;
+        for (ArchivePeriod blob : archiveDAO.getArchivedPeriods()) {
+            if (stopRequested) {
+                break;
+            }
+            changed += archiveDAO.reevaluate(blob.userId(), blob.period(), this::reevaluate);
+        }
+        if (changed > 0) {
+            historyCache.invalidateAll();
+            pointIndex.invalidateAll();
+            tileService.invalidateAll();
+            densityService.invalidateAll();
+        }
+        log.info("Backfill re-evaluated archived points, {} changed", changed);
+        return changed;
+    }
+
+    private List<ResultRow> reevaluate(List<ResultRow> rows) {
+        boolean[] results = new boolean[rows.size()];
+        int[] masks = new int[rows.size()];
+        pool.invoke(new Reevaluation(calculator, rows, results, masks, 0, rows.size()));
+        List<ResultRow> updated = new ArrayList<>(rows.size());
+        for (int i = 0; i < results.length; i++) {
+            ResultRow row = rows.get(i);
+            updated.add(new ResultRow(row.id(), row.x(), row.y(), row.r(), results[i], masks[i]));
+        }
+        return updated;
+    }
+
+    private static BackfillDTO snapshot(String state, long scanned, long changed, long total, long lastId, long started) {
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1e9;
+        return BackfillDTO.builder()
+                .state(state)
+                .scanned(scanned)
+                .changed(changed)
+                .total(total)
+                .lastId(lastId)
+                .rowsPerSecond(scanned / seconds)
+                .build();
+    }
+
+    private static class Reevaluation extends RecursiveAction {
+        private final Calculator calculator;
+        private final List<ResultRow> rows;
+        private final boolean[] results;
+        private final int[] masks;
+        private final int from;
+        private final int to;
+
+        Reevaluation(Calculator calculator, List<ResultRow> rows, boolean[] results, int[] masks, int from, int to) {
+            this.calculator = calculator;
+            this.rows = rows;
+            this.results = results;
+            this.masks = masks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SLICE_SIZE) {
+                for (int i = from; i < to; i++) {
+                    ResultRow row = rows.get(i);
+                    results[i] = calculator.calculate(row.x(), row.y(), row.r());
+                    masks[i] = calculator.calculateMask(row.x(), row.y());
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Reevaluation(calculator, rows, results, masks, from, mid),
+                    new Reevaluation(calculator, rows, results, masks, mid, to));
+        }
+    }
+}
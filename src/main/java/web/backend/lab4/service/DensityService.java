@@ -0,0 +1,114 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.DensityRow;
+import web.backend.lab4.dao.ResultDAO;
+import web.backend.lab4.dto.DensityCellDTO;
+import web.backend.lab4.util.DensityGrid;
+import web.backend.lab4.util.UserCache;
+
+import java.util.List;
+
+/**
+ * Hit and miss counts of the stored results per grid cell, for one user and for all users together.
+ * <p>
+ * Counts are kept in {@link DensityGrid}s: loaded from the database with one GROUP BY query and a pass over
+ * the archive blobs on first use and then updated by {@link #add} for every new result, so a read never touches
+ * the points themselves.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Slf4j
+public class DensityService {
+    static final int MAX_USERS = 1000;
+    // ключ общей сетки; id пользователей положительны, и у выданных последовательностью, и у TimeOrderedIds
+    private static final Long ALL_USERS = 0L;
+
+    @EJB
+    private ResultDAO resultDAO;
+
+    @EJB
+    private ArchiveDAO archiveDAO;
+
+    private final UserCache<DensityGrid> users = new UserCache<>(MAX_USERS);
+    private final UserCache<DensityGrid> total = new UserCache<>(1);
+
+    /**
+     * @param factor side of a cell in base cells of {@link DensityGrid}.
+     */
+    public List<DensityCellDTO> getDensity(Long userId, int factor) {
+        return toCells(users.get(userId, () -> load(userId)), factor);
+    }
+
+    public List<DensityCellDTO> getTotalDensity(int factor) {
+        return toCells(total.get(ALL_USERS, () -> load(null)), factor);
+    }
+
+    /**
+     * Counts a stored result. Must be called after the result is committed, see {@link IngestionService#publish}.
+     */
+    public void add(Long userId, double x, double y, boolean result) {
+        users.update(userId, grid -> grid.add(x, y, result));
+        total.update(ALL_USERS, grid -> grid.add(x, y, result));
+    }
+
+    /**
+     * Takes the results of a user out of the counts, used after its points are deleted. Its counts are
+     * subtracted from the total ones if they are loaded, otherwise the total counts are dropped.
+     */
+    public void remove(Long userId) {
+        DensityGrid grid = users.getIfPresent(userId);
+        users.invalidate(userId);
+        if (grid != null) {
+            total.update(ALL_USERS, all -> all.subtract(grid));
+        } else {
+            total.invalidate(ALL_USERS);
+        }
+    }
+
+    /**
+     * Counts results stored in bulk for a user: its own counts are loaded again on next use and
+     * {@code imported} is added to the total ones.
+     */
+    public void addImported(Long userId, DensityGrid imported) {
+        users.invalidate(userId);
+        total.update(ALL_USERS, all -> all.add(imported));
+    }
+
+    /**
+     * Drops all counts, used when stored results are rewritten in bulk.
+     */
+    public void invalidateAll() {
+        users.invalidateAll();
+        total.invalidateAll();
+    }
+
+    private DensityGrid load(Long userId) {
+        DensityGrid grid = new DensityGrid();
+        List<DensityRow> rows = resultDAO.getDensity(userId);
+        for (DensityRow row : rows) {
+            grid.addCell(row.col(), row.row(), row.result(), row.count());
+        }
+        archiveDAO.forEachBlob(userId, points -> points.forEach(point -> grid.add(point.x(), point.y(), point.result())));
+        log.debug("Loaded density of {}: {} cells", userId != null ? "user " + userId : "all users", rows.size());
+        return grid;
+    }
+
+    private static List<DensityCellDTO> toCells(DensityGrid grid, int factor) {
+        double size = (double) factor / DensityGrid.CELLS_PER_UNIT;
+        return grid.aggregate(factor).stream()
+                .map(bin -> DensityCellDTO.builder()
+                        .x(bin.col() * size)
+                        .y(bin.row() * size)
+                        .size(size)
+                        .hits(bin.hits())
+                        .misses(bin.misses())
+                        .build())
+                .toList();
+    }
+}
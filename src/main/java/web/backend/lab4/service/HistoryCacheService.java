@@ -0,0 +1,262 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.Asynchronous;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.HistoryDAO;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.util.PointColumns;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Point histories of active users as {@link PointColumns}, so reading the history of a warm user does not
+ * touch the database.
+ * <p>
+ * A history is loaded on login or on the first read and then kept up to date by {@link #add}, which sees
+ * every committed point, see {@link IngestionService#publish}. Archived points are loaded with the rest. The cache is an LRU bounded by the memory
+ * the columns take, {@link #MAX_CACHE_BYTES}. Users with more than {@link #MAX_USER_POINTS} points are
+ * always read from the database.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Slf4j
+public class HistoryCacheService {
+    static final long MAX_CACHE_BYTES = 256L << 20;
+    static final int MAX_USER_POINTS = 1_000_000;
+    static final int LOAD_PAGE = 10_000;
+    private static final int READ_PAGE = 1000;
+    private static final int STRIPES = 64;
+
+    @EJB
+    private HistoryDAO historyDAO;
+
+    @EJB
+    private ArchiveDAO archiveDAO;
+
+    // guarded by this, сами колонки - своим монитором
+    private final LinkedHashMap<Long, PointColumns> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+    // меняется при каждом изменении точек пользователя, загруженная история кэшируется, только если за время
+    // загрузки изменений не было
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    // пользователи, чья история не поместилась, чтобы не загружать её при каждом чтении
+    private final Set<Long> oversized = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Loads the history of the user in the background, called on login.
+     */
+    @Asynchronous
+    public void preload(Long userId) {
+        try {
+            columns(userId);
+        } catch (RuntimeException e) {
+            log.warn("Could not preload the history of user {}", userId, e);
+        }
+    }
+
+    /**
+     * @return every point of the user in id order, empty if the user has too many points to be cached.
+     */
+    public Optional<List<ResultRow>> getPoints(Long userId) {
+        return getPointsAfter(userId, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return up to {@code limit} points of the user with id greater than {@code afterId} in id order,
+     * empty if the user has too many points to be cached.
+     */
+    public Optional<List<ResultRow>> getPointsAfter(Long userId, long afterId, int limit) {
+        PointColumns columns = columns(userId);
+        if (columns == null) {
+            return Optional.empty();
+        }
+        synchronized (columns) {
+            return Optional.of(columns.after(afterId, limit));
+        }
+    }
+
+    /**
+     * Passes the points of the user to {@code action} in id order, a page at a time, so points added
+     * meanwhile are not missed and the columns are not locked while {@code action} runs.
+     *
+     * @return false if the user has too many points to be cached, nothing is passed then.
+     */
+    public boolean forEachPoint(Long userId, Consumer<ResultRow> action) {
+        PointColumns columns = columns(userId);
+        if (columns == null) {
+            return false;
+        }
+        long after = 0;
+        while (true) {
+            List<ResultRow> page;
+            synchronized (columns) {
+                page = columns.after(after, READ_PAGE);
+            }
+            if (page.isEmpty()) {
+                return true;
+            }
+            page.forEach(action);
+            after = page.get(page.size() - 1).id();
+        }
+    }
+
+    /**
+     * Adds committed results to the history of the user, if it is loaded.
+     */
+    public void add(Long userId, List<ResultRow> rows) {
+        versions.incrementAndGet(stripe(userId));
+        synchronized (this) {
+            PointColumns columns = cache.get(userId);
+            if (columns == null) {
+                return;
+            }
+            synchronized (columns) {
+                long before = columns.bytes();
+                rows.forEach(columns::add);
+                cachedBytes += columns.bytes() - before;
+                if (columns.size() > MAX_USER_POINTS) {
+                    cache.remove(userId);
+                    cachedBytes -= columns.bytes();
+                    oversized.add(userId);
+                }
+            }
+            evict();
+        }
+    }
+
+    /**
+     * Drops the history of the user, used when the points of the user are written or deleted in bulk.
+     */
+    public void invalidate(Long userId) {
+        versions.incrementAndGet(stripe(userId));
+        oversized.remove(userId);
+        synchronized (this) {
+            PointColumns columns = cache.remove(userId);
+            if (columns != null) {
+                cachedBytes -= bytes(columns);
+            }
+        }
+    }
+
+    /**
+     * Drops every history, used when stored results are rewritten in bulk.
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions.incrementAndGet(i);
+        }
+        oversized.clear();
+        synchronized (this) {
+            cache.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private PointColumns columns(Long userId) {
+        synchronized (this) {
+            PointColumns cached = cache.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (oversized.contains(userId)) {
+            return null;
+        }
+        long version = versions.get(stripe(userId));
+        PointColumns loaded = load(userId);
+        if (loaded == null) {
+            oversized.add(userId);
+            return null;
+        }
+        synchronized (this) {
+            PointColumns cached = cache.get(userId);
+            if (cached != null) {
+                return cached;
+            }
+            if (versions.get(stripe(userId)) == version) {
+                cache.put(userId, loaded);
+                cachedBytes += loaded.bytes();
+                evict();
+            }
+        }
+        return loaded;
+    }
+
+    private PointColumns load(Long userId) {
+        PointColumns columns = new PointColumns();
+        // архив по одному блоку вперемешку со страницами results_table, по порядку id
+        ArchiveCursor<ResultRow> archived = ArchiveCursor.points(archiveDAO, userId, 0);
+        long after = 0;
+        while (true) {
+            List<ResultRow> page = historyDAO.getPointsAfter(userId, after, LOAD_PAGE, null, null);
+            for (ResultRow row : page) {
+                if (!addArchived(columns, archived, row.id())) {
+                    return tooLarge(userId);
+                }
+                columns.add(row);
+            }
+            if (columns.size() > MAX_USER_POINTS) {
+                return tooLarge(userId);
+            }
+            if (page.size() < LOAD_PAGE) {
+                if (!addArchived(columns, archived, Long.MAX_VALUE)) {
+                    return tooLarge(userId);
+                }
+                log.debug("Loaded history of user {}: {} points, {} bytes", userId, columns.size(), columns.bytes());
+                return columns;
+            }
+            after = page.get(page.size() - 1).id();
+        }
+    }
+
+    /**
+     * Adds the archived points with id below {@code before}.
+     *
+     * @return false as soon as the columns hold more than {@link #MAX_USER_POINTS} points.
+     */
+    private static boolean addArchived(PointColumns columns, ArchiveCursor<ResultRow> archived, long before) {
+        while (archived.hasNextBefore(before)) {
+            columns.add(archived.next());
+            if (columns.size() > MAX_USER_POINTS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static PointColumns tooLarge(Long userId) {
+        log.debug("History of user {} is too large to be cached", userId);
+        return null;
+    }
+
+    private void evict() {
+        Iterator<PointColumns> it = cache.values().iterator();
+        while (cachedBytes > MAX_CACHE_BYTES && it.hasNext()) {
+            cachedBytes -= bytes(it.next());
+            it.remove();
+        }
+    }
+
+    private static long bytes(PointColumns columns) {
+        synchronized (columns) {
+            return columns.bytes();
+        }
+    }
+
+    private static int stripe(Long userId) {
+        return Math.floorMod(userId.hashCode(), STRIPES);
+    }
+}
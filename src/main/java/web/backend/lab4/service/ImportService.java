@@ -0,0 +1,205 @@
+package web.backend.lab4.service;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ImportDAO;
+import web.backend.lab4.dao.ImportedPoint;
+import web.backend.lab4.dto.ImportDTO;
+import web.backend.lab4.dto.ImportRejectDTO;
+import web.backend.lab4.util.Calculator;
+import web.backend.lab4.util.CsvPointReader;
+import web.backend.lab4.util.DensityGrid;
+import web.backend.lab4.util.Validator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+/**
+ * Imports a user's points from a CSV upload, see {@link CsvPointReader} for the format.
+ * <p>
+ * The upload is parsed while it arrives, in batches of {@link #BATCH_SIZE} rows. A batch is evaluated with
+ * {@link Calculator#calculateAll} and written by {@link ImportDAO} in its own transaction while the next one
+ * is parsed, so at most two batches are held in memory whatever the size of the file. A failed batch stops
+ * the import, the batches before it stay stored. Points without created_at get the time of the import,
+ * older points must fall into the retention of {@link PartitionService}.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@Slf4j
+public class ImportService {
+    static final int BATCH_SIZE = 5000;
+    static final int MAX_REJECTS = 1000;
+    private static final int READ_BUFFER = 1 << 16;
+
+    @EJB
+    private ImportDAO importDAO;
+
+    @EJB
+    private HistoryCacheService historyCache;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @EJB
+    private TileService tileService;
+
+    @EJB
+    private DensityService densityService;
+
+    @Inject
+    private Calculator calculator;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    public ImportDTO importCsv(Long userId, InputStream input) {
+        long started = System.nanoTime();
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime thisMonth = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+        CsvPointReader reader = new CsvPointReader(
+                new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), READ_BUFFER),
+                Validator.getValidator().getDomain(), thisMonth.minusMonths(PartitionService.RETENTION_MONTHS), now);
+
+        List<ImportRejectDTO> rejects = new ArrayList<>();
+        long[] rejected = {0};
+        Consumer<CsvPointReader.Reject> onReject = reject -> {
+            rejected[0]++;
+            if (rejects.size() < MAX_REJECTS) {
+                rejects.add(new ImportRejectDTO(reject.line(), reject.reason()));
+            }
+        };
+
+        long imported = 0;
+        Boolean copied = null;
+        String error = null;
+        // счётчики сохранённых пачек, добавляются к общей сетке плотности
+        DensityGrid density = new DensityGrid();
+        List<ImportedPoint> writingPoints = List.of();
+        CompletableFuture<Boolean> writing = CompletableFuture.completedFuture(null);
+        try {
+            boolean more = true;
+            while (more) {
+                List<CsvPointReader.Row> rows = new ArrayList<>(BATCH_SIZE);
+                more = reader.read(BATCH_SIZE, rows, onReject);
+                if (rows.isEmpty()) {
+                    continue;
+                }
+                List<ImportedPoint> points = evaluate(rows, now);
+                // следующая пачка разбирается, пока пишется предыдущая
+                Boolean previous = writing.join();
+                if (previous != null) {
+                    copied = previous;
+                    imported += count(density, writingPoints);
+                }
+                writingPoints = points;
+                writing = CompletableFuture.supplyAsync(() -> write(userId, points, thisMonth), executor);
+            }
+            Boolean last = writing.join();
+            if (last != null) {
+                copied = last;
+                imported += count(density, writingPoints);
+            }
+        } catch (IOException e) {
+            log.warn("CSV upload of user {} broke off at line {}", userId, reader.getLineNumber(), e);
+            error = "Upload broke off at line " + reader.getLineNumber();
+            imported += waitQuietly(writing, writingPoints, density);
+        } catch (CompletionException e) {
+            log.error("CSV import of user {} failed after {} rows", userId, imported, e.getCause());
+            error = "Could not store points: " + e.getCause().getMessage();
+        }
+
+        if (imported > 0) {
+            // загруженные история, индекс, плитки и счётчики этого пользователя не знают о новых точках,
+            // сводку user_stats ведут триггеры
+            historyCache.invalidate(userId);
+            pointIndex.invalidate(userId);
+            tileService.invalidate(userId);
+            densityService.addImported(userId, density);
+        }
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1e9;
+        String method = copied == null ? null : copied ? "COPY" : "ARRAYS";
+        log.info("Imported {} points of user {} with {} in {} s ({} rows/s), {} rejected", imported, userId, method,
+                String.format("%.1f", seconds), Math.round(imported / seconds), rejected[0]);
+        return ImportDTO.builder()
+                .imported(imported)
+                .rejected(rejected[0])
+                .rejects(rejects)
+                .seconds(seconds)
+                .rowsPerSecond(imported / seconds)
+                .method(method)
+                .error(error)
+                .build();
+    }
+
+    private List<ImportedPoint> evaluate(List<CsvPointReader.Row> rows, LocalDateTime now) {
+        int n = rows.size();
+        int[] xs = new int[n];
+        double[] ys = new double[n];
+        int[] rs = new int[n];
+        for (int i = 0; i < n; i++) {
+            CsvPointReader.Row row = rows.get(i);
+            xs[i] = row.x();
+            ys[i] = row.y();
+            rs[i] = row.r();
+        }
+        boolean[] results = new boolean[n];
+        calculator.calculateAll(xs, ys, rs, results);
+        List<ImportedPoint> points = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            LocalDateTime createdAt = rows.get(i).createdAt();
+            points.add(new ImportedPoint(xs[i], ys[i], rs[i], results[i], calculator.calculateMask(xs[i], ys[i]),
+                    createdAt != null ? createdAt : now));
+        }
+        return points;
+    }
+
+    private boolean write(Long userId, List<ImportedPoint> points, LocalDateTime thisMonth) {
+        LocalDateTime oldest = points.get(0).createdAt();
+        LocalDateTime newest = oldest;
+        for (ImportedPoint point : points) {
+            if (point.createdAt().isBefore(oldest)) {
+                oldest = point.createdAt();
+            } else if (point.createdAt().isAfter(newest)) {
+                newest = point.createdAt();
+            }
+        }
+        // секции на текущий и следующие месяцы создаёт PartitionService
+        if (oldest.isBefore(thisMonth)) {
+            importDAO.ensurePartitions(oldest, newest.isBefore(thisMonth) ? newest : thisMonth);
+        }
+        return importDAO.insert(userId, points);
+    }
+
+    private static int count(DensityGrid density, List<ImportedPoint> points) {
+        points.forEach(point -> density.add(point.x(), point.y(), point.result()));
+        return points.size();
+    }
+
+    /**
+     * @return rows stored by the write still running.
+     */
+    private int waitQuietly(CompletableFuture<Boolean> writing, List<ImportedPoint> points, DensityGrid density) {
+        try {
+            return writing.join() != null ? count(density, points) : 0;
+        } catch (CompletionException e) {
+            log.error("Last batch of the broken upload was not stored", e.getCause());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package web.backend.lab4.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ResultDAO;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.entity.ResultEntity;
+import web.backend.lab4.util.BackpressureException;
+import web.backend.lab4.util.WriteBehindQueue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persist and notify stages of adding a point: results are put into a bounded {@link WriteBehindQueue},
+ * stored in batches through {@link ResultDAO#addNewResults} and, once committed, passed to the cached history,
+ * the in-memory index, the tile cache and the density counts.
+ * <p>
+ * {@link #submit} never waits for the database. When the queue is full, or one user has too many results
+ * in flight, it throws a {@link BackpressureException}, which reaches the client as 503 or 429.
+ * On shutdown the queue is drained before the container goes away.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Slf4j
+public class IngestionService {
+    static final int CAPACITY = 8192;
+    static final int BATCH_SIZE = 500;
+    static final int MAX_PENDING_PER_USER = 256;
+    private static final long RETRY_AFTER_SECONDS = 1;
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+    private static final long DRAIN_POLL_MILLIS = 10;
+
+    @EJB
+    private ResultDAO resultDAO;
+
+    @EJB
+    private HistoryCacheService historyCache;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @EJB
+    private TileService tileService;
+
+    @EJB
+    private DensityService densityService;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    // результаты в очереди по пользователям, нулевые счётчики удаляются
+    private final Map<Long, Integer> inFlight = new ConcurrentHashMap<>();
+    // пользователи, чьи аккаунты удаляются или удалены
+    private final Set<Long> closed = ConcurrentHashMap.newKeySet();
+    private WriteBehindQueue<ResultEntity> queue;
+
+    @PostConstruct
+    void init() {
+        queue = new WriteBehindQueue<>(executor, CAPACITY, BATCH_SIZE, this::store, this::stored, this::lost);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        try {
+            if (!queue.close(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.error("Ingestion queue not drained in {} s, {} results pending",
+                        DRAIN_TIMEOUT_SECONDS, queue.pending());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while draining the ingestion queue, {} results pending", queue.pending());
+        }
+    }
+
+    /**
+     * Queues a calculated result to be stored.
+     *
+     * @return false if the account of the user is being deleted, the result is not taken then.
+     * @throws BackpressureException if the result cannot be queued now.
+     */
+    public boolean submit(ResultEntity entity) {
+        Long userId = entity.getUser().getId();
+        int pending = inFlight.merge(userId, 1, Integer::sum);
+        // проверка после счётчика: closeUser либо увидит этот результат в очереди, либо он будет отклонён здесь
+        if (closed.contains(userId)) {
+            release(userId, 1);
+            return false;
+        }
+        if (pending > MAX_PENDING_PER_USER) {
+            release(userId, 1);
+            throw new BackpressureException(BackpressureException.TOO_MANY_REQUESTS, RETRY_AFTER_SECONDS,
+                    "Too many points in flight");
+        }
+        if (!queue.offer(entity)) {
+            release(userId, 1);
+            throw new BackpressureException(BackpressureException.SERVICE_UNAVAILABLE, RETRY_AFTER_SECONDS,
+                    "Server is busy");
+        }
+        return true;
+    }
+
+    /**
+     * Stops taking results of the user and waits until the queued ones are stored, used before its account
+     * is deleted, so they are deleted with the rest instead of failing on the missing user.
+     *
+     * @return false if they were not stored within {@link #DRAIN_TIMEOUT_SECONDS} seconds.
+     */
+    public boolean closeUser(Long userId) {
+        closed.add(userId);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        try {
+            while (inFlight.containsKey(userId)) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                TimeUnit.MILLISECONDS.sleep(DRAIN_POLL_MILLIS);
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Takes results of the user again, see {@link #closeUser}.
+     */
+    public void openUser(Long userId) {
+        closed.remove(userId);
+    }
+
+    /**
+     * Passes committed results to the cached history, the in-memory index, the tile cache and the density counts.
+     */
+    public void publish(Long userId, List<ResultRow> rows) {
+        historyCache.add(userId, rows);
+        for (ResultRow row : rows) {
+            pointIndex.add(userId, row);
+            tileService.pointAdded(userId, row.x(), row.y());
+            densityService.add(userId, row.x(), row.y(), row.result());
+        }
+    }
+
+    private void store(List<ResultEntity> batch) {
+        resultDAO.addNewResults(batch);
+    }
+
+    private void stored(List<ResultEntity> batch) {
+        Map<Long, List<ResultRow>> byUser = new LinkedHashMap<>();
+        Map<Long, Integer> submitted = new LinkedHashMap<>();
+        for (ResultEntity entity : batch) {
+            Long userId = entity.getUser().getId();
+            submitted.merge(userId, 1, Integer::sum);
+            List<ResultRow> rows = byUser.computeIfAbsent(userId, id -> new ArrayList<>());
+            // повторная точка уже есть в кэшах, добавился только счётчик в базе
+            if (!entity.isRepeated()) {
+                rows.add(new ResultRow(entity.getId(), entity.getX(), entity.getY(), entity.getR(),
+                        entity.isResult(), entity.getHitMask()));
+            }
+        }
+        byUser.forEach((userId, rows) -> {
+            try {
+                publish(userId, rows);
+            } catch (RuntimeException e) {
+                // слушатель очереди не должен бросать, иначе перестанет вызываться
+                log.error("Error publishing results of user {}", userId, e);
+            } finally {
+                release(userId, submitted.get(userId));
+            }
+        });
+    }
+
+    private void lost(ResultEntity entity, RuntimeException e) {
+        log.error("Result ({}, {}, {}) of user {} could not be stored", entity.getX(), entity.getY(),
+                entity.getR(), entity.getUser().getId(), e);
+        release(entity.getUser().getId(), 1);
+    }
+
+    private void release(Long userId, int n) {
+        inFlight.computeIfPresent(userId, (id, count) -> count > n ? count - n : null);
+    }
+}
@@ -0,0 +1,70 @@
+package web.backend.lab4.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.PartitionDAO;
+
+import java.util.List;
+
+/**
+ * Keeps the monthly partitions of results_table: creates them {@link #MONTHS_AHEAD} months in advance,
+ * since a point outside every partition cannot be stored, and detaches the ones older than
+ * {@link #RETENTION_MONTHS} months, so indexes and vacuum only deal with recent data.
+ * <p>
+ * Runs on startup and every night.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Slf4j
+public class PartitionService {
+    static final int MONTHS_AHEAD = 3;
+    static final int RETENTION_MONTHS = 24;
+
+    @EJB
+    private PartitionDAO partitionDAO;
+
+    @EJB
+    private HistoryCacheService historyCache;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @EJB
+    private TileService tileService;
+
+    @EJB
+    private DensityService densityService;
+
+    @PostConstruct
+    void init() {
+        maintain();
+    }
+
+    @Schedule(hour = "3", minute = "15", persistent = false)
+    public void maintain() {
+        try {
+            int created = partitionDAO.createPartitions(MONTHS_AHEAD);
+            if (created > 0) {
+                log.info("Created {} partitions of results_table", created);
+            }
+            List<String> detached = partitionDAO.detachPartitions(RETENTION_MONTHS);
+            if (!detached.isEmpty()) {
+                log.info("Detached partitions of results_table: {}", detached);
+                // точки отключённых секций больше не читаются из базы, убираем их и из памяти
+                historyCache.invalidateAll();
+                pointIndex.invalidateAll();
+                tileService.invalidateAll();
+                densityService.invalidateAll();
+            }
+        } catch (Exception e) {
+            log.error("Partition maintenance failed", e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.ResultDAO;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.util.PointGrid;
+import web.backend.lab4.util.UserCache;
+
+import java.util.List;
+
+/**
+ * Per-user {@link PointGrid}s over the stored results.
+ * <p>
+ * A grid is loaded from the database, archived points included, on the first query of the user and then kept
+ * up to date by {@link #add}. At most {@link #MAX_USERS} grids taking at most {@link #MAX_CACHE_BYTES}
+ * together are kept, the least recently used ones are dropped first.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Slf4j
+public class PointIndexService {
+    static final int MAX_USERS = 1000;
+    static final long MAX_CACHE_BYTES = 256L << 20;
+
+    @EJB
+    private ResultDAO resultDAO;
+
+    @EJB
+    private ArchiveDAO archiveDAO;
+
+    private final UserCache<PointGrid> grids = new UserCache<>(MAX_USERS, MAX_CACHE_BYTES, PointGrid::bytes);
+
+    public List<ResultRow> inBox(Long userId, double minX, double minY, double maxX, double maxY) {
+        return grid(userId).inBox(minX, minY, maxX, maxY);
+    }
+
+    public List<ResultRow> inCircle(Long userId, double x, double y, double radius) {
+        return grid(userId).inCircle(x, y, radius);
+    }
+
+    public List<ResultRow> nearest(Long userId, double x, double y, int k) {
+        return grid(userId).nearest(x, y, k);
+    }
+
+    /**
+     * Adds a stored result to the grid of its user, if the grid is loaded.
+     * Must be called after the result is committed, see {@link IngestionService#publish}.
+     */
+    public void add(Long userId, ResultRow row) {
+        grids.update(userId, grid -> grid.add(row));
+    }
+
+    /**
+     * Drops the grid of one user, used when its points are deleted.
+     */
+    public void invalidate(Long userId) {
+        grids.invalidate(userId);
+    }
+
+    /**
+     * Drops every loaded grid, used when stored results are rewritten in bulk.
+     */
+    public void invalidateAll() {
+        grids.invalidateAll();
+    }
+
+    private PointGrid grid(Long userId) {
+        return grids.get(userId, () -> {
+            PointGrid grid = PointGrid.of(resultDAO.getRowsByUserId(userId));
+            // архив по одному блоку
+            archiveDAO.forEachBlob(userId, rows -> rows.forEach(grid::add));
+            log.debug("Loaded point index of user {}: {} points", userId, grid.size());
+            return grid;
+        });
+    }
+}
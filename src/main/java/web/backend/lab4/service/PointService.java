@@ -1,64 +1,396 @@
 package web.backend.lab4.service;
 
+import jakarta.annotation.Resource;
 import jakarta.ejb.EJB;
 import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
 import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.area.AreaCatalog;
 import web.backend.lab4.auth.JwtProvider;
+import web.backend.lab4.dao.ArchiveBlob;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.CompactRow;
+import web.backend.lab4.dao.ExportRow;
+import web.backend.lab4.dao.HistoryDAO;
 import web.backend.lab4.dao.ResultDAO;
-import web.backend.lab4.dao.UserDAO;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.dto.CatalogHitDTO;
+import web.backend.lab4.dto.CompactPointDTO;
+import web.backend.lab4.dto.DensityCellDTO;
 import web.backend.lab4.dto.ErrorDTO;
 import web.backend.lab4.dto.PointDTO;
+import web.backend.lab4.dto.PointPageDTO;
 import web.backend.lab4.dto.ResultDTO;
 import web.backend.lab4.entity.ResultEntity;
 import web.backend.lab4.entity.UserEntity;
 import web.backend.lab4.util.Calculator;
+import web.backend.lab4.util.DensityGrid;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import jakarta.ejb.Stateless;
 
 @Stateless
 @Slf4j
 public class PointService {
-    @EJB
-    private UserDAO userDAO;
+    private static final int MAX_DENSITY_FACTOR = 400;
 
     @EJB
     private ResultDAO resultDAO;
 
+    @EJB
+    private HistoryDAO historyDAO;
+
     @Inject
     private Calculator calculator;
 
-    public Optional<ResultDTO> addPoint(PointDTO pointDTO, String username) {
-        Optional<UserEntity> userOptional = userDAO.getUserByUsername(username);
-        if (userOptional.isEmpty()) {
+    @Inject
+    private AreaCatalog areaCatalog;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @EJB
+    private DensityService densityService;
+
+    @EJB
+    private IngestionService ingestionService;
+
+    @EJB
+    private HistoryCacheService historyCache;
+
+    @EJB
+    private ArchiveDAO archiveDAO;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    /**
+     * Checks the point and returns the result as soon as it is calculated, the point is stored afterwards
+     * by {@link IngestionService}.
+     *
+     * @return empty if the account of the user is being deleted.
+     * @throws web.backend.lab4.util.BackpressureException if the point cannot be queued now.
+     */
+    public Optional<ResultDTO> addPoint(PointDTO pointDTO, Long userId) {
+        ResultEntity entity = toEntity(pointDTO, userId);
+        if (!ingestionService.submit(entity)) {
             return Optional.empty();
         }
+        return Optional.of(ResultDTO.of(entity.isResult()));
+    }
 
-        UserEntity user = userOptional.get();
+    /**
+     * Stores several points in one transaction, the inserts go to the database as JDBC batches.
+     */
+    public Optional<List<ResultDTO>> addPoints(List<PointDTO> points, Long userId) {
+        List<ResultEntity> entities = points.stream()
+                .map(point -> toEntity(point, userId))
+                .toList();
+
+        try {
+            resultDAO.addNewResults(entities);
+            afterCommit(userId, entities);
+            return Optional.of(entities.stream()
+                    .map(entity -> ResultDTO.of(entity.isResult()))
+                    .toList());
+        } catch (Exception e) {
+            log.error("Error adding points", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * The user is taken from the token and not read from the database: the entity gets a stub with only
+     * the id, {@link ResultDAO} replaces it with a reference when storing.
+     */
+    private ResultEntity toEntity(PointDTO pointDTO, Long userId) {
         boolean result = calculator.calculate(pointDTO.getX(), pointDTO.getY(), pointDTO.getR());
-        ResultEntity entity = ResultEntity.builder()
+        return ResultEntity.builder()
                 .x(pointDTO.getX())
                 .y(pointDTO.getY())
                 .r(pointDTO.getR())
-                .user(user)
+                .user(UserEntity.builder().id(userId).build())
                 .result(result)
+                .hitMask(calculator.calculateMask(pointDTO.getX(), pointDTO.getY()))
+                .createdAt(LocalDateTime.now())
                 .build();
+    }
 
-        try {
-            resultDAO.addNewResult(entity);
-            return Optional.of(ResultDTO.of(entity.isResult()));
-        } catch (Exception e) {
-            log.error("Error adding point", e);
-            return Optional.empty();
+    /**
+     * Passes new results to the in-memory index, the tile cache and the density counts once they are committed,
+     * so a rolled back point never shows up there. Repeated points are already there.
+     */
+    private void afterCommit(Long userId, List<ResultEntity> entities) {
+        List<ResultRow> rows = entities.stream()
+                .filter(entity -> !entity.isRepeated())
+                .map(entity -> new ResultRow(entity.getId(), entity.getX(), entity.getY(), entity.getR(),
+                        entity.isResult(), entity.getHitMask()))
+                .toList();
+        Runnable apply = () -> ingestionService.publish(userId, rows);
+        if (transactions == null || transactions.getTransactionKey() == null) {
+            apply.run();
+            return;
         }
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    apply.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks points against every area of the catalog, see {@link web.backend.lab4.area.CatalogIndex}.
+     * Nothing is stored.
+     */
+    public List<CatalogHitDTO> checkCatalog(List<PointDTO> points) {
+        int n = points.size();
+        int[] xs = new int[n];
+        double[] ys = new double[n];
+        int[] rs = new int[n];
+        for (int i = 0; i < n; i++) {
+            PointDTO point = points.get(i);
+            xs[i] = point.getX();
+            ys[i] = point.getY() != null ? point.getY() : Double.NaN;
+            rs[i] = point.getR();
+        }
+        List<List<String>> areas = areaCatalog.findAll(xs, ys, rs);
+        List<CatalogHitDTO> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(CatalogHitDTO.builder()
+                    .x(xs[i])
+                    .y(points.get(i).getY())
+                    .r(rs[i])
+                    .areas(areas.get(i))
+                    .build());
+        }
+        return result;
     }
 
     public Optional<List<PointDTO>> getPoints(Long userId) {
-        return Optional.of(resultDAO
-                .getResultsByUserId(userId)
-                .stream()
-                .map(PointDTO::fromEntity)
-                .toList());
+        return getPoints(userId, null);
+    }
+
+    /**
+     * Archived points, see {@link ArchiveService}, are merged in by id.
+     *
+     * @param r if not null, every point is returned with this r and with the result it would have for it.
+     *          The result is read from the stored hit mask, only rows without a mask are recomputed.
+     */
+    public Optional<List<PointDTO>> getPoints(Long userId, Integer r) {
+        Optional<List<ResultRow>> cached = historyCache.getPoints(userId);
+        if (cached.isPresent()) {
+            return Optional.of(cached.get().stream().map(row -> toPoint(row, r)).toList());
+        }
+        // без кэша строки не собираются в списки, в памяти только результат
+        List<PointDTO> points = new ArrayList<>();
+        forEachStoredRow(userId, row -> points.add(toPoint(row, r)));
+        return Optional.of(points);
+    }
+
+    /**
+     * Keyset page of the points of the user: up to {@code limit} points with id greater than {@code after},
+     * in id order. See {@link #getPoints(Long, Integer)} for {@code r}. Without a time range the page comes
+     * from {@link HistoryCacheService}. Archived points have no time of their own, they are only returned
+     * without a time range.
+     *
+     * @param from if not null, only points sent at or after it.
+     * @param to   if not null, only points sent before it.
+     */
+    public Optional<PointPageDTO> getPointsPage(Long userId, Integer r, long after, int limit,
+                                                LocalDateTime from, LocalDateTime to) {
+        // на одну строку больше, чтобы знать, есть ли следующая страница
+        List<ResultRow> rows = (from == null && to == null
+                ? historyCache.getPointsAfter(userId, after, limit + 1)
+                : Optional.<List<ResultRow>>empty())
+                .orElseGet(() -> {
+                    List<ResultRow> hot = historyDAO.getPointsAfter(userId, after, limit + 1, from, to);
+                    return from == null && to == null
+                            ? withArchive(hot, ArchiveCursor.points(archiveDAO, userId, after), limit + 1)
+                            : hot;
+                });
+        boolean more = rows.size() > limit;
+        List<ResultRow> page = more ? rows.subList(0, limit) : rows;
+        return Optional.of(PointPageDTO.builder()
+                .points(page.stream().map(row -> toPoint(row, r)).toList())
+                .next(more ? page.get(limit - 1).id() : null)
+                .build());
+    }
+
+    /**
+     * Passes the points of the user to {@code action} one by one as they are read, see
+     * {@link #getPoints(Long, Integer)} for {@code r} and {@link #getPointsPage} for {@code from} and {@code to}.
+     * Memory use does not depend on the number of points, archived points are held one month at a time.
+     */
+    public void forEachPoint(Long userId, Integer r, LocalDateTime from, LocalDateTime to, Consumer<PointDTO> action) {
+        Consumer<ResultRow> toAction = row -> action.accept(toPoint(row, r));
+        if (from == null && to == null && historyCache.forEachPoint(userId, toAction)) {
+            return;
+        }
+        if (from != null || to != null) {
+            historyDAO.forEachPoint(userId, from, to, toAction);
+            return;
+        }
+        forEachStoredRow(userId, toAction);
+    }
+
+    /**
+     * Passes the rows of results_table and of the archive to {@code action} in id order, reading the archive
+     * one blob at a time.
+     */
+    private void forEachStoredRow(Long userId, Consumer<ResultRow> action) {
+        ArchiveCursor<ResultRow> archived = ArchiveCursor.points(archiveDAO, userId, 0);
+        historyDAO.forEachPoint(userId, null, null, row -> {
+            archived.forEachBefore(row.id(), action);
+            action.accept(row);
+        });
+        archived.forEachBefore(Long.MAX_VALUE, action);
+    }
+
+    /**
+     * @return up to {@code limit} rows of {@code hot} and of the archive, in id order. {@code hot} is in id order
+     * and holds up to {@code limit} rows after the same cursor as {@code archived}.
+     */
+    private static List<ResultRow> withArchive(List<ResultRow> hot, ArchiveCursor<ResultRow> archived, int limit) {
+        List<ResultRow> rows = new ArrayList<>(hot.size());
+        int i = 0;
+        while (rows.size() < limit) {
+            if (archived.hasNextBefore(i < hot.size() ? hot.get(i).id() : Long.MAX_VALUE)) {
+                rows.add(archived.next());
+            } else if (i < hot.size()) {
+                rows.add(hot.get(i++));
+            } else {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Passes the stored rows of the user to {@code action} in id order as they are read, for export.
+     * See {@link #getPointsPage} for {@code from} and {@code to}. An archived point has no time of its own,
+     * it is exported with the start of its month and filtered by it.
+     */
+    public void exportPoints(Long userId, LocalDateTime from, LocalDateTime to, Consumer<ExportRow> action) {
+        List<ArchiveBlob> blobs = archiveDAO.getBlobsAfter(userId, 0).stream()
+                .filter(blob -> (from == null || !blob.period().isBefore(from))
+                        && (to == null || blob.period().isBefore(to)))
+                .toList();
+        ArchiveCursor<ExportRow> archived = new ArchiveCursor<>(blobs,
+                blob -> archiveDAO.getBlobPoints(userId, blob.period()).stream()
+                        .map(row -> new ExportRow(row.id(), row.x(), row.y(), row.r(), row.result(), blob.period()))
+                        .toList(),
+                ExportRow::id, 0);
+        historyDAO.forEachExportRow(userId, from, to, row -> {
+            archived.forEachBefore(row.id(), action);
+            action.accept(row);
+        });
+        archived.forEachBefore(Long.MAX_VALUE, action);
+    }
+
+    /**
+     * Passes every stored point of the user to {@code action} once, with the number of times it was sent
+     * and the time it was sent last, in id order. See {@link #getPoints(Long, Integer)} for {@code r}.
+     */
+    public void forEachCompactPoint(Long userId, Integer r, Consumer<CompactPointDTO> action) {
+        forEachCompactRow(userId, row -> {
+            PointDTO point = toPoint(row.row(), r);
+            action.accept(CompactPointDTO.builder()
+                    .x(point.getX())
+                    .y(point.getY())
+                    .r(point.getR())
+                    .result(point.isResult())
+                    .occurrences(row.occurrences())
+                    .lastSeen(row.lastSeen())
+                    .build());
+        });
+    }
+
+    /**
+     * Same as {@link #forEachPoint} without a time range, but a point sent several times is passed
+     * as many times, as if every submission were stored.
+     */
+    public void forEachSubmission(Long userId, Integer r, Consumer<PointDTO> action) {
+        forEachCompactRow(userId, row -> {
+            PointDTO point = toPoint(row.row(), r);
+            for (long i = 0; i < row.occurrences(); i++) {
+                action.accept(point);
+            }
+        });
+    }
+
+    private void forEachCompactRow(Long userId, Consumer<CompactRow> action) {
+        ArchiveCursor<CompactRow> archived = new ArchiveCursor<>(archiveDAO.getBlobsAfter(userId, 0),
+                blob -> archiveDAO.getCompactBlobPoints(userId, blob), CompactRow::id, 0);
+        historyDAO.forEachCompactRow(userId, row -> {
+            archived.forEachBefore(row.id(), action);
+            action.accept(row);
+        });
+        archived.forEachBefore(Long.MAX_VALUE, action);
+    }
+
+    private PointDTO toPoint(ResultRow row, Integer r) {
+        if (r == null) {
+            return new PointDTO(row.x(), row.y(), row.r(), row.result());
+        }
+        boolean result = row.hitMask() != null
+                ? Calculator.isHit(row.hitMask(), r)
+                : calculator.calculate(row.x(), row.y(), r);
+        return new PointDTO(row.x(), row.y(), r, result);
+    }
+
+    public Optional<List<PointDTO>> getPointsInBox(Long userId, double minX, double minY, double maxX, double maxY) {
+        return Optional.of(toPoints(pointIndex.inBox(userId, minX, minY, maxX, maxY)));
+    }
+
+    public Optional<List<PointDTO>> getPointsInCircle(Long userId, double x, double y, double radius) {
+        return Optional.of(toPoints(pointIndex.inCircle(userId, x, y, radius)));
+    }
+
+    public Optional<List<PointDTO>> getNearestPoints(Long userId, double x, double y, int k) {
+        return Optional.of(toPoints(pointIndex.nearest(userId, x, y, k)));
+    }
+
+    private static List<PointDTO> toPoints(List<ResultRow> rows) {
+        return rows.stream()
+                .map(row -> PointDTO.builder()
+                        .x(row.x())
+                        .y(row.y())
+                        .r(row.r())
+                        .result(row.result())
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Aggregate form of {@link #getPoints}: hit and miss counts per cell of side {@code cell}.
+     * Empty if the cell size is not a multiple of the base cell of {@link DensityGrid}.
+     */
+    public Optional<List<DensityCellDTO>> getDensity(Long userId, double cell) {
+        return densityFactor(cell).map(factor -> densityService.getDensity(userId, factor));
+    }
+
+    public Optional<List<DensityCellDTO>> getTotalDensity(double cell) {
+        return densityFactor(cell).map(densityService::getTotalDensity);
+    }
+
+    private static Optional<Integer> densityFactor(double cell) {
+        double factor = cell * DensityGrid.CELLS_PER_UNIT;
+        if (!(factor >= 1 && factor <= MAX_DENSITY_FACTOR) || factor != Math.rint(factor)) {
+            return Optional.empty();
+        }
+        return Optional.of((int) factor);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.EJB;
+import jakarta.ejb.Stateless;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.dao.StatsDAO;
+import web.backend.lab4.dao.StatsRow;
+import web.backend.lab4.dto.RadiusStatsDTO;
+import web.backend.lab4.dto.StatsDTO;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Per-user totals built from the summary in user_stats, which the database keeps up to date on every write
+ * to results_table. Reading them costs the same for ten points and for ten million.
+ */
+@Stateless
+@Slf4j
+public class StatsService {
+    @EJB
+    private StatsDAO statsDAO;
+
+    public StatsDTO getStats(Long userId) {
+        List<StatsRow> rows = statsDAO.getStats(userId);
+        long total = 0;
+        long hits = 0;
+        for (StatsRow row : rows) {
+            total += row.total();
+            hits += row.hits();
+        }
+        return StatsDTO.builder()
+                .total(total)
+                .hits(hits)
+                .misses(total - hits)
+                .hitRate(rate(hits, total))
+                .first(format(rows.stream().map(StatsRow::firstAt).filter(Objects::nonNull)
+                        .min(Instant::compareTo).orElse(null)))
+                .last(format(rows.stream().map(StatsRow::lastAt).filter(Objects::nonNull)
+                        .max(Instant::compareTo).orElse(null)))
+                .radii(rows.stream()
+                        .map(row -> RadiusStatsDTO.builder()
+                                .r(row.r())
+                                .total(row.total())
+                                .hits(row.hits())
+                                .hitRate(rate(row.hits(), row.total()))
+                                .build())
+                        .toList())
+                .build();
+    }
+
+    /**
+     * Recomputes the summary of every user from results_table. Writes of points wait until it is done.
+     */
+    public long rebuild() {
+        long rows = statsDAO.rebuild();
+        log.info("User stats rebuilt, {} rows", rows);
+        return rows;
+    }
+
+    private static double rate(long hits, long total) {
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static String format(Instant instant) {
+        return instant != null ? instant.toString() : null;
+    }
+}
@@ -0,0 +1,180 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import web.backend.lab4.area.ActiveArea;
+import web.backend.lab4.area.AreaParser;
+import web.backend.lab4.area.AreaSyntaxException;
+import web.backend.lab4.area.CompiledArea;
+import web.backend.lab4.area.ShapeGeometry;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.util.Calculator;
+import web.backend.lab4.util.TileRenderer;
+
+import java.awt.geom.Area;
+import java.awt.geom.Rectangle2D;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rendered graph tiles, see {@link TileRenderer}, with an LRU cache bounded by the total size of the tiles.
+ * <p>
+ * Tiles are keyed by user, r, zoom, position, format and the area version. A new point only evicts the cached
+ * tiles of its user that it is drawn on, and only looks at that user's keys, which are indexed separately.
+ * A change of the area or of the stored results drops everything.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+@Slf4j
+public class TileService {
+    static final long MAX_CACHE_BYTES = 64L << 20;
+    private static final int STRIPES = 64;
+
+    @EJB
+    private PointIndexService pointIndex;
+
+    @Inject
+    private Calculator calculator;
+
+    // guarded by this
+    private final LinkedHashMap<Key, byte[]> cache = new LinkedHashMap<>(256, 0.75f, true);
+    // guarded by this, ключи cache по пользователям
+    private final Map<Long, Set<Key>> byUser = new HashMap<>();
+    private long cachedBytes;
+    private final AtomicLong areaVersion = new AtomicLong();
+    // меняется при каждой новой точке, плитка кэшируется, только если за время отрисовки точек не добавлялось
+    private final AtomicLongArray userVersions = new AtomicLongArray(STRIPES);
+
+    record Key(long userId, int r, TileRenderer.Tile tile, TileRenderer.Format format, long areaVersion) {
+    }
+
+    public byte[] getTile(Long userId, int r, TileRenderer.Tile tile, TileRenderer.Format format) {
+        long version = areaVersion.get();
+        Key key = new Key(userId, r, tile, format, version);
+        synchronized (this) {
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        long userVersion = userVersions.get(stripe(userId));
+        byte[] rendered = render(userId, r, tile, format);
+        synchronized (this) {
+            if (areaVersion.get() == version && userVersions.get(stripe(userId)) == userVersion) {
+                byte[] previous = cache.put(key, rendered);
+                cachedBytes += rendered.length - (previous != null ? previous.length : 0);
+                byUser.computeIfAbsent(key.userId(), id -> new HashSet<>()).add(key);
+                evict();
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Evicts the cached tiles of the user the point is drawn on. Must be called after the point is committed.
+     */
+    public void pointAdded(Long userId, double x, double y) {
+        userVersions.incrementAndGet(stripe(userId));
+        synchronized (this) {
+            Set<Key> keys = byUser.get(userId);
+            if (keys == null) {
+                return;
+            }
+            for (Iterator<Key> it = keys.iterator(); it.hasNext(); ) {
+                Key key = it.next();
+                if (key.tile().reach().contains(x, y)) {
+                    cachedBytes -= cache.remove(key).length;
+                    it.remove();
+                }
+            }
+            if (keys.isEmpty()) {
+                byUser.remove(userId);
+            }
+        }
+    }
+
+    /**
+     * Drops the cached tiles of one user, used when its points are deleted.
+     */
+    public void invalidate(Long userId) {
+        userVersions.incrementAndGet(stripe(userId));
+        synchronized (this) {
+            Set<Key> keys = byUser.remove(userId);
+            if (keys != null) {
+                for (Key key : keys) {
+                    cachedBytes -= cache.remove(key).length;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every cached tile, used when the area changes or stored results are rewritten in bulk.
+     */
+    public void invalidateAll() {
+        areaVersion.incrementAndGet();
+        synchronized (this) {
+            cache.clear();
+            byUser.clear();
+            cachedBytes = 0;
+        }
+    }
+
+    private byte[] render(Long userId, int r, TileRenderer.Tile tile, TileRenderer.Format format) {
+        Rectangle2D reach = tile.reach();
+        List<TileRenderer.Dot> dots = pointIndex
+                .inBox(userId, reach.getMinX(), reach.getMinY(), reach.getMaxX(), reach.getMaxY())
+                .stream()
+                .map(row -> new TileRenderer.Dot(row.x(), row.y(), isHit(row, r)))
+                .toList();
+        return TileRenderer.render(tile, format, r, area(r, reach), dots);
+    }
+
+    private boolean isHit(ResultRow row, int r) {
+        return row.hitMask() != null
+                ? Calculator.isHit(row.hitMask(), r)
+                : calculator.calculate(row.x(), row.y(), r);
+    }
+
+    private static Area area(int r, Rectangle2D clip) {
+        CompiledArea installed = ActiveArea.current();
+        try {
+            return ShapeGeometry.toArea(
+                    AreaParser.parse(installed != null ? installed.source() : ActiveArea.BUILT_IN), r, clip);
+        } catch (AreaSyntaxException e) {
+            // установленное определение уже было разобрано при установке
+            throw new IllegalStateException("Installed area cannot be parsed", e);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, byte[]>> it = cache.entrySet().iterator();
+        while (cachedBytes > MAX_CACHE_BYTES && it.hasNext()) {
+            Map.Entry<Key, byte[]> entry = it.next();
+            Key key = entry.getKey();
+            cachedBytes -= entry.getValue().length;
+            it.remove();
+            Set<Key> keys = byUser.get(key.userId());
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                byUser.remove(key.userId());
+            }
+        }
+    }
+
+    private static int stripe(Long userId) {
+        return Math.floorMod(userId.hashCode(), STRIPES);
+    }
+}
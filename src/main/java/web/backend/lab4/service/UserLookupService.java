@@ -0,0 +1,38 @@
+package web.backend.lab4.service;
+
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import web.backend.lab4.dao.UserDAO;
+import web.backend.lab4.entity.UserEntity;
+import web.backend.lab4.util.TtlCache;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Users by name for login and signup, cached for {@link #TTL_MINUTES} minutes. Requests with a token come
+ * here to check that the account still exists, see {@link AuthService#isActive}. Must be told about every
+ * change of a user, see {@link #invalidate}.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class UserLookupService {
+    static final int MAX_USERS = 10_000;
+    static final long TTL_MINUTES = 5;
+
+    @EJB
+    private UserDAO userDAO;
+
+    private final TtlCache<String, UserEntity> users =
+            new TtlCache<>(MAX_USERS, TimeUnit.MINUTES.toNanos(TTL_MINUTES));
+
+    public Optional<UserEntity> findByUsername(String username) {
+        return Optional.ofNullable(users.get(username, name -> userDAO.getUserByUsername(name).orElse(null)));
+    }
+
+    public void invalidate(String username) {
+        users.invalidate(username);
+    }
+}
@@ -0,0 +1,116 @@
+package web.backend.lab4.util;
+
+/**
+ * Precomputed form of {@link Calculator#compute(int, double, int)} for integer x and r from a {@link Validator.Domain}.
+ * <p>
+ * For fixed x and r every part of the area that can contain the point touches the line y = 0,
+ * so the accepted y values always form one closed interval [lo, hi]. The table keeps that interval
+ * for each (x, r) pair, and a check is one index computation and two double comparisons.
+ * Empty intervals are stored as [+inf, -inf]; NaN fails both comparisons, like in the original method.
+ */
+public final class AreaTable {
+    private final Validator.Domain domain;
+    private final int xSpan;
+    private final int rSpan;
+    // lo и hi лежат рядом: bounds[2 * i], bounds[2 * i + 1]
+    private final double[] bounds;
+
+    private AreaTable(Validator.Domain domain) {
+        this.domain = domain;
+        this.xSpan = domain.maxX() - domain.minX() + 1;
+        this.rSpan = domain.maxR() - domain.minR() + 1;
+        this.bounds = new double[2 * xSpan * rSpan];
+        for (int x = domain.minX(); x <= domain.maxX(); x++) {
+            for (int r = domain.minR(); r <= domain.maxR(); r++) {
+                int i = 2 * ((x - domain.minX()) * rSpan + (r - domain.minR()));
+                fill(x, r, i);
+            }
+        }
+    }
+
+    public static AreaTable build(Validator.Domain domain) {
+        return new AreaTable(domain);
+    }
+
+    public Validator.Domain domain() {
+        return domain;
+    }
+
+    /**
+     * @return true if the table has an entry for this x and r.
+     */
+    public boolean covers(int x, int r) {
+        int dx = x - domain.minX();
+        int dr = r - domain.minR();
+        return (dx | (xSpan - 1 - dx) | dr | (rSpan - 1 - dr)) >= 0;
+    }
+
+    /**
+     * Checks the point against the table. The caller must make sure that {@link #covers(int, int)} is true.
+     */
+    public boolean contains(int x, double y, int r) {
+        int i = 2 * ((x - domain.minX()) * rSpan + (r - domain.minR()));
+        return bounds[i] <= y & y <= bounds[i + 1];
+    }
+
+    /**
+     * Results for every r of the domain at once, bit r is set if the point is inside for that r.
+     * The entries of one x lie next to each other, so this is one pass over a short row of the table.
+     * The caller must make sure that x is covered and that the radii fit into an int ({@link Calculator#MAX_MASK_R}).
+     */
+    public int mask(int x, double y) {
+        int i = 2 * (x - domain.minX()) * rSpan;
+        int mask = 0;
+        for (int r = domain.minR(); r <= domain.maxR(); r++, i += 2) {
+            mask |= (bounds[i] <= y & y <= bounds[i + 1] ? 1 : 0) << r;
+        }
+        return mask;
+    }
+
+    private void fill(int x, int r, int i) {
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+
+        // x <= 0, y >= 0: четверть круга
+        if (x <= 0 && insideCircle(x, 0.0, r)) {
+            lo = 0.0;
+            hi = Math.max(hi, circleTop(x, r));
+        }
+        // x <= 0, y <= 0: треугольник
+        if (x <= 0 && -2*x - r <= 0) {
+            lo = Math.min(lo, -2*x - r);
+            hi = Math.max(hi, 0.0);
+        }
+        // x >= 0, y <= 0: прямоугольник
+        if (x >= 0 && x <= r / 2 && -r <= 0) {
+            lo = Math.min(lo, -r);
+            hi = Math.max(hi, 0.0);
+        }
+
+        bounds[i] = lo;
+        bounds[i + 1] = hi;
+    }
+
+    /**
+     * Largest y >= 0 for which the circle check of the calculator still passes. Because of rounding
+     * of y*y this is not always Math.sqrt(r*r - x*x), so the edge is found by bisection over the bit
+     * patterns of non-negative doubles, which are ordered the same way as the values.
+     */
+    private static double circleTop(int x, int r) {
+        long inside = Double.doubleToRawLongBits(0.0);
+        long outside = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        while (outside - inside > 1) {
+            long mid = (inside + outside) >>> 1;
+            if (insideCircle(x, Double.longBitsToDouble(mid), r)) {
+                inside = mid;
+            } else {
+                outside = mid;
+            }
+        }
+        return Double.longBitsToDouble(inside);
+    }
+
+    private static boolean insideCircle(int x, double y, int r) {
+        return x*x + y*y <= r*r;
+    }
+}
@@ -0,0 +1,30 @@
+package web.backend.lab4.util;
+
+import jakarta.ejb.ApplicationException;
+
+/**
+ * Thrown when a request cannot be taken right now because the server is behind, see
+ * {@link BackpressureExceptionMapper}. The client should retry after {@link #getRetryAfterSeconds()}.
+ */
+@ApplicationException
+public class BackpressureException extends RuntimeException {
+    public static final int TOO_MANY_REQUESTS = 429;
+    public static final int SERVICE_UNAVAILABLE = 503;
+
+    private final int status;
+    private final long retryAfterSeconds;
+
+    public BackpressureException(int status, long retryAfterSeconds, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,21 @@
+package web.backend.lab4.util;
+
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.ext.ExceptionMapper;
+import jakarta.ws.rs.ext.Provider;
+import web.backend.lab4.dto.ErrorDTO;
+
+@Provider
+public class BackpressureExceptionMapper implements ExceptionMapper<BackpressureException> {
+
+    @Override
+    public Response toResponse(BackpressureException exception) {
+        return Response.status(exception.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, exception.getRetryAfterSeconds())
+                .entity(ErrorDTO.of(exception.getMessage()))
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
@@ -2,13 +2,61 @@ package web.backend.lab4.util;
 
 
 import jakarta.enterprise.context.ApplicationScoped;
+import web.backend.lab4.area.ActiveArea;
 
 @ApplicationScoped
 public class Calculator {
+    /**
+     * Largest r that has a bit in {@link #calculateMask(int, double)}.
+     */
+    public static final int MAX_MASK_R = 30;
+
+    private volatile AreaTable table;
+
     public Calculator() {
     }
 
+    /**
+     * Checks the point against the area. If an area definition is loaded at runtime, it is used
+     * (see {@link ActiveArea}). Otherwise points from the validator domain are answered by {@link AreaTable},
+     * which is rebuilt when the domain changes, and other points go through {@link #compute}.
+     */
     public boolean calculate(int x, double y, int r) {
+        if (ActiveArea.isInstalled()) {
+            return ActiveArea.contains(x, y, r);
+        }
+        AreaTable table = table();
+        return table.covers(x, r) ? table.contains(x, y, r) : compute(x, y, r);
+    }
+
+    /**
+     * Checks the point for every r of the validator domain in one pass.
+     *
+     * @return bitmask where bit r is set if the point is inside the area for that r.
+     * Radii below 0 or above {@link #MAX_MASK_R} are left out.
+     */
+    public int calculateMask(int x, double y) {
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        int minR = Math.max(domain.minR(), 0);
+        int maxR = Math.min(domain.maxR(), MAX_MASK_R);
+        if (!ActiveArea.isInstalled()) {
+            AreaTable table = table();
+            if (minR == domain.minR() && maxR == domain.maxR() && table.covers(x, minR)) {
+                return table.mask(x, y);
+            }
+        }
+        int mask = 0;
+        for (int r = minR; r <= maxR; r++) {
+            mask |= (calculate(x, y, r) ? 1 : 0) << r;
+        }
+        return mask;
+    }
+
+    public static boolean isHit(int mask, int r) {
+        return r >= 0 && r <= MAX_MASK_R && (mask & (1 << r)) != 0;
+    }
+
+    static boolean compute(int x, double y, int r) {
         if (x <= 0 && y >= 0 && x*x + y*y <= r*r){
             return true;
         }
@@ -20,4 +68,87 @@ public class Calculator {
         }
         return false;
     }
-}
\ No newline at end of file
+
+    /**
+     * Checks a batch of points. The i-th point is (xs[i], ys[i], rs[i]) and its result goes to out[i].
+     *
+     * @param xs  x coordinates.
+     * @param ys  y coordinates.
+     * @param rs  radii.
+     * @param out results, must be at least as long as the inputs.
+     */
+    public void calculateAll(int[] xs, double[] ys, int[] rs, boolean[] out) {
+        int n = checkLengths(xs, ys, rs);
+        if (out.length < n) {
+            throw new IllegalArgumentException("Result array is too short: " + out.length + " < " + n);
+        }
+        if (ActiveArea.isInstalled()) {
+            for (int i = 0; i < n; i++) {
+                out[i] = ActiveArea.contains(xs[i], ys[i], rs[i]);
+            }
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            out[i] = hit(xs[i], ys[i], rs[i]);
+        }
+    }
+
+    /**
+     * Same as {@link #calculateAll(int[], double[], int[], boolean[])}, but packs the results into a bitset:
+     * the result of the i-th point is bit {@code i & 63} of {@code bits[i >>> 6]}.
+     *
+     * @param xs   x coordinates.
+     * @param ys   y coordinates.
+     * @param rs   radii.
+     * @param bits bitset for the results, must hold at least as many bits as there are points.
+     */
+    public void calculateAll(int[] xs, double[] ys, int[] rs, long[] bits) {
+        int n = checkLengths(xs, ys, rs);
+        int words = (n + 63) >>> 6;
+        if (bits.length < words) {
+            throw new IllegalArgumentException("Bitset is too short: " + bits.length + " < " + words);
+        }
+        boolean custom = ActiveArea.isInstalled();
+        for (int w = 0; w < words; w++) {
+            int base = w << 6;
+            int end = Math.min(base + 64, n);
+            long word = 0L;
+            for (int i = base; i < end; i++) {
+                boolean hit = custom ? ActiveArea.contains(xs[i], ys[i], rs[i]) : hit(xs[i], ys[i], rs[i]);
+                word |= (hit ? 1L : 0L) << (i - base);
+            }
+            bits[w] = word;
+        }
+    }
+
+    private AreaTable table() {
+        Validator.Domain domain = Validator.getValidator().getDomain();
+        AreaTable table = this.table;
+        if (table == null || !table.domain().equals(domain)) {
+            table = AreaTable.build(domain);
+            this.table = table;
+        }
+        return table;
+    }
+
+    /**
+     * Branch-free form of {@link #compute(int, double, int)}: every comparison is evaluated and
+     * combined with non-short-circuit operators, so the loops above compile to straight-line code.
+     */
+    static boolean hit(int x, double y, int r) {
+        boolean left = x <= 0;
+        boolean right = x >= 0;
+        boolean up = y >= 0;
+        boolean down = y <= 0;
+        return (left & up & (x*x + y*y <= r*r))
+                | (left & down & (y >= -2*x - r))
+                | (right & down & (x <= r / 2) & (y >= -r));
+    }
+
+    private static int checkLengths(int[] xs, double[] ys, int[] rs) {
+        if (xs.length != ys.length || xs.length != rs.length) {
+            throw new IllegalArgumentException("Coordinate arrays must have the same length");
+        }
+        return xs.length;
+    }
+}
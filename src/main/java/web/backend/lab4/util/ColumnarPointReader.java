@@ -0,0 +1,105 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ExportRow;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the output of {@link ColumnarPointWriter} a block at a time.
+ */
+public final class ColumnarPointReader {
+    private final DataInputStream in;
+    private long[] ids = new long[0];
+    private long[] times = new long[0];
+    private int[] xs = new int[0];
+    private int[] rs = new int[0];
+    private double[] ys = new double[0];
+    private byte[] results = new byte[0];
+    private int size;
+    private int position;
+    private long lastId;
+    private long lastTime;
+    private boolean ended;
+
+    public ColumnarPointReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (this.in.readInt() != ColumnarPointWriter.MAGIC) {
+            throw new IOException("Not a columnar point export");
+        }
+        short version = this.in.readShort();
+        if (version != ColumnarPointWriter.VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+    }
+
+    /**
+     * @return the next row, null after the last one.
+     */
+    public ExportRow next() throws IOException {
+        if (position == size && !readBlock()) {
+            return null;
+        }
+        int i = position++;
+        return new ExportRow(ids[i], xs[i], ys[i], rs[i], (results[i >>> 3] & (1 << (i & 7))) != 0,
+                ColumnarPointWriter.fromMicros(times[i]));
+    }
+
+    private boolean readBlock() throws IOException {
+        if (ended) {
+            return false;
+        }
+        int n = in.readInt();
+        if (n == 0) {
+            ended = true;
+            return false;
+        }
+        if (n < 0 || n > ColumnarPointWriter.BLOCK_ROWS) {
+            throw new IOException("Invalid block size " + n);
+        }
+        if (ids.length < n) {
+            ids = new long[n];
+            times = new long[n];
+            xs = new int[n];
+            rs = new int[n];
+            ys = new double[n];
+            results = new byte[(n + 7) >>> 3];
+        }
+        for (int i = 0; i < n; i++) {
+            lastId += readVarLong();
+            ids[i] = lastId;
+        }
+        for (int i = 0; i < n; i++) {
+            long zigzag = readVarLong();
+            lastTime += (zigzag >>> 1) ^ -(zigzag & 1);
+            times[i] = lastTime;
+        }
+        for (int i = 0; i < n; i++) {
+            xs[i] = in.readInt();
+        }
+        for (int i = 0; i < n; i++) {
+            rs[i] = in.readInt();
+        }
+        for (int i = 0; i < n; i++) {
+            ys[i] = in.readDouble();
+        }
+        in.readFully(results, 0, (n + 7) >>> 3);
+        size = n;
+        position = 0;
+        return true;
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+}
@@ -0,0 +1,120 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ExportRow;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+
+/**
+ * Binary columnar export, read back by {@link ColumnarPointReader}. Rows are written in blocks of up to
+ * {@link #BLOCK_ROWS}, only one block is held in memory.
+ * <p>
+ * Layout, numbers big-endian:
+ * <pre>
+ * header:  int magic "PCOL", short version 1
+ * block:   int n (0 ends the data)
+ *          n varints   id - previous id
+ *          n varints   zigzag(created_at - previous created_at), microseconds, created_at taken as UTC
+ *          n int32     x
+ *          n int32     r
+ *          n float64   y
+ *          (n + 7) / 8 bytes of results, row i is bit i % 8 of byte i / 8
+ * </pre>
+ * Varints are unsigned LEB128. The previous id and time start from 0 and carry over between blocks.
+ */
+public final class ColumnarPointWriter implements PointExportWriter {
+    public static final String MEDIA_TYPE = "application/vnd.point-checker.columnar";
+    static final int MAGIC = 0x50434F4C;
+    static final short VERSION = 1;
+    static final int BLOCK_ROWS = 4096;
+
+    private final DataOutputStream out;
+    private final long[] ids = new long[BLOCK_ROWS];
+    private final long[] times = new long[BLOCK_ROWS];
+    private final int[] xs = new int[BLOCK_ROWS];
+    private final int[] rs = new int[BLOCK_ROWS];
+    private final double[] ys = new double[BLOCK_ROWS];
+    private final byte[] results = new byte[(BLOCK_ROWS + 7) / 8];
+    private int size;
+    private long lastId;
+    private long lastTime;
+
+    public ColumnarPointWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.writeInt(MAGIC);
+        this.out.writeShort(VERSION);
+    }
+
+    @Override
+    public void write(ExportRow row) throws IOException {
+        ids[size] = row.id();
+        times[size] = toMicros(row.createdAt());
+        xs[size] = row.x();
+        rs[size] = row.r();
+        ys[size] = row.y();
+        if (row.result()) {
+            results[size >>> 3] |= (byte) (1 << (size & 7));
+        }
+        if (++size == BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        writeBlock();
+        out.writeInt(0);
+        out.flush();
+    }
+
+    private void writeBlock() throws IOException {
+        if (size == 0) {
+            return;
+        }
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            writeVarLong(ids[i] - lastId);
+            lastId = ids[i];
+        }
+        for (int i = 0; i < size; i++) {
+            long delta = times[i] - lastTime;
+            writeVarLong((delta << 1) ^ (delta >> 63));
+            lastTime = times[i];
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(xs[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeInt(rs[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeDouble(ys[i]);
+        }
+        int resultBytes = (size + 7) >>> 3;
+        out.write(results, 0, resultBytes);
+        Arrays.fill(results, 0, resultBytes, (byte) 0);
+        size = 0;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long toMicros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), time);
+    }
+
+    static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(micros, ChronoUnit.MICROS);
+    }
+}
@@ -0,0 +1,163 @@
+package web.backend.lab4.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads points from CSV a line at a time, so an upload of any size is parsed in constant memory.
+ * <p>
+ * A line is {@code x,y,r} or {@code x,y,r,created_at} with created_at as ISO date-time, a first line starting
+ * with {@code x} is taken as a header. Lines that cannot be parsed, lie outside the validator domain or were
+ * sent outside {@code [earliest, latest]} are reported as rejects with their line number, reading goes on
+ * with the next line.
+ */
+public final class CsvPointReader {
+    static final int MAX_LINE_LENGTH = 256;
+
+    private final Reader reader;
+    private final Validator.Domain domain;
+    private final LocalDateTime earliest;
+    private final LocalDateTime latest;
+    private final StringBuilder line = new StringBuilder(64);
+    private long lineNumber;
+    private boolean ended;
+
+    public record Row(long line, int x, double y, int r, LocalDateTime createdAt) {
+    }
+
+    public record Reject(long line, String reason) {
+    }
+
+    /**
+     * @param reader   not buffered here, pass a buffered one.
+     * @param earliest oldest accepted created_at.
+     * @param latest   newest accepted created_at.
+     */
+    public CsvPointReader(Reader reader, Validator.Domain domain, LocalDateTime earliest, LocalDateTime latest) {
+        this.reader = reader;
+        this.domain = domain;
+        this.earliest = earliest;
+        this.latest = latest;
+    }
+
+    /**
+     * Reads lines until {@code max} rows are added to {@code rows} or the input ends.
+     * Rows without created_at get {@code null} there.
+     *
+     * @return false if the input has ended.
+     */
+    public boolean read(int max, List<Row> rows, Consumer<Reject> rejects) throws IOException {
+        int added = 0;
+        while (added < max) {
+            if (!nextLine()) {
+                return false;
+            }
+            if (line.length() > MAX_LINE_LENGTH) {
+                rejects.accept(new Reject(lineNumber, "Line is longer than " + MAX_LINE_LENGTH + " characters"));
+                continue;
+            }
+            String text = line.toString().strip();
+            if (lineNumber == 1 && text.startsWith("\uFEFF")) {
+                text = text.substring(1);
+            }
+            if (text.isEmpty() || lineNumber == 1 && isHeader(text)) {
+                continue;
+            }
+            try {
+                rows.add(parse(text));
+                added++;
+            } catch (ValidationException e) {
+                rejects.accept(new Reject(lineNumber, e.getMessage()));
+            }
+        }
+        return true;
+    }
+
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    private Row parse(String text) throws ValidationException {
+        String[] fields = text.split(",", -1);
+        if (fields.length < 3 || fields.length > 4) {
+            throw new ValidationException("Expected x,y,r or x,y,r,created_at");
+        }
+        int x;
+        double y;
+        int r;
+        try {
+            x = Integer.parseInt(fields[0].strip());
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid x");
+        }
+        try {
+            y = Double.parseDouble(fields[1].strip());
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid y");
+        }
+        try {
+            r = Integer.parseInt(fields[2].strip());
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Invalid r");
+        }
+        if (x < domain.minX() || x > domain.maxX()) {
+            throw new ValidationException("Invalid x");
+        }
+        if (!Double.isFinite(y)) {
+            throw new ValidationException("Invalid y");
+        }
+        if (r < domain.minR() || r > domain.maxR()) {
+            throw new ValidationException("Invalid r");
+        }
+        LocalDateTime createdAt = null;
+        if (fields.length == 4 && !fields[3].isBlank()) {
+            try {
+                createdAt = LocalDateTime.parse(fields[3].strip());
+            } catch (DateTimeParseException e) {
+                throw new ValidationException("Invalid created_at");
+            }
+            if (createdAt.isBefore(earliest) || createdAt.isAfter(latest)) {
+                throw new ValidationException("created_at is outside " + earliest + " .. " + latest);
+            }
+        }
+        return new Row(lineNumber, x, y, r, createdAt);
+    }
+
+    private static boolean isHeader(String text) {
+        return text.regionMatches(true, 0, "x", 0, 1) && (text.length() == 1 || !Character.isDigit(text.charAt(1)));
+    }
+
+    /**
+     * Reads the next line into {@link #line}, keeping only its first {@link #MAX_LINE_LENGTH} + 1 characters,
+     * so a line without breaks does not take memory either.
+     */
+    private boolean nextLine() throws IOException {
+        if (ended) {
+            return false;
+        }
+        line.setLength(0);
+        int c;
+        boolean any = false;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r' && line.length() <= MAX_LINE_LENGTH) {
+                line.append((char) c);
+            }
+        }
+        if (c == -1) {
+            ended = true;
+            if (!any) {
+                return false;
+            }
+        }
+        lineNumber++;
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ExportRow;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@code id,x,y,r,result,created_at} with a header line, created_at as ISO date-time.
+ */
+public final class CsvPointWriter implements PointExportWriter {
+    static final String HEADER = "id,x,y,r,result,created_at\n";
+
+    private final Writer out;
+
+    public CsvPointWriter(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        this.out.write(HEADER);
+    }
+
+    @Override
+    public void write(ExportRow row) throws IOException {
+        out.write(Long.toString(row.id()));
+        out.write(',');
+        out.write(Integer.toString(row.x()));
+        out.write(',');
+        out.write(Double.toString(row.y()));
+        out.write(',');
+        out.write(Integer.toString(row.r()));
+        out.write(',');
+        out.write(row.result() ? "true" : "false");
+        out.write(',');
+        out.write(row.createdAt().toString());
+        out.write('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        out.flush();
+    }
+}
@@ -0,0 +1,101 @@
+package web.backend.lab4.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts of hits and misses per square cell of side {@code 1 / CELLS_PER_UNIT}.
+ * <p>
+ * Coarser grids are produced by merging base cells, so a read costs O(non-empty cells)
+ * no matter how many points were counted.
+ */
+public final class DensityGrid {
+    public static final int CELLS_PER_UNIT = 4;
+
+    // ключ - номер столбца и строки базовой ячейки, значение - {попадания, промахи}
+    private final Map<Long, long[]> counts = new HashMap<>();
+
+    public record Bin(int col, int row, long hits, long misses) {
+    }
+
+    public static int cell(double coordinate) {
+        // приведение double к int насыщается на границах диапазона
+        return (int) Math.floor(coordinate * CELLS_PER_UNIT);
+    }
+
+    public void add(double x, double y, boolean hit) {
+        addCell(cell(x), cell(y), hit, 1);
+    }
+
+    public synchronized void addCell(int col, int row, boolean hit, long count) {
+        long[] cell = counts.computeIfAbsent(key(col, row), k -> new long[2]);
+        cell[hit ? 0 : 1] += count;
+    }
+
+    /**
+     * Adds the counts of {@code other} to this grid.
+     */
+    public void add(DensityGrid other) {
+        Map<Long, long[]> added = new HashMap<>();
+        synchronized (other) {
+            other.counts.forEach((key, value) -> added.put(key, value.clone()));
+        }
+        synchronized (this) {
+            added.forEach((key, value) -> {
+                long[] cell = counts.computeIfAbsent(key, k -> new long[2]);
+                cell[0] += value[0];
+                cell[1] += value[1];
+            });
+        }
+    }
+
+    /**
+     * Takes the counts of {@code other} out of this grid, cells left without counts are dropped.
+     */
+    public void subtract(DensityGrid other) {
+        Map<Long, long[]> removed = new HashMap<>();
+        synchronized (other) {
+            other.counts.forEach((key, value) -> removed.put(key, value.clone()));
+        }
+        synchronized (this) {
+            removed.forEach((key, value) -> {
+                long[] cell = counts.get(key);
+                if (cell != null) {
+                    cell[0] -= value[0];
+                    cell[1] -= value[1];
+                    if (cell[0] <= 0 && cell[1] <= 0) {
+                        counts.remove(key);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * @param factor side of the returned cells in base cells.
+     * @return non-empty cells of side {@code factor / CELLS_PER_UNIT}, a cell (col, row) starts at
+     *         {@code (col * factor / CELLS_PER_UNIT, row * factor / CELLS_PER_UNIT)}.
+     */
+    public List<Bin> aggregate(int factor) {
+        Map<Long, long[]> merged = new HashMap<>();
+        synchronized (this) {
+            counts.forEach((key, value) -> {
+                int col = Math.floorDiv((int) (key >> 32), factor);
+                int row = Math.floorDiv((int) (long) key, factor);
+                long[] cell = merged.computeIfAbsent(key(col, row), k -> new long[2]);
+                cell[0] += value[0];
+                cell[1] += value[1];
+            });
+        }
+        List<Bin> bins = new ArrayList<>(merged.size());
+        merged.forEach((key, value) -> bins.add(new Bin((int) (key >> 32), (int) (long) key, value[0], value[1])));
+        bins.sort((a, b) -> a.row() != b.row() ? Integer.compare(a.row(), b.row()) : Integer.compare(a.col(), b.col()));
+        return bins;
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+}
@@ -0,0 +1,68 @@
+package web.backend.lab4.util;
+
+/**
+ * Set of longs with open addressing and linear probing, without boxing: about 16 bytes per element
+ * at the worst load factor, against 50 and more for a {@code HashSet<Long>}. Not thread-safe.
+ */
+final class LongHashSet {
+    // 0 обозначает пустую ячейку, сам 0 хранится отдельно
+    private static final long EMPTY = 0;
+
+    private long[] slots = new long[16];
+    private boolean hasZero;
+    private int size;
+
+    /**
+     * @return false if the value was already in the set.
+     */
+    boolean add(long value) {
+        if (value == EMPTY) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        // не больше половины ячеек занято
+        if ((size + 1) * 2 > slots.length) {
+            resize();
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            if (slots[i] == value) {
+                return false;
+            }
+            if (slots[i] == EMPTY) {
+                slots[i] = value;
+                size++;
+                return true;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        int mask = slots.length - 1;
+        for (long value : old) {
+            if (value != EMPTY) {
+                int i = mix(value) & mask;
+                while (slots[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = value;
+            }
+        }
+    }
+
+    private static int mix(long value) {
+        // младшие биты id по времени почти одинаковы у соседних точек, перемешиваем
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,196 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ResultRow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compressed blob of archived results, one per user and month in results_archive.
+ * <p>
+ * Layout before deflate, numbers big-endian:
+ * <pre>
+ * byte     version 1
+ * byte     flags, bit 0: x and r are nibbles
+ * varint   n
+ * n varints    id - previous id, rows in id order, the first from 0
+ * nibbles: zigzag varint min x, zigzag varint min r, n bytes (x - min x) &lt;&lt; 4 | (r - min r)
+ * otherwise: n zigzag varints x, n zigzag varints r
+ * n float64    y
+ * n varints    hit mask + 1, 0 for no mask
+ * (n + 7) / 8 bytes of results, row i is bit i % 8 of byte i / 8
+ * </pre>
+ * With the default domain x and r always fit into nibbles, a point takes its id delta, one byte for x and r,
+ * eight for y and a few bits for the mask and the result before compression.
+ */
+public final class PointArchive {
+    static final byte VERSION = 1;
+    private static final int NIBBLES = 1;
+
+    private PointArchive() {
+    }
+
+    /**
+     * @param rows in id order.
+     */
+    public static byte[] encode(List<ResultRow> rows) {
+        int n = rows.size();
+        int minX = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, minR = Integer.MAX_VALUE, maxR = Integer.MIN_VALUE;
+        for (ResultRow row : rows) {
+            minX = Math.min(minX, row.x());
+            maxX = Math.max(maxX, row.x());
+            minR = Math.min(minR, row.r());
+            maxR = Math.max(maxR, row.r());
+        }
+        boolean nibbles = n > 0 && (long) maxX - minX < 16 && (long) maxR - minR < 16;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(n * 6 + 16);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 1 << 14))) {
+            out.writeByte(VERSION);
+            out.writeByte(nibbles ? NIBBLES : 0);
+            writeVarLong(out, n);
+            long last = 0;
+            for (ResultRow row : rows) {
+                writeVarLong(out, row.id() - last);
+                last = row.id();
+            }
+            if (nibbles) {
+                writeVarLong(out, zigzag(minX));
+                writeVarLong(out, zigzag(minR));
+                for (ResultRow row : rows) {
+                    out.writeByte((row.x() - minX) << 4 | (row.r() - minR));
+                }
+            } else {
+                for (ResultRow row : rows) {
+                    writeVarLong(out, zigzag(row.x()));
+                }
+                for (ResultRow row : rows) {
+                    writeVarLong(out, zigzag(row.r()));
+                }
+            }
+            for (ResultRow row : rows) {
+                out.writeDouble(row.y());
+            }
+            for (ResultRow row : rows) {
+                // маска неотрицательна (бит 31 не используется), 0 оставлен для её отсутствия
+                writeVarLong(out, row.hitMask() != null ? row.hitMask() + 1L : 0);
+            }
+            byte[] results = new byte[(n + 7) >>> 3];
+            for (int i = 0; i < n; i++) {
+                if (rows.get(i).result()) {
+                    results[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            out.write(results);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the rows in id order.
+     */
+    public static List<ResultRow> decode(byte[] blob) {
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(blob), inflater, 1 << 14))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unknown archive version " + version);
+            }
+            boolean nibbles = (in.readByte() & NIBBLES) != 0;
+            int n = (int) readVarLong(in);
+            long[] ids = new long[n];
+            long last = 0;
+            for (int i = 0; i < n; i++) {
+                last += readVarLong(in);
+                ids[i] = last;
+            }
+            int[] xs = new int[n];
+            int[] rs = new int[n];
+            if (nibbles) {
+                int minX = (int) unzigzag(readVarLong(in));
+                int minR = (int) unzigzag(readVarLong(in));
+                for (int i = 0; i < n; i++) {
+                    int packed = in.readUnsignedByte();
+                    xs[i] = minX + (packed >>> 4);
+                    rs[i] = minR + (packed & 0xF);
+                }
+            } else {
+                for (int i = 0; i < n; i++) {
+                    xs[i] = (int) unzigzag(readVarLong(in));
+                }
+                for (int i = 0; i < n; i++) {
+                    rs[i] = (int) unzigzag(readVarLong(in));
+                }
+            }
+            double[] ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                ys[i] = in.readDouble();
+            }
+            long[] masks = new long[n];
+            for (int i = 0; i < n; i++) {
+                masks[i] = readVarLong(in);
+            }
+            byte[] results = new byte[(n + 7) >>> 3];
+            in.readFully(results);
+
+            List<ResultRow> rows = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                rows.add(new ResultRow(ids[i], xs[i], ys[i], rs[i], (results[i >>> 3] & (1 << (i & 7))) != 0,
+                        masks[i] != 0 ? (int) (masks[i] - 1) : null));
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupt archive", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+}
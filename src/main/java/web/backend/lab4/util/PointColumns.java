@@ -0,0 +1,128 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stored results of one user as primitive columns ordered by id: ids, x, r, y, hit masks and a result bitset,
+ * about 28 bytes per point against a couple of hundred for a {@link ResultRow} or an entity in a list.
+ * <p>
+ * Not thread-safe.
+ */
+public final class PointColumns {
+    // в hit_mask бит 31 не используется (r не больше Calculator.MAX_MASK_R), -1 значит, что маски нет
+    private static final int NO_MASK = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] ids;
+    private int[] xs;
+    private int[] rs;
+    private double[] ys;
+    private int[] masks;
+    private long[] results;
+    private int size;
+
+    public PointColumns() {
+        this(MIN_CAPACITY);
+    }
+
+    private PointColumns(int capacity) {
+        ids = new long[capacity];
+        xs = new int[capacity];
+        rs = new int[capacity];
+        ys = new double[capacity];
+        masks = new int[capacity];
+        results = new long[(capacity + 63) >>> 6];
+    }
+
+    /**
+     * Adds a row, keeping the id order. Rows mostly come in id order, an older id is moved into place.
+     * A row with an id that is already there is ignored.
+     */
+    public void add(ResultRow row) {
+        int at = size;
+        if (size > 0 && ids[size - 1] >= row.id()) {
+            int found = Arrays.binarySearch(ids, 0, size, row.id());
+            if (found >= 0) {
+                return;
+            }
+            at = -found - 1;
+        }
+        if (size == ids.length) {
+            grow();
+        }
+        if (at < size) {
+            shift(at);
+        }
+        ids[at] = row.id();
+        xs[at] = row.x();
+        rs[at] = row.r();
+        ys[at] = row.y();
+        masks[at] = row.hitMask() != null ? row.hitMask() : NO_MASK;
+        setResult(at, row.result());
+        size++;
+    }
+
+    /**
+     * @return up to {@code limit} rows with id greater than {@code afterId}, in id order.
+     */
+    public List<ResultRow> after(long afterId, int limit) {
+        int from = Arrays.binarySearch(ids, 0, size, afterId);
+        from = from >= 0 ? from + 1 : -from - 1;
+        int to = (int) Math.min(size, (long) from + limit);
+        List<ResultRow> rows = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            rows.add(new ResultRow(ids[i], xs[i], ys[i], rs[i], result(i), masks[i] != NO_MASK ? masks[i] : null));
+        }
+        return rows;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Memory taken by the columns, including the unused capacity.
+     */
+    public long bytes() {
+        // заголовки шести массивов и самого объекта
+        return 6 * 16L + 32 + ids.length * (8L + 4 + 4 + 8 + 4) + results.length * 8L;
+    }
+
+    private boolean result(int i) {
+        return (results[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private void setResult(int i, boolean result) {
+        if (result) {
+            results[i >>> 6] |= 1L << i;
+        } else {
+            results[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    private void shift(int at) {
+        int moved = size - at;
+        System.arraycopy(ids, at, ids, at + 1, moved);
+        System.arraycopy(xs, at, xs, at + 1, moved);
+        System.arraycopy(rs, at, rs, at + 1, moved);
+        System.arraycopy(ys, at, ys, at + 1, moved);
+        System.arraycopy(masks, at, masks, at + 1, moved);
+        for (int i = size; i > at; i--) {
+            setResult(i, result(i - 1));
+        }
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        rs = Arrays.copyOf(rs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        masks = Arrays.copyOf(masks, capacity);
+        results = Arrays.copyOf(results, (capacity + 63) >>> 6);
+    }
+}
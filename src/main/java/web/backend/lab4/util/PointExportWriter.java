@@ -0,0 +1,39 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ExportRow;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes exported rows to a stream as they come, see {@link CsvPointWriter} and {@link ColumnarPointWriter}.
+ * The stream is not closed.
+ */
+public interface PointExportWriter {
+
+    void write(ExportRow row) throws IOException;
+
+    /**
+     * Writes whatever is still buffered and the end of the data.
+     */
+    void finish() throws IOException;
+
+    enum Format {
+        CSV("text/csv"),
+        COLUMNAR(ColumnarPointWriter.MEDIA_TYPE);
+
+        private final String mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String mediaType() {
+            return mediaType;
+        }
+
+        public PointExportWriter open(OutputStream out) throws IOException {
+            return this == CSV ? new CsvPointWriter(out) : new ColumnarPointWriter(out);
+        }
+    }
+}
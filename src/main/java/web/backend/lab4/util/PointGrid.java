@@ -0,0 +1,247 @@
+package web.backend.lab4.util;
+
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of the stored points of one user: a uniform grid of square cells of side {@link #CELL},
+ * only non-empty cells are kept in a hash map.
+ * <p>
+ * Box and circle queries visit only the cells that overlap the query, nearest-neighbour queries walk square
+ * rings of cells around the query point and stop as soon as the next ring cannot hold anything closer than
+ * the k-th point found so far. Safe for concurrent use, writers take an exclusive lock.
+ */
+public final class PointGrid {
+    public static final double CELL = 0.5;
+
+    private static final Comparator<Neighbour> FARTHEST_FIRST = Comparator
+            .comparingDouble(Neighbour::distance2)
+            .thenComparingLong(n -> n.row().id())
+            .reversed();
+
+    // оценка памяти на точку: ResultRow 48 байт, ссылка в списке ячейки около 6 и до 32 в ids
+    static final int BYTES_PER_POINT = 80;
+
+    private final Map<Long, List<ResultRow>> cells = new HashMap<>();
+    // id всех точек сетки, чтобы повтор отсекался без просмотра ячейки
+    private final LongHashSet ids = new LongHashSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int minCol = Integer.MAX_VALUE;
+    private int maxCol = Integer.MIN_VALUE;
+    private int minRow = Integer.MAX_VALUE;
+    private int maxRow = Integer.MIN_VALUE;
+    private int size;
+
+    private record Neighbour(double distance2, ResultRow row) {
+    }
+
+    public static PointGrid of(List<ResultRow> rows) {
+        PointGrid grid = new PointGrid();
+        rows.forEach(grid::add);
+        return grid;
+    }
+
+    /**
+     * Adds a point. A point with an id that is already in the grid is ignored, so a row can safely be
+     * added both by the initial load and by an incremental update.
+     */
+    public void add(ResultRow row) {
+        int col = cell(row.x());
+        int cellRow = cell(row.y());
+        lock.writeLock().lock();
+        try {
+            if (!ids.add(row.id())) {
+                return;
+            }
+            cells.computeIfAbsent(key(col, cellRow), k -> new ArrayList<>()).add(row);
+            size++;
+            minCol = Math.min(minCol, col);
+            maxCol = Math.max(maxCol, col);
+            minRow = Math.min(minRow, cellRow);
+            maxRow = Math.max(maxRow, cellRow);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return estimated heap taken by the grid.
+     */
+    public long bytes() {
+        return (long) size() * BYTES_PER_POINT;
+    }
+
+    /**
+     * @return points with {@code minX <= x <= maxX} and {@code minY <= y <= maxY}, ordered by id.
+     */
+    public List<ResultRow> inBox(double minX, double minY, double maxX, double maxY) {
+        List<ResultRow> found = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            forEachCell(minX, minY, maxX, maxY, cell -> {
+                for (ResultRow row : cell) {
+                    if (row.x() >= minX && row.x() <= maxX && row.y() >= minY && row.y() <= maxY) {
+                        found.add(row);
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        found.sort(Comparator.comparingLong(ResultRow::id));
+        return found;
+    }
+
+    /**
+     * @return points at distance at most {@code radius} from (x, y), ordered by id.
+     */
+    public List<ResultRow> inCircle(double x, double y, double radius) {
+        List<ResultRow> found = new ArrayList<>();
+        double radius2 = radius * radius;
+        lock.readLock().lock();
+        try {
+            forEachCell(x - radius, y - radius, x + radius, y + radius, cell -> {
+                for (ResultRow row : cell) {
+                    if (distance2(row, x, y) <= radius2) {
+                        found.add(row);
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        found.sort(Comparator.comparingLong(ResultRow::id));
+        return found;
+    }
+
+    /**
+     * @return up to {@code k} points closest to (x, y), nearest first. Ties are broken by id.
+     */
+    public List<ResultRow> nearest(double x, double y, int k) {
+        PriorityQueue<Neighbour> best = new PriorityQueue<>(FARTHEST_FIRST);
+        lock.readLock().lock();
+        try {
+            if (size == 0 || k <= 0) {
+                return List.of();
+            }
+            int col = cell(x);
+            int row = cell(y);
+            // если точка далеко от данных, начинаем сразу с первого кольца, задевающего их
+            int ring = Math.max(0, Math.max(
+                    Math.max(minCol - col, col - maxCol),
+                    Math.max(minRow - row, row - maxRow)));
+            while (true) {
+                for (int r = Math.max(row - ring, minRow); r <= Math.min(row + ring, maxRow); r++) {
+                    if (r == row - ring || r == row + ring) {
+                        for (int c = Math.max(col - ring, minCol); c <= Math.min(col + ring, maxCol); c++) {
+                            offer(best, cells.get(key(c, r)), x, y, k);
+                        }
+                    } else {
+                        offer(best, cells.get(key(col - ring, r)), x, y, k);
+                        offer(best, cells.get(key(col + ring, r)), x, y, k);
+                    }
+                }
+                boolean coversAll = col - ring <= minCol && col + ring >= maxCol
+                        && row - ring <= minRow && row + ring >= maxRow;
+                // клетки следующего кольца не ближе ring * CELL к точке
+                double reach = ring * CELL;
+                if (coversAll || (best.size() == k && best.peek().distance2() <= reach * reach)) {
+                    break;
+                }
+                ring++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<ResultRow> found = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            found.add(best.poll().row());
+        }
+        Collections.reverse(found);
+        return found;
+    }
+
+    private static void offer(PriorityQueue<Neighbour> best, List<ResultRow> cell, double x, double y, int k) {
+        if (cell == null) {
+            return;
+        }
+        for (ResultRow row : cell) {
+            Neighbour candidate = new Neighbour(distance2(row, x, y), row);
+            if (best.size() < k) {
+                best.add(candidate);
+            } else if (FARTHEST_FIRST.compare(candidate, best.peek()) > 0) {
+                best.poll();
+                best.add(candidate);
+            }
+        }
+    }
+
+    private void forEachCell(double minX, double minY, double maxX, double maxY,
+                             Consumer<List<ResultRow>> action) {
+        if (size == 0 || !(minX <= maxX) || !(minY <= maxY)) {
+            return;
+        }
+        int fromCol = Math.max(cell(minX), minCol);
+        int toCol = Math.min(cell(maxX), maxCol);
+        int fromRow = Math.max(cell(minY), minRow);
+        int toRow = Math.min(cell(maxY), maxRow);
+        if (fromCol > toCol || fromRow > toRow) {
+            return;
+        }
+        long visited = (long) (toCol - fromCol + 1) * (toRow - fromRow + 1);
+        if (visited > cells.size()) {
+            // запрос шире заполненной части сетки, дешевле пройти по непустым ячейкам
+            cells.forEach((key, cell) -> {
+                int c = (int) (key >> 32);
+                int r = (int) (long) key;
+                if (c >= fromCol && c <= toCol && r >= fromRow && r <= toRow) {
+                    action.accept(cell);
+                }
+            });
+            return;
+        }
+        for (int c = fromCol; c <= toCol; c++) {
+            for (int r = fromRow; r <= toRow; r++) {
+                List<ResultRow> cell = cells.get(key(c, r));
+                if (cell != null) {
+                    action.accept(cell);
+                }
+            }
+        }
+    }
+
+    private static double distance2(ResultRow row, double x, double y) {
+        double dx = row.x() - x;
+        double dy = row.y() - y;
+        return dx * dx + dy * dy;
+    }
+
+    private static int cell(double coordinate) {
+        double cell = Math.floor(coordinate / CELL);
+        // бесконечности прижимаются к краю диапазона int, NaN попадает в нулевую ячейку
+        return (int) Math.max(Integer.MIN_VALUE / 2, Math.min(Integer.MAX_VALUE / 2, cell));
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+}
@@ -0,0 +1,225 @@
+package web.backend.lab4.util;
+
+import javax.imageio.ImageIO;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Draws square tiles of the graph the frontend shows in {@code graphUtils.js}: axes with ticks at r/2 and r,
+ * the area and the points, blue for hits and red for misses.
+ * <p>
+ * The plane is cut into tiles of {@link #SIZE} pixels. At zoom z one unit is {@code 20 * 2^z} pixels, tile
+ * (x, y) covers pixels [256x, 256(x + 1)) to the right of the origin and [256y, 256(y + 1)) below it, so the
+ * four tiles around the origin are (-1, -1), (0, -1), (-1, 0) and (0, 0). Labels are left to the client,
+ * so no fonts are needed and rendering works on a headless JVM.
+ */
+public final class TileRenderer {
+    public static final int SIZE = 256;
+    public static final int MIN_ZOOM = -4;
+    public static final int MAX_ZOOM = 8;
+    public static final double POINT_RADIUS = 5;
+
+    private static final double UNIT = 20;
+    private static final double TICK = 5;
+    private static final Color AXES = new Color(0x00afff);
+    private static final Color AREA = new Color(0, 170, 255, 128);
+    private static final Color HIT = Color.BLUE;
+    private static final Color MISS = Color.RED;
+
+    static {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+    }
+
+    public enum Format {
+        PNG("image/png"),
+        SVG("image/svg+xml");
+
+        private final String mediaType;
+
+        Format(String mediaType) {
+            this.mediaType = mediaType;
+        }
+
+        public String mediaType() {
+            return mediaType;
+        }
+    }
+
+    public record Tile(int z, int x, int y) {
+        public double scale() {
+            return UNIT * Math.scalb(1.0, z);
+        }
+
+        /**
+         * Part of the plane covered by the tile, in math coordinates.
+         */
+        public Rectangle2D bounds() {
+            double side = SIZE / scale();
+            return new Rectangle2D.Double(x * side, -(y + 1) * side, side, side);
+        }
+
+        /**
+         * Bounds grown by the size of a point, every point drawn on the tile has its center in here.
+         */
+        public Rectangle2D reach() {
+            Rectangle2D bounds = bounds();
+            double pad = POINT_RADIUS / scale();
+            return new Rectangle2D.Double(bounds.getX() - pad, bounds.getY() - pad,
+                    bounds.getWidth() + 2 * pad, bounds.getHeight() + 2 * pad);
+        }
+
+        /**
+         * Math coordinates to tile pixels.
+         */
+        AffineTransform transform() {
+            AffineTransform transform = AffineTransform.getTranslateInstance(-(double) x * SIZE, -(double) y * SIZE);
+            transform.scale(scale(), -scale());
+            return transform;
+        }
+    }
+
+    public record Dot(double x, double y, boolean hit) {
+    }
+
+    private TileRenderer() {
+    }
+
+    public static byte[] render(Tile tile, Format format, int r, Area area, List<Dot> dots) {
+        return format == Format.PNG ? png(tile, r, area, dots) : svg(tile, r, area, dots);
+    }
+
+    private static byte[] png(Tile tile, int r, Area area, List<Dot> dots) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            AffineTransform transform = tile.transform();
+
+            g.setColor(AREA);
+            g.fill(area.createTransformedArea(transform));
+
+            g.setColor(AXES);
+            g.setStroke(new BasicStroke(1));
+            for (double[] line : axes(tile, r)) {
+                g.draw(new Line2D.Double(line[0], line[1], line[2], line[3]));
+            }
+
+            double[] center = new double[2];
+            for (Dot dot : dots) {
+                transform.transform(new double[]{dot.x(), dot.y()}, 0, center, 0, 1);
+                g.setColor(dot.hit() ? HIT : MISS);
+                g.fill(new Ellipse2D.Double(center[0] - POINT_RADIUS, center[1] - POINT_RADIUS,
+                        2 * POINT_RADIUS, 2 * POINT_RADIUS));
+            }
+        } finally {
+            g.dispose();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] svg(Tile tile, int r, Area area, List<Dot> dots) {
+        AffineTransform transform = tile.transform();
+        StringBuilder svg = new StringBuilder(4096);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(SIZE)
+                .append("\" height=\"").append(SIZE)
+                .append("\" viewBox=\"0 0 ").append(SIZE).append(' ').append(SIZE).append("\">\n");
+
+        String path = path(area, transform);
+        if (!path.isEmpty()) {
+            svg.append("<path fill=\"#00aaff\" fill-opacity=\"0.5\" fill-rule=\"")
+                    .append(area.getPathIterator(null).getWindingRule() == PathIterator.WIND_EVEN_ODD ? "evenodd" : "nonzero")
+                    .append("\" d=\"").append(path).append("\"/>\n");
+        }
+
+        svg.append("<g stroke=\"#00afff\" stroke-width=\"1\">\n");
+        for (double[] line : axes(tile, r)) {
+            svg.append("<line x1=\"").append(number(line[0])).append("\" y1=\"").append(number(line[1]))
+                    .append("\" x2=\"").append(number(line[2])).append("\" y2=\"").append(number(line[3]))
+                    .append("\"/>\n");
+        }
+        svg.append("</g>\n");
+
+        double[] center = new double[2];
+        for (Dot dot : dots) {
+            transform.transform(new double[]{dot.x(), dot.y()}, 0, center, 0, 1);
+            svg.append("<circle cx=\"").append(number(center[0])).append("\" cy=\"").append(number(center[1]))
+                    .append("\" r=\"").append(number(POINT_RADIUS))
+                    .append("\" fill=\"").append(dot.hit() ? "blue" : "red").append("\"/>\n");
+        }
+        svg.append("</svg>\n");
+        return svg.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Axis lines and ticks in tile pixels, as {x1, y1, x2, y2}. Lines that miss the tile are dropped.
+     */
+    private static List<double[]> axes(Tile tile, int r) {
+        double left = (double) tile.x() * SIZE;
+        double top = (double) tile.y() * SIZE;
+        double scale = tile.scale();
+        // в пикселях относительно начала координат, затем сдвиг в систему плитки
+        List<double[]> lines = new ArrayList<>();
+        lines.add(new double[]{left, 0.5, left + SIZE, 0.5});
+        lines.add(new double[]{0.5, top, 0.5, top + SIZE});
+        for (double tick : new double[]{-r, -r / 2.0, r / 2.0, r}) {
+            double p = tick * scale;
+            lines.add(new double[]{p, -TICK, p, TICK});
+            lines.add(new double[]{-TICK, -p, TICK, -p});
+        }
+        lines.removeIf(l -> Math.max(l[0], l[2]) < left - 1 || Math.min(l[0], l[2]) > left + SIZE + 1
+                || Math.max(l[1], l[3]) < top - 1 || Math.min(l[1], l[3]) > top + SIZE + 1);
+        for (double[] l : lines) {
+            l[0] -= left;
+            l[2] -= left;
+            l[1] -= top;
+            l[3] -= top;
+        }
+        return lines;
+    }
+
+    private static String path(Area area, AffineTransform transform) {
+        StringBuilder d = new StringBuilder();
+        double[] c = new double[6];
+        for (PathIterator it = area.getPathIterator(transform); !it.isDone(); it.next()) {
+            switch (it.currentSegment(c)) {
+                case PathIterator.SEG_MOVETO -> d.append('M').append(number(c[0])).append(' ').append(number(c[1]));
+                case PathIterator.SEG_LINETO -> d.append('L').append(number(c[0])).append(' ').append(number(c[1]));
+                case PathIterator.SEG_QUADTO -> d.append('Q').append(number(c[0])).append(' ').append(number(c[1]))
+                        .append(' ').append(number(c[2])).append(' ').append(number(c[3]));
+                case PathIterator.SEG_CUBICTO -> d.append('C').append(number(c[0])).append(' ').append(number(c[1]))
+                        .append(' ').append(number(c[2])).append(' ').append(number(c[3]))
+                        .append(' ').append(number(c[4])).append(' ').append(number(c[5]));
+                default -> d.append('Z');
+            }
+        }
+        return d.toString();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+}
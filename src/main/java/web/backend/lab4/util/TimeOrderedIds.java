@@ -0,0 +1,78 @@
+package web.backend.lab4.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-ordered ids made without the database, snowflake-style:
+ * <pre>
+ * 41 bits  milliseconds since {@link #EPOCH}, enough until 2093
+ *  4 bits  node, one per application instance
+ *  8 bits  number within the millisecond
+ * </pre>
+ * The ids take 53 bits, so they stay exact as JSON numbers in JavaScript ({@code after} and {@code next}
+ * of the history pages). Sequence values of the old rows are far below them, so ordering by id keeps
+ * following the time the rows were created.
+ * <p>
+ * The ids of one node grow strictly. The last one is kept in an {@link AtomicLong} as milliseconds and number
+ * together and the next one is taken with a CAS, so threads never block. When a millisecond runs out of
+ * numbers or the clock goes back, the ids go on from the last one, ahead of the clock, and meet it again
+ * once it catches up. Ids of different nodes differ in the node bits.
+ */
+public final class TimeOrderedIds {
+    // 2024-01-01T00:00:00Z
+    public static final long EPOCH = 1_704_067_200_000L;
+    static final int NODE_BITS = 4;
+    static final int SEQUENCE_BITS = 8;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long node;
+    private final LongSupplier clock;
+    // (миллисекунды от EPOCH) << SEQUENCE_BITS | номер, для последнего выданного id
+    private final AtomicLong last = new AtomicLong();
+
+    public TimeOrderedIds(int node) {
+        this(node, System::currentTimeMillis);
+    }
+
+    TimeOrderedIds(int node, LongSupplier clock) {
+        if (node < 0 || node > MAX_NODE) {
+            throw new IllegalArgumentException("Node must be from 0 to " + MAX_NODE + ", got " + node);
+        }
+        this.node = node;
+        this.clock = clock;
+    }
+
+    public long next() {
+        long now = (clock.getAsLong() - EPOCH) << SEQUENCE_BITS;
+        return compose(last.accumulateAndGet(now, (previous, time) -> Math.max(previous + 1, time)));
+    }
+
+    /**
+     * Fills {@code ids} with consecutive ids of this node in one CAS.
+     */
+    public void next(long[] ids) {
+        int count = ids.length;
+        if (count == 0) {
+            return;
+        }
+        long now = (clock.getAsLong() - EPOCH) << SEQUENCE_BITS;
+        long end = last.accumulateAndGet(now, (previous, time) -> Math.max(previous + 1, time) + count - 1);
+        for (int i = 0; i < count; i++) {
+            ids[i] = compose(end - count + 1 + i);
+        }
+    }
+
+    public static long timestamp(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH;
+    }
+
+    public static int node(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE;
+    }
+
+    private long compose(long ticks) {
+        return (ticks >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | node << SEQUENCE_BITS | ticks & SEQUENCE_MASK;
+    }
+}
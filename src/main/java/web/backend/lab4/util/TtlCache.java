@@ -0,0 +1,88 @@
+package web.backend.lab4.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded LRU cache whose entries expire {@code ttlNanos} after they were loaded.
+ * <p>
+ * Missing values (the loader returned null) are not cached, so something created after a miss is found
+ * by the next lookup. Entries that may have changed are dropped with {@link #invalidate}. A key being loaded
+ * while it is invalidated is not cached.
+ */
+public final class TtlCache<K, V> {
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    // guarded by this
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long invalidations;
+
+    private record Entry<V>(V value, long expiresAt) {
+    }
+
+    public TtlCache(int maxSize, long ttlNanos) {
+        this(maxSize, ttlNanos, System::nanoTime);
+    }
+
+    TtlCache(int maxSize, long ttlNanos, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cached value or the one from {@code loader}, null if the loader found nothing.
+     */
+    public V get(K key, Function<K, V> loader) {
+        long seen;
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && clock.getAsLong() - entry.expiresAt() < 0) {
+                return entry.value();
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            seen = invalidations;
+        }
+
+        // загрузка без блокировки, параллельные промахи по одному ключу просто загрузят его дважды
+        V value = loader.apply(key);
+        if (value == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (invalidations == seen) {
+                entries.put(key, new Entry<>(value, clock.getAsLong() + ttlNanos));
+                evict();
+            }
+        }
+        return value;
+    }
+
+    public synchronized void invalidate(K key) {
+        invalidations++;
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        var it = entries.entrySet().iterator();
+        while (entries.size() > maxSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package web.backend.lab4.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-user in-memory structures that are loaded from the database on first use and then updated in place.
+ * <p>
+ * Holds at most {@code maxUsers} values whose weights add up to at most {@code maxWeight}, the least recently
+ * used ones are dropped when a new one is loaded or a value grows past the limit.
+ * A user is loaded by one thread at a time, the others wait for it. Updates that arrive during the load are
+ * kept and applied to the loaded value before it is cached, so a steady stream of updates does not keep the
+ * value from being cached. An update of a result stored just before the load started may be applied to a
+ * value that already has it.
+ */
+public final class UserCache<V> {
+    private final int maxUsers;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Map<Long, Entry<V>> values = new ConcurrentHashMap<>();
+    // сумма весов закэшированных значений, меняется вместе с записями внутри compute
+    private final AtomicLong weight = new AtomicLong();
+
+    private static final class Entry<V> {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        // поля ниже меняются только внутри compute по ключу этой записи
+        V value;
+        long weight;
+        // обновления, пришедшие во время загрузки, null после неё
+        List<Consumer<V>> pending = new ArrayList<>();
+        volatile long lastUsed = System.nanoTime();
+    }
+
+    public UserCache(int maxUsers) {
+        this(maxUsers, Long.MAX_VALUE, value -> 0);
+    }
+
+    /**
+     * @param weigher weight of a value, e.g. its size in bytes. Called again after every update.
+     */
+    public UserCache(int maxUsers, long maxWeight, ToLongFunction<V> weigher) {
+        this.maxUsers = maxUsers;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    public V get(Long userId, Supplier<V> loader) {
+        Entry<V> entry = values.get(userId);
+        if (entry == null) {
+            if (values.size() >= maxUsers) {
+                evictOldest();
+            }
+            Entry<V> created = new Entry<>();
+            entry = values.computeIfAbsent(userId, id -> created);
+            if (entry == created) {
+                return load(userId, created, loader);
+            }
+        }
+        entry.lastUsed = System.nanoTime();
+        try {
+            return entry.future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Applies {@code update} to the value of the user, if it is loaded or being loaded.
+     */
+    public void update(Long userId, Consumer<V> update) {
+        values.computeIfPresent(userId, (id, entry) -> {
+            if (entry.pending != null) {
+                entry.pending.add(update);
+            } else {
+                update.accept(entry.value);
+                reweigh(entry);
+            }
+            return entry;
+        });
+        evictOverweight();
+    }
+
+    /**
+     * @return the value of the user if it is loaded, null otherwise. Nothing is loaded.
+     */
+    public V getIfPresent(Long userId) {
+        Entry<V> entry = values.get(userId);
+        return entry != null ? entry.future.getNow(null) : null;
+    }
+
+    public void invalidate(Long userId) {
+        values.computeIfPresent(userId, (id, entry) -> {
+            weight.addAndGet(-entry.weight);
+            return null;
+        });
+    }
+
+    public void invalidateAll() {
+        for (Long userId : values.keySet()) {
+            invalidate(userId);
+        }
+    }
+
+    long weight() {
+        return weight.get();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    private void evictOldest() {
+        values.entrySet().stream()
+                .min(Comparator.comparingLong(e -> e.getValue().lastUsed))
+                .ifPresent(oldest -> values.computeIfPresent(oldest.getKey(), (id, entry) -> {
+                    if (entry != oldest.getValue()) {
+                        return entry;
+                    }
+                    weight.addAndGet(-entry.weight);
+                    return null;
+                }));
+    }
+
+    private void evictOverweight() {
+        // число попыток ограничено: параллельная загрузка может снова занять место
+        for (int i = values.size(); weight.get() > maxWeight && i > 0; i--) {
+            evictOldest();
+        }
+    }
+
+    // только внутри compute по ключу записи
+    private void reweigh(Entry<V> entry) {
+        long updated = weigher.applyAsLong(entry.value);
+        weight.addAndGet(updated - entry.weight);
+        entry.weight = updated;
+    }
+
+    private V load(Long userId, Entry<V> entry, Supplier<V> loader) {
+        V value;
+        try {
+            value = loader.get();
+        } catch (RuntimeException | Error e) {
+            values.remove(userId, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+        // под блокировкой ключа: update либо уже в pending, либо применится к готовому значению
+        values.compute(userId, (id, current) -> {
+            for (Consumer<V> update : entry.pending) {
+                update.accept(value);
+            }
+            entry.pending = null;
+            entry.value = value;
+            if (current == entry) {
+                reweigh(entry);
+            }
+            // если запись убрали во время загрузки, значение отдаётся, но не кэшируется
+            return current;
+        });
+        entry.future.complete(value);
+        evictOverweight();
+        return value;
+    }
+}
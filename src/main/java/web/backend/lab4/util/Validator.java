@@ -2,22 +2,42 @@ package web.backend.lab4.util;
 
 
 import lombok.Getter;
+import lombok.Setter;
 
 public class Validator {
     @Getter
     private static Validator validator = new Validator();
+
+    /**
+     * Допустимые значения x и r. Calculator перестраивает таблицу попаданий при смене домена.
+     */
+    @Getter
+    @Setter
+    private volatile Domain domain = Domain.DEFAULT;
+
     private Validator() {
     }
 
     public void validateParams(Double x, Integer y, Integer r) throws ValidationException {
-        if (x == null || x < -5 || x > 5){
+        Domain domain = this.domain;
+        if (x == null || x < domain.minX() || x > domain.maxX()){
             throw new ValidationException("Неверный x");
         }
         if (y == null || y < -4 || y > 4){
             throw new ValidationException("Неверный y");
         }
-        if (r == null || r < 1 || r > 5){
+        if (r == null || r < domain.minR() || r > domain.maxR()){
             throw new ValidationException("Неверный r");
         }
     }
-}
\ No newline at end of file
+
+    public record Domain(int minX, int maxX, int minR, int maxR) {
+        public static final Domain DEFAULT = new Domain(-5, 5, 1, 5);
+
+        public Domain {
+            if (minX > maxX || minR > maxR) {
+                throw new IllegalArgumentException("Empty domain: " + minX + ".." + maxX + ", " + minR + ".." + maxR);
+            }
+        }
+    }
+}
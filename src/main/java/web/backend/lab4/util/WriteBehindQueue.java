@@ -0,0 +1,180 @@
+package web.backend.lab4.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Two {@link Flow} stages behind a bounded buffer: a writer that stores items in batches and a listener
+ * that is told about every stored batch.
+ * <p>
+ * {@link #offer} never blocks, it fails when the buffer is full, so the caller can push back. The writer takes
+ * whatever has piled up while the previous batch was being written, up to {@code batchSize} items, and writes
+ * a lone item right away when nothing else is waiting. A failed batch is retried, then written item by item,
+ * and only the items that still fail are given up on. {@link #close} stops accepting items and waits until
+ * everything accepted is written and announced.
+ */
+public final class WriteBehindQueue<T> {
+    private static final int ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private final SubmissionPublisher<T> incoming;
+    private final SubmissionPublisher<List<T>> written;
+    private final int batchSize;
+    private final Consumer<List<T>> writer;
+    private final BiConsumer<T, RuntimeException> onLost;
+    private final AtomicInteger pending = new AtomicInteger();
+    // приняты, но ещё не переданы писателю; оценка лага издателя после close() обнуляется, поэтому считаем сами
+    private final AtomicInteger queued = new AtomicInteger();
+    private final CompletableFuture<Void> drained = new CompletableFuture<>();
+    private final CompletableFuture<Void> announced;
+
+    /**
+     * @param writer   stores a batch, throws if it failed.
+     * @param listener called with every stored batch, in order. Must not throw, otherwise it is not called again.
+     * @param onLost   called with every item that could not be stored.
+     */
+    public WriteBehindQueue(Executor executor, int capacity, int batchSize, Consumer<List<T>> writer,
+                            Consumer<List<T>> listener, BiConsumer<T, RuntimeException> onLost) {
+        this.incoming = new SubmissionPublisher<>(executor, capacity);
+        this.written = new SubmissionPublisher<>(executor, Flow.defaultBufferSize());
+        this.batchSize = batchSize;
+        this.writer = writer;
+        this.onLost = onLost;
+        this.incoming.subscribe(new Writer());
+        this.announced = written.consume(listener);
+    }
+
+    /**
+     * @return false if the buffer is full or the queue is closed, the item is not taken then.
+     */
+    public boolean offer(T item) {
+        pending.incrementAndGet();
+        try {
+            if (incoming.offer(item, (subscriber, dropped) -> false) >= 0) {
+                queued.incrementAndGet();
+                return true;
+            }
+        } catch (IllegalStateException e) {
+            // очередь уже закрыта
+        }
+        pending.decrementAndGet();
+        return false;
+    }
+
+    /**
+     * Items accepted but not yet written.
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Stops accepting items and waits for the accepted ones to be written and announced.
+     *
+     * @return false if that did not finish in time.
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        incoming.close();
+        try {
+            CompletableFuture.allOf(drained, announced).get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    private final class Writer implements Flow.Subscriber<T> {
+        private Flow.Subscription subscription;
+        private List<T> batch = new ArrayList<>();
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(T item) {
+            batch.add(item);
+            // пока пишется пачка, в буфере копятся следующие; если в буфере ничего нет, ждать нечего.
+            // Счётчик может отстать от offer() только в меньшую сторону, тогда пачка просто уйдёт раньше
+            if (queued.decrementAndGet() <= 0 || batch.size() >= batchSize) {
+                flush();
+            }
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            flush();
+            written.closeExceptionally(throwable);
+            drained.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            flush();
+            written.close();
+            drained.complete(null);
+        }
+
+        private void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<T> items = batch;
+            batch = new ArrayList<>();
+            List<T> stored = write(items);
+            pending.addAndGet(-items.size());
+            if (!stored.isEmpty()) {
+                written.submit(stored);
+            }
+        }
+
+        private List<T> write(List<T> items) {
+            RuntimeException failure = null;
+            for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                try {
+                    writer.accept(items);
+                    return items;
+                } catch (RuntimeException e) {
+                    failure = e;
+                    pause(RETRY_DELAY_MILLIS << attempt);
+                }
+            }
+            if (items.size() == 1) {
+                onLost.accept(items.get(0), failure);
+                return List.of();
+            }
+            // пачка целиком не пишется, ищем виноватые элементы по одному
+            List<T> stored = new ArrayList<>(items.size());
+            for (T item : items) {
+                try {
+                    writer.accept(List.of(item));
+                    stored.add(item);
+                } catch (RuntimeException e) {
+                    onLost.accept(item, e);
+                }
+            }
+            return stored;
+        }
+
+        private void pause(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package web.backend.lab4.area;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import web.backend.lab4.util.Calculator;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AreaCompilerTest {
+
+    @AfterEach
+    void resetArea() {
+        ActiveArea.reset();
+    }
+
+    @Test
+    void builtInDefinition_ShouldMatchCalculator() throws AreaSyntaxException {
+        CompiledArea area = AreaCompiler.compile(ActiveArea.BUILT_IN);
+        Calculator calculator = new Calculator();
+        SplittableRandom random = new SplittableRandom(3);
+        for (int x = -5; x <= 5; x++) {
+            for (int r = 1; r <= 5; r++) {
+                // целые и полуцелые y попадают точно на границы области
+                for (double y = -6; y <= 6; y += 0.5) {
+                    assertEquals(calculator.calculate(x, y, r), area.contains(x, y, r), "x=" + x + " y=" + y + " r=" + r);
+                }
+                for (int i = 0; i < 100; i++) {
+                    double y = random.nextDouble(-6, 6);
+                    assertEquals(calculator.calculate(x, y, r), area.contains(x, y, r), "x=" + x + " y=" + y + " r=" + r);
+                }
+            }
+        }
+    }
+
+    @Test
+    void installedArea_ShouldBeUsedByCalculator() throws AreaSyntaxException {
+        Calculator calculator = new Calculator();
+        assertFalse(calculator.calculate(3, 3, 5));
+
+        ActiveArea.install(AreaCompiler.compile("halfplane(-1, -1, 0)  # x + y >= 0"));
+        assertTrue(calculator.calculate(3, 3, 5));
+        assertFalse(calculator.calculate(-3, -3, 5));
+
+        boolean[] out = new boolean[2];
+        calculator.calculateAll(new int[]{3, -3}, new double[]{3, -3}, new int[]{5, 5}, out);
+        assertTrue(out[0]);
+        assertFalse(out[1]);
+
+        ActiveArea.reset();
+        assertFalse(calculator.calculate(3, 3, 5));
+    }
+
+    @Test
+    void sectorWiderThanHalfCircle_ShouldContainEverythingButTheGap() throws AreaSyntaxException {
+        CompiledArea area = AreaCompiler.compile("sector(0, 0, r, 0, 270)");
+        assertTrue(area.contains(1, 1, 2));
+        assertTrue(area.contains(-1, 1, 2));
+        assertTrue(area.contains(-1, -1, 2));
+        assertFalse(area.contains(1, -1, 2));
+        assertFalse(area.contains(-2, 2, 2));
+    }
+
+    @Test
+    void intersectionAndLinearCoordinates_ShouldWork() throws AreaSyntaxException {
+        CompiledArea area = AreaCompiler.compile(
+                "intersection(polygon((-r, -r), (r, -r), (r, r), (-r, r)), halfplane(0, 1, 0.5r + 1))");
+        assertTrue(area.contains(0, 2, 2));
+        assertFalse(area.contains(0, 2.5, 2));
+        assertFalse(area.contains(3, 0, 2));
+    }
+
+    @Test
+    void parse_WithBadInput_ShouldReportPosition() {
+        AreaSyntaxException e = assertThrows(AreaSyntaxException.class,
+                () -> AreaParser.parse("union(\n  circle(0, 0, r))"));
+        assertEquals("2:3: unknown shape 'circle'", e.getMessage());
+
+        assertThrows(AreaSyntaxException.class, () -> AreaParser.parse("polygon((0, 0), (1, 0))"));
+        assertThrows(AreaSyntaxException.class, () -> AreaParser.parse("polygon((0, 0), (2, 0), (1, 1), (2, 2), (0, 2))"));
+        assertThrows(AreaSyntaxException.class, () -> AreaParser.parse("halfplane(1, 1, 1) x"));
+        assertThrows(AreaSyntaxException.class, () -> AreaParser.parse(null));
+    }
+}
@@ -0,0 +1,74 @@
+package web.backend.lab4.area;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AreaEstimatorTest {
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void run_ShouldConvergeToBuiltInArea() {
+        double r = 2;
+        // четверть круга + треугольник + прямоугольник
+        double exact = Math.PI * r * r / 4 + (r / 2) * r / 2 + (r / 2) * r;
+        List<AreaEstimator.Estimate> updates = new ArrayList<>();
+
+        AreaEstimator.Estimate estimate = new AreaEstimator(ActiveArea.region(), r, 5, 1, pool)
+                .run(0.01, Long.MAX_VALUE, updates::add);
+
+        assertTrue(AreaEstimator.isPrecise(estimate, 0.01));
+        assertEquals(exact, estimate.area(), 5 * estimate.standardError());
+        assertEquals(estimate.area() / 100, estimate.hitProbability(), 1e-12);
+        assertSame(estimate, updates.get(updates.size() - 1));
+        for (int i = 1; i < updates.size(); i++) {
+            assertTrue(updates.get(i).samples() > updates.get(i - 1).samples());
+        }
+    }
+
+    @Test
+    void next_ShouldDependOnlyOnSeed() {
+        Region region = ActiveArea.region();
+        AreaEstimator.Estimate first = new AreaEstimator(region, 3, 5, 42, pool, 3).next(10_000);
+        AreaEstimator.Estimate second = new AreaEstimator(region, 3, 5, 42, pool, 3).next(10_000);
+        assertEquals(first, second);
+        assertEquals(30_000, first.samples());
+    }
+
+    @Test
+    void runAsync_FromTheOnlyThreadOfTheExecutor_ShouldNotDeadlock() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            AreaEstimator estimator = new AreaEstimator(ActiveArea.region(), 3, 5, 7, single, 4);
+
+            AreaEstimator.Estimate estimate = single.submit(() -> estimator.runAsync(0.05, Long.MAX_VALUE, e -> true))
+                    .get(10, TimeUnit.SECONDS)
+                    .get(30, TimeUnit.SECONDS);
+
+            assertTrue(AreaEstimator.isPrecise(estimate, 0.05));
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    void run_ShouldStopWhenListenerRefuses() {
+        AreaEstimator.Estimate estimate = new AreaEstimator(ActiveArea.region(), 3, 5, 7, pool)
+                .run(1e-9, Long.MAX_VALUE, e -> false);
+        assertFalse(AreaEstimator.isPrecise(estimate, 1e-9));
+    }
+}
@@ -0,0 +1,83 @@
+package web.backend.lab4.area;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogIndexTest {
+
+    @Test
+    void find_ShouldMatchLinearScan() throws AreaSyntaxException {
+        SplittableRandom random = new SplittableRandom(11);
+        CatalogIndex index = CatalogIndex.EMPTY;
+        for (int i = 0; i < 300; i++) {
+            index = index.with(String.format("area%03d", i), randomArea(random));
+        }
+
+        int n = 5000;
+        int[] xs = new int[n];
+        double[] ys = new double[n];
+        int[] rs = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextInt(-30, 31);
+            ys[i] = random.nextDouble(-30, 30);
+            rs[i] = random.nextInt(1, 6);
+        }
+        List<List<String>> batch = index.findAll(xs, ys, rs);
+
+        for (int i = 0; i < n; i++) {
+            List<String> expected = new ArrayList<>();
+            for (CatalogIndex.Entry entry : index.entries().values()) {
+                if (entry.area().contains(xs[i], ys[i], rs[i])) {
+                    expected.add(entry.name());
+                }
+            }
+            assertEquals(expected, index.find(xs[i], ys[i], rs[i]), "point " + i);
+            assertEquals(expected, batch.get(i), "batch point " + i);
+        }
+    }
+
+    @Test
+    void withAndWithout_ShouldNotChangeOriginalIndex() throws AreaSyntaxException {
+        CatalogIndex first = CatalogIndex.EMPTY.with("square", "polygon((0, 0), (r, 0), (r, r), (0, r))");
+        CatalogIndex second = first.with("upper", "halfplane(0, -1, 0)");
+
+        assertEquals(List.of("square"), first.find(1, 1, 2));
+        assertEquals(List.of("square", "upper"), second.find(1, 1, 2));
+        assertEquals(List.of("upper"), second.without("square").find(1, 1, 2));
+        assertSame(second, second.without("missing"));
+    }
+
+    @Test
+    void find_WithManyDistinctR_ShouldKeepCachedGridsBounded() throws AreaSyntaxException {
+        CatalogIndex index = CatalogIndex.EMPTY.with("square", "polygon((0, 0), (r, 0), (r, r), (0, r))");
+
+        for (int r = 1; r <= CatalogIndex.MAX_GRIDS * 4; r++) {
+            assertEquals(List.of("square"), index.find(0.5, 0.5, r));
+        }
+
+        assertEquals(CatalogIndex.MAX_GRIDS, index.cachedGrids());
+    }
+
+    private static String randomArea(SplittableRandom random) {
+        double cx = random.nextInt(-25, 26);
+        double cy = random.nextInt(-25, 26);
+        return switch (random.nextInt(4)) {
+            case 0 -> String.format(Locale.ROOT, "sector(%s, %s, r/2 + %s, %d, %d)",
+                    cx, cy, random.nextInt(0, 3), random.nextInt(0, 360), random.nextInt(0, 360));
+            case 1 -> String.format(Locale.ROOT, "polygon((%s, %s), (%s + r, %s), (%s, %s + r))",
+                    cx, cy, cx, cy, cx, cy);
+            case 2 -> String.format(Locale.ROOT, "intersection(halfplane(1, 0, %s), halfplane(-1, 0, %s), "
+                    + "halfplane(0, 1, %s), halfplane(0, -1, %s))", cx + 2, -cx, cy + 2, -cy);
+            default -> random.nextInt(10) == 0
+                    ? String.format(Locale.ROOT, "halfplane(1, 1, %s)", cx)
+                    : String.format(Locale.ROOT, "union(sector(%s, %s, 1, 0, 360), polygon((%s, %s), (%s, %s), (%s, %s)))",
+                    cx, cy, cx, cy, cx + 3, cy, cx, cy - 3);
+        };
+    }
+}
@@ -0,0 +1,188 @@
+package web.backend.lab4.dao;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs {@code sql/init.sql} against a real PostgreSQL and checks the partitioning of results_table
+ * and the counting of repeated points.
+ * Skipped unless {@code TEST_JDBC_URL} is set, e.g. for a throwaway container:
+ * {@code docker run -d -p 5433:5432 -e POSTGRES_PASSWORD=test postgres:16} and
+ * {@code TEST_JDBC_URL=jdbc:postgresql://localhost:5433/postgres TEST_JDBC_USER=postgres TEST_JDBC_PASSWORD=test}.
+ */
+class PartitioningTest {
+    private static final String USERNAME = "partitioning-test";
+    private static final String OLD_PARTITION = "results_table_p200001";
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private Connection connection;
+    private long userId;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException {
+        String url = System.getenv("TEST_JDBC_URL");
+        assumeTrue(url != null, "TEST_JDBC_URL is not set");
+        connection = DriverManager.getConnection(url, System.getenv("TEST_JDBC_USER"), System.getenv("TEST_JDBC_PASSWORD"));
+        String script = Files.readString(Path.of("sql/init.sql"), StandardCharsets.UTF_8);
+        try (Statement statement = connection.createStatement()) {
+            // скрипт должен выполняться повторно без ошибок
+            statement.execute(script);
+            statement.execute(script);
+        }
+        cleanUp();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO s408402.users (username, password) VALUES (?, '') RETURNING id")) {
+            insert.setString(1, USERNAME);
+            try (ResultSet resultSet = insert.executeQuery()) {
+                resultSet.next();
+                userId = resultSet.getLong(1);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        if (connection != null) {
+            cleanUp();
+            connection.close();
+        }
+    }
+
+    @Test
+    void createPartitions_ShouldCoverTheNextMonthsOnlyOnce() throws SQLException {
+        assertEquals(0, single("SELECT s408402.results_create_partitions(3)"));
+
+        LocalDate month = LocalDate.now().withDayOfMonth(1);
+        for (int i = 0; i <= 3; i++) {
+            String name = "results_table_p" + month.plusMonths(i).format(MONTH);
+            assertEquals(1, single("SELECT count(*) FROM pg_class WHERE relname = '" + name + "'"), name);
+        }
+    }
+
+    @Test
+    void rangeQuery_ShouldOnlyScanPartitionsInTheRange() throws SQLException {
+        LocalDateTime thisMonth = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+        LocalDateTime nextMonth = thisMonth.plusMonths(1);
+        insert(thisMonth.plusDays(1));
+        insert(nextMonth.plusDays(1));
+
+        List<String> plan = new ArrayList<>();
+        try (PreparedStatement explain = connection.prepareStatement(
+                "EXPLAIN SELECT id FROM s408402.results_table WHERE user_id = ? AND created_at >= ? AND created_at < ?")) {
+            explain.setLong(1, userId);
+            explain.setTimestamp(2, Timestamp.valueOf(nextMonth));
+            explain.setTimestamp(3, Timestamp.valueOf(nextMonth.plusMonths(1)));
+            try (ResultSet resultSet = explain.executeQuery()) {
+                while (resultSet.next()) {
+                    plan.add(resultSet.getString(1));
+                }
+            }
+        }
+
+        String scanned = String.join("\n", plan);
+        assertTrue(scanned.contains("results_table_p" + nextMonth.format(MONTH)), scanned);
+        assertFalse(scanned.contains("results_table_p" + thisMonth.format(MONTH)), scanned);
+    }
+
+    @Test
+    void detachPartitions_ShouldDropOldRowsFromTableAndStats() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE s408402." + OLD_PARTITION + " PARTITION OF s408402.results_table " +
+                    "FOR VALUES FROM ('2000-01-01') TO ('2000-02-01')");
+        }
+        insert(LocalDateTime.of(2000, 1, 15, 12, 0));
+        insert(LocalDateTime.now());
+        assertEquals(2, single("SELECT total FROM s408402.user_stats WHERE user_id = " + userId + " AND r = 2"));
+
+        List<String> detached = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT s408402.results_detach_partitions(24)")) {
+            while (resultSet.next()) {
+                detached.add(resultSet.getString(1));
+            }
+        }
+
+        assertEquals(List.of("s408402." + OLD_PARTITION), detached);
+        assertEquals(1, single("SELECT count(*) FROM s408402.results_table WHERE user_id = " + userId));
+        assertEquals(1, single("SELECT total FROM s408402.user_stats WHERE user_id = " + userId + " AND r = 2"));
+        assertEquals(1, single("SELECT count(*) FROM s408402." + OLD_PARTITION));
+    }
+
+    @Test
+    void upsert_RepeatedPoint_ShouldBeCountedAndNotStoredAgain() throws SQLException {
+        LocalDateTime now = LocalDateTime.now();
+        List<ImportedPoint> points = List.of(
+                new ImportedPoint(1, 0.5, 2, true, 0b110, now),
+                new ImportedPoint(1, 0.5, 2, true, 0b110, now.plusSeconds(1)),
+                new ImportedPoint(-1, 0.5, 2, false, 0, now));
+        long[] ids = new long[3];
+
+        boolean[] inserted = ResultUpsert.upsert(connection, new Long[]{userId, userId, userId}, points, ids);
+        long[] againIds = new long[1];
+        boolean[] again = ResultUpsert.upsert(connection, new Long[]{userId}, points.subList(0, 1), againIds);
+
+        assertArrayEquals(new boolean[]{true, false, true}, inserted);
+        assertEquals(ids[0], ids[1]);
+        assertArrayEquals(new boolean[]{false}, again);
+        assertEquals(ids[0], againIds[0]);
+        assertEquals(2, single("SELECT count(*) FROM s408402.results_table WHERE user_id = " + userId));
+        assertEquals(3, single("SELECT occurrences FROM s408402.result_counts WHERE user_id = " + userId + " AND x = 1"));
+        // статистика считает отправки, а не хранимые точки
+        assertEquals(4, single("SELECT total FROM s408402.user_stats WHERE user_id = " + userId + " AND r = 2"));
+        assertEquals(3, single("SELECT hits FROM s408402.user_stats WHERE user_id = " + userId + " AND r = 2"));
+        assertEquals(1, single("SELECT extract(epoch FROM last_at - first_at) FROM s408402.user_stats " +
+                "WHERE user_id = " + userId + " AND r = 2"));
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM s408402.result_counts WHERE user_id = " + userId + " AND x = 1");
+        }
+        assertEquals(2, single("SELECT total FROM s408402.user_stats WHERE user_id = " + userId + " AND r = 2"));
+    }
+
+    private void insert(LocalDateTime createdAt) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO s408402.results_table (x, y, r, result, user_id, created_at) VALUES (1, 0.5, 2, true, ?, ?)")) {
+            insert.setLong(1, userId);
+            insert.setTimestamp(2, Timestamp.valueOf(createdAt));
+            insert.executeUpdate();
+        }
+    }
+
+    private long single(String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next(), sql);
+            return resultSet.getLong(1);
+        }
+    }
+
+    private void cleanUp() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS s408402." + OLD_PARTITION);
+            statement.execute("DELETE FROM s408402.results_table WHERE user_id IN " +
+                    "(SELECT id FROM s408402.users WHERE username = '" + USERNAME + "')");
+            statement.execute("DELETE FROM s408402.users WHERE username = '" + USERNAME + "'");
+        }
+    }
+}
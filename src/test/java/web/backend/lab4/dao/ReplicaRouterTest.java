@@ -0,0 +1,67 @@
+package web.backend.lab4.dao;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRouterTest {
+
+    @Mock
+    private ReplicaDAO replicaDAO;
+
+    @InjectMocks
+    private ReplicaRouter router;
+
+    private long now;
+
+    @BeforeEach
+    void setUp() {
+        router.clock = () -> now;
+    }
+
+    @Test
+    void useReplica_ReplicaInSync_ShouldReadFromReplicaExceptOwnRecentWrites() {
+        when(replicaDAO.lagSeconds()).thenReturn(0.5);
+        router.checkLag();
+
+        router.wrote(1L);
+
+        assertFalse(router.useReplica(1L));
+        assertTrue(router.useReplica(2L));
+        assertTrue(router.useReplica(null));
+
+        now += TimeUnit.SECONDS.toNanos(ReplicaRouter.STICKY_SECONDS);
+        assertTrue(router.useReplica(1L));
+    }
+
+    @Test
+    void useReplica_ReplicaLagging_ShouldReadFromPrimaryUntilItCatchesUp() {
+        when(replicaDAO.lagSeconds()).thenReturn(ReplicaRouter.MAX_LAG_SECONDS + 1, 0.0);
+
+        router.checkLag();
+        assertFalse(router.useReplica(1L));
+
+        router.checkLag();
+        assertTrue(router.useReplica(1L));
+    }
+
+    @Test
+    void useReplica_ReplicaUnreachable_ShouldReadFromPrimary() {
+        when(replicaDAO.lagSeconds()).thenReturn(0.0).thenThrow(new IllegalStateException("connection refused"));
+
+        router.checkLag();
+        assertTrue(router.useReplica(null));
+
+        router.checkLag();
+        assertFalse(router.useReplica(null));
+    }
+}
@@ -0,0 +1,66 @@
+package web.backend.lab4.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.ArchivePeriod;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ArchiveServiceTest {
+
+    @Mock
+    private ArchiveDAO archiveDAO;
+
+    @InjectMocks
+    private ArchiveService archiveService;
+
+    @Test
+    void archive_ShouldMoveEveryPeriodBeforeTheCutoffEvenIfOneFails() {
+        LocalDateTime month = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+        LocalDateTime cutoff = month.minusMonths(ArchiveService.ARCHIVE_AFTER_MONTHS);
+        LocalDateTime old = cutoff.minusMonths(1);
+        when(archiveDAO.getPeriodsBefore(cutoff)).thenReturn(List.of(
+                new ArchivePeriod(1, old), new ArchivePeriod(2, old), new ArchivePeriod(3, old)));
+        when(archiveDAO.archive(1L, old)).thenReturn(10);
+        when(archiveDAO.archive(2L, old)).thenThrow(new IllegalStateException("deadlock"));
+        when(archiveDAO.archive(3L, old)).thenReturn(5);
+
+        archiveService.archive();
+
+        verify(archiveDAO).archive(3L, old);
+    }
+
+    @Test
+    void archive_NothingToMove_ShouldArchiveNothing() {
+        when(archiveDAO.getPeriodsBefore(any())).thenReturn(List.of());
+
+        archiveService.archive();
+
+        verify(archiveDAO, never()).archive(any(), any());
+    }
+
+    @Test
+    void archive_CountersWithoutResult_ShouldFillThemFromEveryBlobEvenIfOneFails() {
+        LocalDateTime first = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime second = first.plusMonths(1);
+        when(archiveDAO.getPeriodsWithUnknownResults()).thenReturn(List.of(
+                new ArchivePeriod(1, first), new ArchivePeriod(1, second)));
+        when(archiveDAO.fillCountResults(1L, first)).thenThrow(new IllegalStateException("deadlock"));
+        when(archiveDAO.fillCountResults(1L, second)).thenReturn(3);
+        when(archiveDAO.getPeriodsBefore(any())).thenReturn(List.of());
+
+        archiveService.archive();
+
+        verify(archiveDAO).fillCountResults(1L, second);
+    }
+}
@@ -4,6 +4,7 @@ import jakarta.ws.rs.core.NewCookie;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -26,6 +27,24 @@ class AuthServiceTest {
     @Mock
     private UserDAO userDAO;
 
+    @Mock
+    private UserLookupService userLookup;
+
+    @Mock
+    private HistoryCacheService historyCache;
+
+    @Mock
+    private PointIndexService pointIndex;
+
+    @Mock
+    private TileService tileService;
+
+    @Mock
+    private DensityService densityService;
+
+    @Mock
+    private IngestionService ingestionService;
+
     @Mock
     private JwtProvider jwtProvider;
 
@@ -47,17 +66,18 @@ class AuthServiceTest {
 
     @Test
     void signup_WhenUserDoesNotExist_ShouldSuccessfullyAddUser() {
-        when(userDAO.getUserByUsername(testUserDTO.getUsername())).thenReturn(Optional.empty());
+        when(userLookup.findByUsername(testUserDTO.getUsername())).thenReturn(Optional.empty());
 
         Optional<ErrorDTO> result = authService.signup(testUserDTO);
 
         assertTrue(result.isEmpty());
         verify(userDAO).addNewUser(any(UserEntity.class));
+        verify(userLookup).invalidate("testUser");
     }
 
     @Test
     void signup_WhenUserExists_ShouldReturnError() {
-        when(userDAO.getUserByUsername(testUserDTO.getUsername())).thenReturn(Optional.of(testUserEntity));
+        when(userLookup.findByUsername(testUserDTO.getUsername())).thenReturn(Optional.of(testUserEntity));
 
         Optional<ErrorDTO> result = authService.signup(testUserDTO);
 
@@ -68,7 +88,7 @@ class AuthServiceTest {
 
     @Test
     void login_WithValidCredentials_ShouldReturnAuthResponse() {
-        when(userDAO.getUserByUsername(testUserDTO.getUsername())).thenReturn(Optional.of(testUserEntity));
+        when(userLookup.findByUsername(testUserDTO.getUsername())).thenReturn(Optional.of(testUserEntity));
         when(jwtProvider.generateRefreshToken(anyString(), anyLong())).thenReturn("refreshToken");
         when(jwtProvider.generateAccessToken(anyString(), anyLong())).thenReturn("accessToken");
 
@@ -77,11 +97,12 @@ class AuthServiceTest {
         assertTrue(result.isPresent());
         assertNotNull(result.get().accessTokenCookie());
         assertNotNull(result.get().refreshTokenCookie());
+        verify(historyCache).preload(testUserEntity.getId());
     }
 
     @Test
     void login_WithInvalidUsername_ShouldReturnEmpty() {
-        when(userDAO.getUserByUsername(testUserDTO.getUsername())).thenReturn(Optional.empty());
+        when(userLookup.findByUsername(testUserDTO.getUsername())).thenReturn(Optional.empty());
 
         Optional<AuthService.AuthResponse> result = authService.login(testUserDTO);
 
@@ -91,7 +112,7 @@ class AuthServiceTest {
     @Test
     void login_WithInvalidPassword_ShouldReturnEmpty() {
         UserDTO wrongPasswordDTO = new UserDTO("testUser", "wrongPassword");
-        when(userDAO.getUserByUsername(wrongPasswordDTO.getUsername())).thenReturn(Optional.of(testUserEntity));
+        when(userLookup.findByUsername(wrongPasswordDTO.getUsername())).thenReturn(Optional.of(testUserEntity));
 
         Optional<AuthService.AuthResponse> result = authService.login(wrongPasswordDTO);
 
@@ -107,6 +128,7 @@ class AuthServiceTest {
 
         when(jwtProvider.getUsernameFromToken(validRefreshToken)).thenReturn(expectedUsername);
         when(jwtProvider.getUserIdFromToken(validRefreshToken)).thenReturn(expectedUserId);
+        when(userLookup.findByUsername(expectedUsername)).thenReturn(Optional.of(testUserEntity));
         when(jwtProvider.generateAccessToken(expectedUsername, expectedUserId))
                 .thenReturn(expectedToken);
 
@@ -134,6 +156,37 @@ class AuthServiceTest {
         assertTrue(result.isEmpty());
     }
 
+    @Test
+    void refreshToken_WhenAccountWasDeleted_ShouldReturnEmpty() {
+        when(jwtProvider.getUsernameFromToken("refreshToken")).thenReturn("testUser");
+        when(jwtProvider.getUserIdFromToken("refreshToken")).thenReturn(1L);
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.empty());
+
+        assertTrue(authService.refreshToken("refreshToken").isEmpty());
+        verify(jwtProvider, never()).generateAccessToken(anyString(), anyLong());
+    }
+
+    @Test
+    void isActive_WhenNameWasTakenAgain_ShouldReturnFalse() {
+        when(jwtProvider.getUsernameFromToken("accessToken")).thenReturn("testUser");
+        when(jwtProvider.getUserIdFromToken("accessToken")).thenReturn(42L);
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.of(testUserEntity));
+
+        assertFalse(authService.isActive("accessToken"));
+    }
+
+    @Test
+    void isAdmin_ShouldFollowTheRoleOfTheUser() {
+        when(jwtProvider.getUsernameFromToken("accessToken")).thenReturn("testUser");
+        when(jwtProvider.getUserIdFromToken("accessToken")).thenReturn(1L);
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.of(testUserEntity));
+
+        assertFalse(authService.isAdmin("accessToken"));
+
+        testUserEntity.setAdmin(true);
+        assertTrue(authService.isAdmin("accessToken"));
+    }
+
     @Test
     void logout_ShouldReturnCookiesWithZeroMaxAge() {
         AuthService.AuthResponse response = authService.logout();
@@ -143,4 +196,66 @@ class AuthServiceTest {
         assertEquals("", response.accessTokenCookie().getValue());
         assertEquals("", response.refreshTokenCookie().getValue());
     }
-}
\ No newline at end of file
+
+    @Test
+    void deleteAccount_WithWrongPassword_ShouldDeleteNothing() {
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.of(testUserEntity));
+
+        assertFalse(authService.deleteAccount(new UserDTO("testUser", "wrongPassword")));
+
+        verify(userDAO, never()).deletePointsChunk(anyLong(), anyInt());
+        verify(userDAO, never()).deleteUser(anyLong());
+    }
+
+    @Test
+    void deleteAccount_ShouldDeletePointsInChunksThenUser() {
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.of(testUserEntity));
+        when(userDAO.deletePointsChunk(1L, AuthService.DELETE_CHUNK))
+                .thenReturn(AuthService.DELETE_CHUNK, AuthService.DELETE_CHUNK, 7, 0);
+        when(userDAO.deleteUser(1L)).thenReturn(true);
+        when(ingestionService.closeUser(1L)).thenReturn(true);
+
+        assertTrue(authService.deleteAccount(testUserDTO));
+
+        InOrder order = inOrder(ingestionService, userDAO);
+        order.verify(ingestionService).closeUser(1L);
+        order.verify(userDAO, times(4)).deletePointsChunk(1L, AuthService.DELETE_CHUNK);
+        order.verify(userDAO).deleteUser(1L);
+        verify(ingestionService, never()).openUser(anyLong());
+        verify(userLookup).invalidate("testUser");
+        verify(historyCache).invalidate(1L);
+        verify(pointIndex).invalidate(1L);
+        verify(tileService).invalidate(1L);
+        verify(densityService).remove(1L);
+        verify(pointIndex, never()).invalidateAll();
+        verify(tileService, never()).invalidateAll();
+        verify(densityService, never()).invalidateAll();
+    }
+
+    @Test
+    void deleteAccount_WhenDeletionFails_ShouldTakePointsAgain() {
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.of(testUserEntity));
+        when(ingestionService.closeUser(1L)).thenReturn(true);
+        when(userDAO.deletePointsChunk(1L, AuthService.DELETE_CHUNK)).thenReturn(0);
+        when(userDAO.deleteUser(1L)).thenThrow(new RuntimeException("foreign key violation"));
+
+        assertThrows(RuntimeException.class, () -> authService.deleteAccount(testUserDTO));
+
+        verify(userDAO, times(AuthService.DELETE_ATTEMPTS)).deleteUser(1L);
+        verify(ingestionService).openUser(1L);
+        verify(densityService, never()).remove(anyLong());
+    }
+
+    @Test
+    void deleteAccount_WhenPointArrivesDuringDeletion_ShouldRetry() {
+        when(userLookup.findByUsername("testUser")).thenReturn(Optional.of(testUserEntity));
+        when(userDAO.deletePointsChunk(1L, AuthService.DELETE_CHUNK)).thenReturn(0, 1, 0);
+        when(userDAO.deleteUser(1L)).thenThrow(new RuntimeException("foreign key violation")).thenReturn(true);
+        when(ingestionService.closeUser(1L)).thenReturn(true);
+
+        assertTrue(authService.deleteAccount(testUserDTO));
+
+        verify(userDAO, times(3)).deletePointsChunk(1L, AuthService.DELETE_CHUNK);
+        verify(userDAO, times(2)).deleteUser(1L);
+    }
+}
@@ -0,0 +1,154 @@
+package web.backend.lab4.service;
+
+import jakarta.enterprise.concurrent.ManagedExecutorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.ArchivePeriod;
+import web.backend.lab4.dao.BackfillDAO;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.dto.BackfillDTO;
+import web.backend.lab4.util.Calculator;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BackfillServiceTest {
+
+    @Mock
+    private BackfillDAO backfillDAO;
+
+    @Mock
+    private ArchiveDAO archiveDAO;
+
+    @Mock
+    private Calculator calculator;
+
+    @Mock
+    private HistoryCacheService historyCache;
+
+    @Mock
+    private PointIndexService pointIndex;
+
+    @Mock
+    private TileService tileService;
+
+    @Mock
+    private DensityService densityService;
+
+    @Mock
+    private ManagedExecutorService executor;
+
+    @InjectMocks
+    private BackfillService backfillService;
+
+    @BeforeEach
+    void setUp() {
+        // предвыборка следующего чанка выполняется в том же потоке
+        lenient().doAnswer(inv -> {
+            ((Runnable) inv.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+    }
+
+    @Test
+    void run_ShouldWriteOnlyChangedRowsAndMoveCheckpoint() {
+        when(backfillDAO.loadCheckpoint(BackfillService.JOB)).thenReturn(10L);
+        when(backfillDAO.countResultsAfter(10L)).thenReturn(3L);
+        when(backfillDAO.getResultsAfter(10L, BackfillService.CHUNK_SIZE)).thenReturn(List.of(
+                new ResultRow(11, 1, 0.0, 1, true, 0b10),
+                new ResultRow(12, 2, 0.0, 1, false, 0b10),
+                new ResultRow(13, 3, 0.0, 1, true, 0b10)));
+        when(backfillDAO.getResultsAfter(13L, BackfillService.CHUNK_SIZE)).thenReturn(List.of());
+        // x = 3 больше не попадает, остальные попадают
+        when(calculator.calculate(anyInt(), anyDouble(), anyInt()))
+                .thenAnswer(inv -> (int) inv.getArgument(0) != 3);
+        when(calculator.calculateMask(anyInt(), anyDouble()))
+                .thenAnswer(inv -> (int) inv.getArgument(0) != 3 ? 0b10 : 0);
+
+        backfillService.run();
+
+        verify(backfillDAO).saveChunk(BackfillService.JOB, Map.of(
+                new BackfillDAO.Outcome(true, 0b10), List.of(12L),
+                new BackfillDAO.Outcome(false, 0), List.of(13L)), 13L);
+        verify(historyCache).invalidateAll();
+        verify(pointIndex).invalidateAll();
+        verify(tileService).invalidateAll();
+        verify(densityService).invalidateAll();
+        BackfillDTO progress = backfillService.getProgress();
+        assertEquals(BackfillDTO.DONE, progress.getState());
+        assertEquals(3, progress.getScanned());
+        assertEquals(2, progress.getChanged());
+        assertEquals(13, progress.getLastId());
+    }
+
+    @Test
+    void run_ShouldReevaluateArchivedPointsAfterTheTable() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 1, 0, 0);
+        when(backfillDAO.getResultsAfter(0L, BackfillService.CHUNK_SIZE)).thenReturn(List.of());
+        when(archiveDAO.getArchivedPeriods()).thenReturn(List.of(new ArchivePeriod(1L, january)));
+        when(calculator.calculate(anyInt(), anyDouble(), anyInt())).thenReturn(false);
+        when(calculator.calculateMask(anyInt(), anyDouble())).thenReturn(0b10);
+        List<List<ResultRow>> reevaluated = new ArrayList<>();
+        when(archiveDAO.reevaluate(eq(1L), eq(january), any())).thenAnswer(inv -> {
+            UnaryOperator<List<ResultRow>> reevaluation = inv.getArgument(2);
+            reevaluated.add(reevaluation.apply(List.of(new ResultRow(5, 3, 0.0, 1, true, 0b10))));
+            return 1;
+        });
+
+        backfillService.run();
+
+        assertEquals(List.of(List.of(new ResultRow(5, 3, 0.0, 1, false, 0b10))), reevaluated);
+        verify(historyCache).invalidateAll();
+        verify(densityService).invalidateAll();
+        assertEquals(BackfillDTO.DONE, backfillService.getProgress().getState());
+        assertEquals(1, backfillService.getProgress().getChanged());
+    }
+
+    @Test
+    void run_WhenDaoFails_ShouldReportFailure() {
+        when(backfillDAO.loadCheckpoint(BackfillService.JOB)).thenThrow(new IllegalStateException("db is down"));
+
+        backfillService.run();
+
+        assertEquals(BackfillDTO.FAILED, backfillService.getProgress().getState());
+        assertEquals("db is down", backfillService.getProgress().getError());
+    }
+
+    @Test
+    void start_WhenAlreadyRunning_ShouldReturnError() {
+        assertTrue(backfillService.start(true).isEmpty());
+        verify(backfillDAO).resetCheckpoint(BackfillService.JOB);
+
+        assertTrue(backfillService.start(false).isPresent());
+        verify(executor, times(1)).submit(any(Runnable.class));
+    }
+
+    @Test
+    void restart_WhileRunning_ShouldStartAgainWhenTheRunStops() {
+        backfillService.start(false);
+
+        backfillService.restart();
+
+        // не ждёт текущий прогон
+        verify(executor, times(1)).submit(any(Runnable.class));
+        when(backfillDAO.loadCheckpoint(BackfillService.JOB)).thenThrow(new IllegalStateException("stopped"));
+        backfillService.run();
+
+        verify(executor, times(2)).submit(any(Runnable.class));
+        verify(backfillDAO).resetCheckpoint(BackfillService.JOB);
+        assertEquals(BackfillDTO.RUNNING, backfillService.getProgress().getState());
+    }
+}
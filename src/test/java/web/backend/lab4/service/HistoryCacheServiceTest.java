@@ -0,0 +1,68 @@
+package web.backend.lab4.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.HistoryDAO;
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HistoryCacheServiceTest {
+
+    @Mock
+    private HistoryDAO historyDAO;
+
+    @Mock
+    private ArchiveDAO archiveDAO;
+
+    @InjectMocks
+    private HistoryCacheService historyCache;
+
+    @Test
+    void getPoints_SecondTime_ShouldComeFromCacheWithAddedPoints() {
+        ResultRow stored = new ResultRow(1, 1, 2.0, 3, true, null);
+        ResultRow added = new ResultRow(51, -1, 0.5, 2, false, 0b100);
+        when(historyDAO.getPointsAfter(1L, 0L, HistoryCacheService.LOAD_PAGE, null, null)).thenReturn(List.of(stored));
+
+        assertEquals(List.of(stored), historyCache.getPoints(1L).orElseThrow());
+        historyCache.add(1L, List.of(added));
+
+        assertEquals(List.of(stored, added), historyCache.getPoints(1L).orElseThrow());
+        verify(historyDAO, times(1)).getPointsAfter(anyLong(), anyLong(), anyInt(), any(), any());
+    }
+
+    @Test
+    void forEachPoint_ShouldPassEveryPointInPages() {
+        List<ResultRow> rows = new ArrayList<>();
+        for (long id = 1; id <= 2500; id++) {
+            rows.add(new ResultRow(id, 0, 0.0, 1, true, null));
+        }
+        when(historyDAO.getPointsAfter(1L, 0L, HistoryCacheService.LOAD_PAGE, null, null)).thenReturn(rows);
+
+        List<ResultRow> passed = new ArrayList<>();
+        assertTrue(historyCache.forEachPoint(1L, passed::add));
+
+        assertEquals(rows, passed);
+    }
+
+    @Test
+    void invalidate_ShouldReloadOnNextRead() {
+        when(historyDAO.getPointsAfter(1L, 0L, HistoryCacheService.LOAD_PAGE, null, null)).thenReturn(List.of());
+        historyCache.getPoints(1L);
+
+        historyCache.invalidate(1L);
+        historyCache.getPoints(1L);
+
+        verify(historyDAO, times(2)).getPointsAfter(anyLong(), anyLong(), anyInt(), any(), any());
+    }
+}
@@ -6,16 +6,27 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import web.backend.lab4.dao.ArchiveBlob;
+import web.backend.lab4.dao.ArchiveDAO;
+import web.backend.lab4.dao.CompactRow;
+import web.backend.lab4.dao.ExportRow;
+import web.backend.lab4.dao.HistoryDAO;
 import web.backend.lab4.dao.ResultDAO;
+import web.backend.lab4.dao.ResultRow;
 import web.backend.lab4.dao.UserDAO;
+import web.backend.lab4.dto.CompactPointDTO;
 import web.backend.lab4.dto.PointDTO;
+import web.backend.lab4.dto.PointPageDTO;
 import web.backend.lab4.dto.ResultDTO;
 import web.backend.lab4.entity.ResultEntity;
-import web.backend.lab4.entity.UserEntity;
+import web.backend.lab4.util.BackpressureException;
 import web.backend.lab4.util.Calculator;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -30,17 +41,30 @@ class PointServiceTest {
     @Mock
     private ResultDAO resultDAO;
 
+    @Mock
+    private HistoryDAO historyDAO;
+
+    @Mock
+    private ArchiveDAO archiveDAO;
+
     @Mock
     private Calculator calculator;
 
+    @Mock
+    private PointIndexService pointIndex;
+
+    @Mock
+    private DensityService densityService;
+
+    @Mock
+    private IngestionService ingestionService;
+
+    @Mock
+    private HistoryCacheService historyCache;
+
     @InjectMocks
     private PointService pointService;
 
-    private final UserEntity testUser = UserEntity.builder()
-            .id(1L)
-            .username("testUser")
-            .build();
-
     // Теперь явно указываем result в конструкторе
     private final PointDTO testPoint = PointDTO.builder()
             .x(1)
@@ -56,37 +80,49 @@ class PointServiceTest {
     @Test
     void addPoint_WithValidUser_ShouldReturnResult() {
         // Arrange
-        when(userDAO.getUserByUsername("testUser")).thenReturn(Optional.of(testUser));
         when(calculator.calculate(1, 2.0, 3)).thenReturn(true);
-
-        // Мокаем void-метод с помощью doAnswer
-        doAnswer(inv -> {
-            ResultEntity e = inv.getArgument(0);
-            e.setId(1L); // Эмулируем сохранение в БД
-            return null;
-        }).when(resultDAO).addNewResult(any(ResultEntity.class));
+        when(ingestionService.submit(any(ResultEntity.class))).thenReturn(true);
 
         // Act
-        Optional<ResultDTO> result = pointService.addPoint(testPoint, "testUser");
+        Optional<ResultDTO> result = pointService.addPoint(testPoint, 1L);
 
         // Assert
         assertTrue(result.isPresent());
         assertTrue(result.get().isResult());
-        verify(resultDAO).addNewResult(argThat(entity ->
+        // точка уходит в очередь записи, ответ не ждёт базу
+        verify(ingestionService).submit(argThat(entity ->
                 entity.getX() == 1 &&
                         entity.getY() == 2.0 &&
                         entity.getR() == 3 &&
-                        entity.getUser().equals(testUser)
+                        entity.isResult() &&
+                        entity.getUser().getId() == 1L
         ));
+        // пользователь берётся из токена, база не читается
+        verifyNoInteractions(userDAO, resultDAO);
+    }
+
+    @Test
+    void addPoint_WhenAccountIsBeingDeleted_ShouldReturnEmpty() {
+        when(ingestionService.submit(any(ResultEntity.class))).thenReturn(false);
+
+        assertTrue(pointService.addPoint(testPoint, 1L).isEmpty());
+    }
+
+    @Test
+    void addPoint_WhenQueueIsFull_ShouldPassBackpressureOn() {
+        doThrow(new BackpressureException(BackpressureException.SERVICE_UNAVAILABLE, 1, "Server is busy"))
+                .when(ingestionService).submit(any(ResultEntity.class));
+
+        BackpressureException e = assertThrows(BackpressureException.class,
+                () -> pointService.addPoint(testPoint, 1L));
+
+        assertEquals(503, e.getStatus());
     }
 
     @Test
     void getPoints_ShouldReturnCorrectResultField() {
         // Arrange
-        ResultEntity entity = ResultEntity.builder()
-                .x(1).y(2.0).r(3).result(true).user(testUser).build();
-
-        when(resultDAO.getResultsByUserId(1L)).thenReturn(List.of(entity));
+        stubStoredRows(new ResultRow(1, 1, 2.0, 3, true, null));
 
         // Act
         Optional<List<PointDTO>> result = pointService.getPoints(1L);
@@ -97,20 +133,237 @@ class PointServiceTest {
         assertTrue(dto.isResult()); // Проверяем что result правильно маппится
     }
 
+    @Test
+    void addPoints_ShouldStoreAllInOneCall() {
+        when(calculator.calculate(anyInt(), anyDouble(), anyInt())).thenAnswer(inv -> (int) inv.getArgument(0) > 0);
+        List<PointDTO> points = List.of(testPoint, PointDTO.builder().x(-1).y(0.5).r(2).build());
+
+        Optional<List<ResultDTO>> results = pointService.addPoints(points, 1L);
+
+        assertTrue(results.isPresent());
+        assertEquals(List.of(true, false), results.get().stream().map(ResultDTO::isResult).toList());
+        verify(resultDAO).addNewResults(argThat(entities -> entities.size() == 2
+                && entities.stream().allMatch(entity -> entity.getUser().getId() == 1L)));
+        verify(ingestionService).publish(eq(1L), argThat((List<ResultRow> rows) -> rows.size() == 2));
+    }
+
+    @Test
+    void addPoints_RepeatedPoint_ShouldPublishOnlyNewOnes() {
+        doAnswer(inv -> {
+            List<ResultEntity> entities = inv.getArgument(0);
+            entities.get(0).setId(51);
+            entities.get(1).setId(51);
+            entities.get(1).setRepeated(true);
+            return null;
+        }).when(resultDAO).addNewResults(any());
+
+        Optional<List<ResultDTO>> results = pointService.addPoints(List.of(testPoint, testPoint), 1L);
+
+        assertEquals(2, results.orElseThrow().size());
+        verify(ingestionService).publish(eq(1L), argThat((List<ResultRow> rows) -> rows.size() == 1
+                && rows.get(0).id() == 51));
+    }
+
+    @Test
+    void forEachSubmission_ShouldRepeatPointByOccurrences() {
+        doAnswer(inv -> {
+            Consumer<CompactRow> action = inv.getArgument(1);
+            action.accept(new CompactRow(1, 1, 2.0, 3, true, null, 3, LocalDateTime.now()));
+            action.accept(new CompactRow(51, -1, 0.5, 2, false, null, 1, LocalDateTime.now()));
+            return null;
+        }).when(historyDAO).forEachCompactRow(eq(1L), any());
+        List<PointDTO> points = new ArrayList<>();
+
+        pointService.forEachSubmission(1L, null, points::add);
+
+        assertEquals(4, points.size());
+        assertEquals(3, points.stream().filter(point -> point.getX() == 1).count());
+    }
+
+    @Test
+    void getPoints_NotCached_ShouldMergeArchivedPointsById() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 1, 0, 0);
+        when(historyCache.getPoints(1L)).thenReturn(Optional.empty());
+        stubStoredRows(new ResultRow(1, 1, 2.0, 3, false, null), new ResultRow(101, 3, 2.0, 3, false, null));
+        when(archiveDAO.getBlobsAfter(1L, 0L)).thenReturn(List.of(new ArchiveBlob(january, 51, 51)));
+        when(archiveDAO.getBlobPoints(1L, january)).thenReturn(List.of(new ResultRow(51, 2, 1.0, 3, true, null)));
+
+        List<PointDTO> points = pointService.getPoints(1L).orElseThrow();
+
+        assertEquals(List.of(1, 2, 3), points.stream().map(PointDTO::getX).toList());
+    }
+
+    @Test
+    void getPointsPage_ShouldNotReadArchiveBlobsAfterThePage() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime march = LocalDateTime.of(2024, 3, 1, 0, 0);
+        when(historyDAO.getPointsAfter(1L, 0L, 3, null, null)).thenReturn(List.of(
+                new ResultRow(3, 3, 0, 1, false, null),
+                new ResultRow(6, 6, 0, 1, false, null),
+                new ResultRow(7, 7, 0, 1, false, null)));
+        when(archiveDAO.getBlobsAfter(1L, 0L)).thenReturn(List.of(
+                new ArchiveBlob(january, 2, 4), new ArchiveBlob(march, 100, 110)));
+        when(archiveDAO.getBlobPoints(1L, january)).thenReturn(List.of(
+                new ResultRow(2, 2, 0, 1, false, null), new ResultRow(4, 4, 0, 1, false, null)));
+
+        PointPageDTO page = pointService.getPointsPage(1L, null, 0L, 2, null, null).orElseThrow();
+
+        assertEquals(List.of(2, 3), page.getPoints().stream().map(PointDTO::getX).toList());
+        assertEquals(3L, page.getNext());
+        verify(archiveDAO, never()).getBlobPoints(1L, march);
+    }
+
+    @Test
+    void forEachPoint_ShouldMergeOverlappingArchiveBlobsById() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime february = LocalDateTime.of(2024, 2, 1, 0, 0);
+        when(archiveDAO.getBlobsAfter(1L, 0L)).thenReturn(List.of(
+                new ArchiveBlob(january, 1, 50), new ArchiveBlob(february, 10, 20)));
+        when(archiveDAO.getBlobPoints(1L, january)).thenReturn(List.of(
+                new ResultRow(1, 1, 0, 1, false, null), new ResultRow(50, 50, 0, 1, false, null)));
+        when(archiveDAO.getBlobPoints(1L, february)).thenReturn(List.of(
+                new ResultRow(10, 10, 0, 1, false, null), new ResultRow(20, 20, 0, 1, false, null)));
+        doAnswer(inv -> {
+            Consumer<ResultRow> action = inv.getArgument(3);
+            action.accept(new ResultRow(5, 5, 0, 1, false, null));
+            action.accept(new ResultRow(30, 30, 0, 1, false, null));
+            return null;
+        }).when(historyDAO).forEachPoint(eq(1L), isNull(), isNull(), any());
+        List<PointDTO> points = new ArrayList<>();
+
+        pointService.forEachPoint(1L, null, null, null, points::add);
+
+        assertEquals(List.of(1, 5, 10, 20, 30, 50), points.stream().map(PointDTO::getX).toList());
+    }
+
+    @Test
+    void exportPoints_ShouldExportArchivedPointsWithTheStartOfTheirMonth() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime march = LocalDateTime.of(2024, 3, 1, 0, 0);
+        LocalDateTime sent = LocalDateTime.of(2024, 3, 5, 12, 0);
+        when(archiveDAO.getBlobsAfter(1L, 0L)).thenReturn(List.of(
+                new ArchiveBlob(january, 1, 2), new ArchiveBlob(march, 3, 3)));
+        when(archiveDAO.getBlobPoints(1L, march)).thenReturn(List.of(new ResultRow(3, 3, 0, 1, true, null)));
+        doAnswer(inv -> {
+            Consumer<ExportRow> action = inv.getArgument(3);
+            action.accept(new ExportRow(4, 4, 0, 1, false, sent));
+            return null;
+        }).when(historyDAO).forEachExportRow(eq(1L), eq(march), isNull(), any());
+        List<ExportRow> rows = new ArrayList<>();
+
+        pointService.exportPoints(1L, march, null, rows::add);
+
+        assertEquals(List.of(new ExportRow(3, 3, 0, 1, true, march), new ExportRow(4, 4, 0, 1, false, sent)), rows);
+        verify(archiveDAO, never()).getBlobPoints(1L, january);
+    }
+
+    @Test
+    void forEachCompactPoint_ShouldMergeArchivedPointsWithTheirCounts() {
+        LocalDateTime january = LocalDateTime.of(2024, 1, 1, 0, 0);
+        ArchiveBlob blob = new ArchiveBlob(january, 1, 1);
+        when(archiveDAO.getBlobsAfter(1L, 0L)).thenReturn(List.of(blob));
+        when(archiveDAO.getCompactBlobPoints(1L, blob)).thenReturn(List.of(
+                new CompactRow(1, 1, 0, 1, true, null, 2, january)));
+        doAnswer(inv -> {
+            Consumer<CompactRow> action = inv.getArgument(1);
+            action.accept(new CompactRow(51, 51, 0, 1, false, null, 1, LocalDateTime.now()));
+            return null;
+        }).when(historyDAO).forEachCompactRow(eq(1L), any());
+        List<CompactPointDTO> points = new ArrayList<>();
+
+        pointService.forEachCompactPoint(1L, null, points::add);
+
+        assertEquals(List.of(1, 51), points.stream().map(CompactPointDTO::getX).toList());
+        assertEquals(2, points.get(0).getOccurrences());
+    }
+
+    @Test
+    void getPoints_WithRadius_ShouldUseHitMask() {
+        ResultRow withMask = new ResultRow(1, 1, 2.0, 3, false, 0b10000);
+        ResultRow withoutMask = new ResultRow(2, -1, 0.5, 3, true, null);
+
+        stubStoredRows(withMask, withoutMask);
+        when(calculator.calculate(-1, 0.5, 4)).thenReturn(true);
+
+        List<PointDTO> result = pointService.getPoints(1L, 4).orElseThrow();
+
+        assertEquals(4, result.get(0).getR());
+        assertTrue(result.get(0).isResult());
+        assertTrue(result.get(1).isResult());
+        verify(calculator, never()).calculate(1, 2.0, 4);
+    }
+
+    @Test
+    void getPoints_WhenHistoryIsCached_ShouldNotReadTheDatabase() {
+        when(historyCache.getPoints(1L)).thenReturn(Optional.of(List.of(new ResultRow(1, 1, 2.0, 3, true, null))));
+
+        List<PointDTO> result = pointService.getPoints(1L).orElseThrow();
+
+        assertEquals(1, result.size());
+        verifyNoInteractions(historyDAO);
+    }
+
+    @Test
+    void getPointsPage_WithTimeRange_ShouldReadTheDatabase() {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        when(historyDAO.getPointsAfter(1L, 0L, 3, from, null)).thenReturn(List.of());
+
+        PointPageDTO page = pointService.getPointsPage(1L, null, 0L, 2, from, null).orElseThrow();
+
+        assertTrue(page.getPoints().isEmpty());
+        verifyNoInteractions(historyCache);
+    }
+
+    @Test
+    void getPointsPage_WhenMoreRowsFollow_ShouldReturnCursor() {
+        when(historyDAO.getPointsAfter(1L, 10L, 3, null, null)).thenReturn(List.of(
+                new ResultRow(11, 1, 2.0, 3, true, null),
+                new ResultRow(12, -1, 0.5, 3, false, null),
+                new ResultRow(15, 0, 0.0, 3, true, null)));
+
+        PointPageDTO page = pointService.getPointsPage(1L, null, 10L, 2, null, null).orElseThrow();
+
+        assertEquals(2, page.getPoints().size());
+        assertEquals(12L, page.getNext());
+    }
+
+    @Test
+    void getPointsPage_OnLastPage_ShouldHaveNoCursor() {
+        when(historyDAO.getPointsAfter(1L, 12L, 3, null, null)).thenReturn(List.of(
+                new ResultRow(15, 1, 2.0, 3, false, 0b10000)));
+
+        PointPageDTO page = pointService.getPointsPage(1L, 4, 12L, 2, null, null).orElseThrow();
+
+        assertEquals(1, page.getPoints().size());
+        assertEquals(4, page.getPoints().get(0).getR());
+        assertTrue(page.getPoints().get(0).isResult());
+        assertNull(page.getNext());
+    }
+
     @Test
     void addPoint_ShouldIgnoreInputResultField() {
         // Arrange
         PointDTO pointWithWrongResult = PointDTO.builder()
                 .x(1).y(2.0).r(3).result(true).build(); // Указываем неверный результат
 
-        when(userDAO.getUserByUsername("testUser")).thenReturn(Optional.of(testUser));
         when(calculator.calculate(1, 2.0, 3)).thenReturn(false); // Но калькулятор вернет false
+        when(ingestionService.submit(any(ResultEntity.class))).thenReturn(true);
 
         // Act
-        Optional<ResultDTO> result = pointService.addPoint(pointWithWrongResult, "testUser");
+        Optional<ResultDTO> result = pointService.addPoint(pointWithWrongResult, 1L);
 
         // Assert
         assertTrue(result.isPresent());
         assertFalse(result.get().isResult()); // Должен быть результат расчета, а не входного DTO
     }
-}
\ No newline at end of file
+
+    private void stubStoredRows(ResultRow... rows) {
+        doAnswer(inv -> {
+            Consumer<ResultRow> action = inv.getArgument(3);
+            for (ResultRow row : rows) {
+                action.accept(row);
+            }
+            return null;
+        }).when(historyDAO).forEachPoint(eq(1L), isNull(), isNull(), any());
+    }
+}
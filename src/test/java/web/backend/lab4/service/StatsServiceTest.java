@@ -0,0 +1,59 @@
+package web.backend.lab4.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import web.backend.lab4.dao.StatsDAO;
+import web.backend.lab4.dao.StatsRow;
+import web.backend.lab4.dto.StatsDTO;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StatsServiceTest {
+
+    @Mock
+    private StatsDAO statsDAO;
+
+    @InjectMocks
+    private StatsService statsService;
+
+    @Test
+    void getStats_ShouldSumRadiiAndKeepTheirRates() {
+        Instant first = Instant.parse("2024-01-01T10:00:00Z");
+        Instant last = Instant.parse("2024-03-01T10:00:00Z");
+        when(statsDAO.getStats(1L)).thenReturn(List.of(
+                new StatsRow(1, 4, 1, first, Instant.parse("2024-02-01T10:00:00Z")),
+                new StatsRow(3, 6, 6, null, last)));
+
+        StatsDTO stats = statsService.getStats(1L);
+
+        assertEquals(10, stats.getTotal());
+        assertEquals(7, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(0.7, stats.getHitRate(), 1e-9);
+        assertEquals(first.toString(), stats.getFirst());
+        assertEquals(last.toString(), stats.getLast());
+        assertEquals(2, stats.getRadii().size());
+        assertEquals(0.25, stats.getRadii().get(0).getHitRate(), 1e-9);
+        assertEquals(1.0, stats.getRadii().get(1).getHitRate(), 1e-9);
+    }
+
+    @Test
+    void getStats_WithoutPoints_ShouldReturnZeros() {
+        when(statsDAO.getStats(1L)).thenReturn(List.of());
+
+        StatsDTO stats = statsService.getStats(1L);
+
+        assertEquals(0, stats.getTotal());
+        assertEquals(0, stats.getHitRate());
+        assertNull(stats.getFirst());
+        assertTrue(stats.getRadii().isEmpty());
+    }
+}
@@ -0,0 +1,76 @@
+package web.backend.lab4.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import web.backend.lab4.dao.ResultRow;
+import web.backend.lab4.util.Calculator;
+import web.backend.lab4.util.TileRenderer;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TileServiceTest {
+
+    private static final TileRenderer.Tile TOP_LEFT = new TileRenderer.Tile(0, -1, -1);
+    private static final TileRenderer.Tile TOP_RIGHT = new TileRenderer.Tile(0, 0, -1);
+
+    @Mock
+    private PointIndexService pointIndex;
+
+    @Mock
+    private Calculator calculator;
+
+    @InjectMocks
+    private TileService tileService;
+
+    @Test
+    void getTile_SecondTime_ShouldComeFromCache() {
+        when(pointIndex.inBox(eq(1L), anyDouble(), anyDouble(), anyDouble(), anyDouble()))
+                .thenReturn(List.of(new ResultRow(1, -1, 1.0, 3, true, 0b1000)));
+
+        byte[] first = tileService.getTile(1L, 3, TOP_LEFT, TileRenderer.Format.SVG);
+        byte[] second = tileService.getTile(1L, 3, TOP_LEFT, TileRenderer.Format.SVG);
+
+        assertSame(first, second);
+        verify(pointIndex, times(1)).inBox(eq(1L), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+        verifyNoInteractions(calculator);
+    }
+
+    @Test
+    void pointAdded_ShouldEvictOnlyTilesItIsDrawnOn() {
+        when(pointIndex.inBox(anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble())).thenReturn(List.of());
+        tileService.getTile(1L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+        tileService.getTile(1L, 3, TOP_RIGHT, TileRenderer.Format.PNG);
+        tileService.getTile(2L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+
+        tileService.pointAdded(1L, -2, 2.0);
+        tileService.getTile(1L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+        tileService.getTile(1L, 3, TOP_RIGHT, TileRenderer.Format.PNG);
+        tileService.getTile(2L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+
+        verify(pointIndex, times(2)).inBox(eq(1L), doubleThat(x -> x < -1), anyDouble(), anyDouble(), anyDouble());
+        verify(pointIndex, times(1)).inBox(eq(1L), doubleThat(x -> x > -1), anyDouble(), anyDouble(), anyDouble());
+        verify(pointIndex, times(1)).inBox(eq(2L), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    void invalidate_ShouldKeepTilesOfOtherUsers() {
+        when(pointIndex.inBox(anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble())).thenReturn(List.of());
+        tileService.getTile(1L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+        tileService.getTile(2L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+
+        tileService.invalidate(1L);
+        tileService.getTile(1L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+        tileService.getTile(2L, 3, TOP_LEFT, TileRenderer.Format.PNG);
+
+        verify(pointIndex, times(2)).inBox(eq(1L), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+        verify(pointIndex, times(1)).inBox(eq(2L), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+    }
+}
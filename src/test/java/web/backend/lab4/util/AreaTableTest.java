@@ -0,0 +1,100 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AreaTableTest {
+
+    private static final Validator.Domain WIDE = new Validator.Domain(-8, 8, 0, 8);
+
+    @AfterEach
+    void restoreDomain() {
+        Validator.getValidator().setDomain(Validator.Domain.DEFAULT);
+    }
+
+    @Test
+    void contains_ShouldBeBitIdenticalToCalculator() {
+        AreaTable table = AreaTable.build(WIDE);
+        for (int x = WIDE.minX(); x <= WIDE.maxX(); x++) {
+            for (int r = WIDE.minR(); r <= WIDE.maxR(); r++) {
+                for (double y : probes(x, r)) {
+                    assertEquals(Calculator.compute(x, y, r), table.contains(x, y, r),
+                            "x=" + x + " y=" + y + " r=" + r);
+                }
+            }
+        }
+    }
+
+    @Test
+    void covers_ShouldMatchDomainBounds() {
+        AreaTable table = AreaTable.build(Validator.Domain.DEFAULT);
+        assertTrue(table.covers(-5, 1));
+        assertTrue(table.covers(5, 5));
+        assertFalse(table.covers(-6, 3));
+        assertFalse(table.covers(6, 3));
+        assertFalse(table.covers(0, 0));
+        assertFalse(table.covers(0, 6));
+    }
+
+    @Test
+    void calculate_ShouldFollowDomainChanges() {
+        Calculator calculator = new Calculator();
+        // x = 6 вне домена по умолчанию, ответ считается напрямую
+        assertEquals(Calculator.compute(-6, 1.0, 7), calculator.calculate(-6, 1.0, 7));
+
+        Validator.getValidator().setDomain(WIDE);
+        for (int x = WIDE.minX(); x <= WIDE.maxX(); x++) {
+            for (int r = WIDE.minR(); r <= WIDE.maxR(); r++) {
+                for (double y : probes(x, r)) {
+                    assertEquals(Calculator.compute(x, y, r), calculator.calculate(x, y, r));
+                }
+            }
+        }
+    }
+
+    @Test
+    void calculateMask_ShouldMatchCalculateForEveryRadius() {
+        Calculator calculator = new Calculator();
+        for (int x = -6; x <= 6; x++) {
+            for (double y : probes(x, 5)) {
+                int mask = calculator.calculateMask(x, y);
+                for (int r = 0; r <= 6; r++) {
+                    boolean inDomain = r >= Validator.Domain.DEFAULT.minR() && r <= Validator.Domain.DEFAULT.maxR();
+                    assertEquals(inDomain && calculator.calculate(x, y, r), Calculator.isHit(mask, r),
+                            "x=" + x + " y=" + y + " r=" + r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Values of y around every edge the area can have for this x and r, plus random ones.
+     */
+    private static List<Double> probes(int x, int r) {
+        List<Double> edges = new ArrayList<>(List.of(0.0, -0.0, (double) r, (double) -r, (double) (-2*x - r),
+                Math.sqrt(Math.abs(r*r - x*x)), Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN));
+        List<Double> probes = new ArrayList<>();
+        for (double edge : edges) {
+            double y = edge;
+            for (int i = 0; i < 4; i++) {
+                y = Math.nextDown(y);
+            }
+            for (int i = 0; i < 9; i++) {
+                probes.add(y);
+                y = Math.nextUp(y);
+            }
+        }
+        SplittableRandom random = new SplittableRandom(x * 31L + r);
+        for (int i = 0; i < 200; i++) {
+            probes.add(random.nextDouble(-2.0 * r - 1, 2.0 * r + 1));
+        }
+        return probes;
+    }
+}
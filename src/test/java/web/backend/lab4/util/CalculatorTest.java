@@ -0,0 +1,47 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CalculatorTest {
+
+    private final Calculator calculator = new Calculator();
+
+    @Test
+    void calculateAll_ShouldMatchSinglePointCalculate() {
+        int n = 1000;
+        SplittableRandom random = new SplittableRandom(7);
+        int[] xs = new int[n];
+        double[] ys = new double[n];
+        int[] rs = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = random.nextInt(-6, 7);
+            ys[i] = random.nextDouble(-6, 6);
+            rs[i] = random.nextInt(0, 7);
+        }
+        // граничные значения
+        ys[0] = 0.0;
+        ys[1] = -0.0;
+        ys[2] = Double.NaN;
+
+        boolean[] out = new boolean[n];
+        long[] bits = new long[(n + 63) / 64];
+        calculator.calculateAll(xs, ys, rs, out);
+        calculator.calculateAll(xs, ys, rs, bits);
+
+        for (int i = 0; i < n; i++) {
+            boolean expected = calculator.calculate(xs[i], ys[i], rs[i]);
+            assertEquals(expected, out[i], "point " + i);
+            assertEquals(expected, (bits[i >>> 6] & (1L << i)) != 0, "bit " + i);
+        }
+    }
+
+    @Test
+    void calculateAll_WithMismatchedArrays_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> calculator.calculateAll(new int[2], new double[1], new int[2], new boolean[2]));
+    }
+}
@@ -0,0 +1,79 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+import web.backend.lab4.dao.ExportRow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarPointWriterTest {
+
+    @Test
+    void write_ShouldReadBackTheSameRowsAcrossBlocks() throws IOException {
+        List<ExportRow> rows = rows(ColumnarPointWriter.BLOCK_ROWS * 2 + 17);
+
+        ColumnarPointReader reader = new ColumnarPointReader(new ByteArrayInputStream(columnar(rows)));
+        List<ExportRow> read = new ArrayList<>();
+        for (ExportRow row = reader.next(); row != null; row = reader.next()) {
+            read.add(row);
+        }
+
+        assertEquals(rows, read);
+        assertNull(reader.next());
+    }
+
+    @Test
+    void write_WhenNothingIsWritten_ShouldReadNoRows() throws IOException {
+        ColumnarPointReader reader = new ColumnarPointReader(new ByteArrayInputStream(columnar(List.of())));
+
+        assertNull(reader.next());
+    }
+
+    @Test
+    void write_ShouldBeSeveralTimesSmallerThanCsv() throws IOException {
+        List<ExportRow> rows = rows(100_000);
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        CsvPointWriter writer = new CsvPointWriter(csv);
+        for (ExportRow row : rows) {
+            writer.write(row);
+        }
+        writer.finish();
+
+        int columnar = columnar(rows).length;
+        assertTrue(csv.size() > 2.5 * columnar, csv.size() + " bytes of CSV, " + columnar + " bytes columnar");
+        assertTrue(csv.toString(StandardCharsets.UTF_8).startsWith(CsvPointWriter.HEADER));
+    }
+
+    private static byte[] columnar(List<ExportRow> rows) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnarPointWriter writer = new ColumnarPointWriter(out);
+        for (ExportRow row : rows) {
+            writer.write(row);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    private static List<ExportRow> rows(int count) {
+        Random random = new Random(42);
+        List<ExportRow> rows = new ArrayList<>(count);
+        long id = 0;
+        LocalDateTime time = LocalDateTime.of(2024, 3, 1, 10, 0, 0, 123_456_000);
+        for (int i = 0; i < count; i++) {
+            id += 1 + random.nextInt(200);
+            // время в основном растёт, но точки одной пачки могут прийти не по порядку
+            time = time.plusNanos((random.nextInt(5_000_000) - 500_000) * 1000L);
+            rows.add(new ExportRow(id, random.nextInt(11) - 5, random.nextDouble() * 10 - 5, 1 + random.nextInt(5),
+                    random.nextBoolean(), time));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,62 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvPointReaderTest {
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private final List<CsvPointReader.Row> rows = new ArrayList<>();
+    private final List<CsvPointReader.Reject> rejects = new ArrayList<>();
+
+    private CsvPointReader reader(String csv) {
+        return new CsvPointReader(new StringReader(csv), Validator.Domain.DEFAULT, EARLIEST, LATEST);
+    }
+
+    @Test
+    void read_ShouldSkipHeaderAndBlankLines() throws IOException {
+        CsvPointReader reader = reader("x,y,r\r\n1,0.5,2\n\n-3, -1.25 ,5,2024-06-01T12:30\n");
+
+        assertFalse(reader.read(10, rows, rejects::add));
+
+        assertEquals(List.of(
+                new CsvPointReader.Row(2, 1, 0.5, 2, null),
+                new CsvPointReader.Row(4, -3, -1.25, 5, LocalDateTime.of(2024, 6, 1, 12, 30))), rows);
+        assertTrue(rejects.isEmpty());
+    }
+
+    @Test
+    void read_ShouldStopAfterMaxRowsAndContinueLater() throws IOException {
+        CsvPointReader reader = reader("1,0,1\n2,0,1\n3,0,1");
+
+        assertTrue(reader.read(2, rows, rejects::add));
+        assertEquals(2, rows.size());
+        assertFalse(reader.read(2, rows, rejects::add));
+        assertEquals(3, rows.size());
+        assertEquals(3, rows.get(2).x());
+    }
+
+    @Test
+    void read_WhenLinesAreInvalid_ShouldRejectThemWithLineNumbers() throws IOException {
+        String tooLong = "1,0." + "1".repeat(CsvPointReader.MAX_LINE_LENGTH) + ",1";
+        CsvPointReader reader = reader("1,0,1\nabc,0,1\n1,NaN,1\n1,0,9\n6,0,1\n1,0\n1,0,1,2023-12-31T23:59\n1,0,1,yesterday\n"
+                + tooLong + "\n2,0,1\n");
+
+        assertFalse(reader.read(100, rows, rejects::add));
+
+        assertEquals(List.of(1L, 10L), rows.stream().map(CsvPointReader.Row::line).toList());
+        assertEquals(List.of(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), rejects.stream().map(CsvPointReader.Reject::line).toList());
+        assertEquals("Invalid x", rejects.get(0).reason());
+        assertEquals("Invalid y", rejects.get(1).reason());
+        assertEquals("Invalid r", rejects.get(2).reason());
+        assertEquals("Invalid x", rejects.get(3).reason());
+    }
+}
@@ -0,0 +1,78 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DensityGridTest {
+
+    @Test
+    void aggregate_ShouldMatchDirectBinning() {
+        SplittableRandom random = new SplittableRandom(5);
+        DensityGrid grid = new DensityGrid();
+        Map<List<Integer>, long[]> expected = new HashMap<>();
+        int factor = 6;
+        double size = (double) factor / DensityGrid.CELLS_PER_UNIT;
+        for (int i = 0; i < 20000; i++) {
+            int x = random.nextInt(-5, 6);
+            double y = random.nextDouble(-5, 5);
+            boolean hit = random.nextBoolean();
+            grid.add(x, y, hit);
+            long[] cell = expected.computeIfAbsent(
+                    List.of((int) Math.floor(x / size), (int) Math.floor(y / size)), k -> new long[2]);
+            cell[hit ? 0 : 1]++;
+        }
+
+        List<DensityGrid.Bin> bins = grid.aggregate(factor);
+        assertEquals(expected.size(), bins.size());
+        for (DensityGrid.Bin bin : bins) {
+            long[] cell = expected.get(List.of(bin.col(), bin.row()));
+            assertNotNull(cell, "cell " + bin);
+            assertEquals(cell[0], bin.hits());
+            assertEquals(cell[1], bin.misses());
+        }
+    }
+
+    @Test
+    void addCell_ShouldMergeWithSinglePoints() {
+        DensityGrid grid = new DensityGrid();
+        grid.addCell(-4, -4, true, 10);
+        grid.add(-0.8, -0.9, true);
+        grid.add(-0.8, -0.9, false);
+
+        // (-0.8, -0.9) лежит в базовой ячейке (-4, -4)
+        assertEquals(List.of(new DensityGrid.Bin(-4, -4, 11, 1)), grid.aggregate(1));
+        assertEquals(List.of(new DensityGrid.Bin(-1, -1, 11, 1)), grid.aggregate(4));
+    }
+
+    @Test
+    void subtract_ShouldLeaveOnlyTheOtherCounts() {
+        DensityGrid total = new DensityGrid();
+        DensityGrid user = new DensityGrid();
+        total.add(0.1, 0.1, true);
+        total.add(2.1, 2.1, false);
+        user.add(2.1, 2.1, false);
+
+        total.subtract(user);
+
+        assertEquals(List.of(new DensityGrid.Bin(0, 0, 1, 0)), total.aggregate(1));
+    }
+
+    @Test
+    void add_OtherGrid_ShouldSumTheCounts() {
+        DensityGrid total = new DensityGrid();
+        DensityGrid imported = new DensityGrid();
+        total.add(0.1, 0.1, true);
+        imported.add(0.2, 0.2, false);
+        imported.add(2.1, 2.1, true);
+
+        total.add(imported);
+
+        assertEquals(List.of(new DensityGrid.Bin(0, 0, 1, 1), new DensityGrid.Bin(8, 8, 1, 0)), total.aggregate(1));
+    }
+}
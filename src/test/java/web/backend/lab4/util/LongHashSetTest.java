@@ -0,0 +1,28 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    void add_ShouldMatchHashSet() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(7);
+
+        for (int i = 0; i < 100_000; i++) {
+            // id с временем в старших битах и небольшие, чтобы были и повторы, и ноль
+            long value = random.nextBoolean() ? (long) random.nextInt(1000) << 12 : random.nextInt(50);
+            assertEquals(expected.add(value), set.add(value));
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertFalse(set.add(0));
+    }
+}
@@ -0,0 +1,51 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointArchiveTest {
+
+    @Test
+    void encode_ShouldDecodeToTheSameRows() {
+        List<ResultRow> rows = List.of(
+                new ResultRow(1, -5, 2.5, 1, true, 0b10),
+                new ResultRow(51, 5, -0.125, 5, false, null),
+                new ResultRow(1_000_000_051L, 0, 4.999, 3, true, 0));
+
+        assertEquals(rows, PointArchive.decode(PointArchive.encode(rows)));
+        assertEquals(List.of(), PointArchive.decode(PointArchive.encode(List.of())));
+    }
+
+    @Test
+    void encode_OutsideNibbleRange_ShouldKeepXAndR() {
+        List<ResultRow> rows = List.of(
+                new ResultRow(1, -100, 1.0, 1, false, null),
+                new ResultRow(2, 100, 1.0, 30, true, Integer.MAX_VALUE));
+
+        assertEquals(rows, PointArchive.decode(PointArchive.encode(rows)));
+    }
+
+    @Test
+    void encode_ShouldTakeAFewBytesPerPoint() {
+        // как при вводе с формы: y с двумя знаками, id подряд блоками
+        SplittableRandom random = new SplittableRandom(42);
+        List<ResultRow> rows = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            rows.add(new ResultRow(1 + i + (i / 50) * 50L, random.nextInt(-5, 6),
+                    random.nextInt(-500, 501) / 100.0, random.nextInt(1, 6), random.nextBoolean(),
+                    random.nextInt(1 << 6)));
+        }
+
+        byte[] blob = PointArchive.encode(rows);
+
+        assertEquals(rows, PointArchive.decode(blob));
+        double bytesPerPoint = (double) blob.length / rows.size();
+        assertTrue(bytesPerPoint < 8, bytesPerPoint + " bytes per point");
+    }
+}
@@ -0,0 +1,57 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointColumnsTest {
+
+    @Test
+    void add_ShouldKeepRowsInIdOrder() {
+        PointColumns columns = new PointColumns();
+        List<ResultRow> rows = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            rows.add(new ResultRow(i * 10L, i % 11 - 5, i * 0.25, 1 + i % 5, i % 3 == 0, i % 4 == 0 ? null : i));
+        }
+        // пачки могут прийти не в порядке id
+        for (int i = 0; i < rows.size(); i += 2) {
+            columns.add(rows.get(i));
+        }
+        for (int i = 1; i < rows.size(); i += 2) {
+            columns.add(rows.get(i));
+        }
+        columns.add(rows.get(5));
+
+        assertEquals(100, columns.size());
+        assertEquals(rows, columns.after(0, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void after_ShouldReturnAPageAfterTheId() {
+        PointColumns columns = new PointColumns();
+        for (long id = 1; id <= 10; id++) {
+            columns.add(new ResultRow(id, 0, 0.0, 1, id % 2 == 0, null));
+        }
+
+        assertEquals(List.of(5L, 6L, 7L), columns.after(4, 3).stream().map(ResultRow::id).toList());
+        assertEquals(List.of(10L), columns.after(9, 3).stream().map(ResultRow::id).toList());
+        assertTrue(columns.after(10, 3).isEmpty());
+        assertEquals(List.of(1L), columns.after(0, 1).stream().map(ResultRow::id).toList());
+    }
+
+    @Test
+    void bytes_ShouldGrowWithCapacity() {
+        PointColumns columns = new PointColumns();
+        long empty = columns.bytes();
+        for (long id = 1; id <= 100_000; id++) {
+            columns.add(new ResultRow(id, 1, 0.5, 2, true, 4));
+        }
+
+        long perPoint = (columns.bytes() - empty) / columns.size();
+        assertTrue(perPoint >= 28 && perPoint <= 28 * 3 / 2, perPoint + " bytes per point");
+    }
+}
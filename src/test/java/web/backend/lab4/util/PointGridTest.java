@@ -0,0 +1,77 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+import web.backend.lab4.dao.ResultRow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointGridTest {
+
+    @Test
+    void queries_ShouldMatchLinearScan() {
+        SplittableRandom random = new SplittableRandom(3);
+        List<ResultRow> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            // половина точек на целой сетке, чтобы были одинаковые расстояния
+            double y = i % 2 == 0 ? random.nextInt(-5, 6) : random.nextDouble(-5, 5);
+            rows.add(new ResultRow(i + 1, random.nextInt(-5, 6), y, 1 + i % 5, i % 3 == 0, null));
+        }
+        PointGrid grid = PointGrid.of(rows);
+        assertEquals(rows.size(), grid.size());
+
+        for (int q = 0; q < 300; q++) {
+            double x = random.nextDouble(-8, 8);
+            double y = random.nextDouble(-8, 8);
+            double x2 = x + random.nextDouble(0, 4);
+            double y2 = y + random.nextDouble(0, 4);
+            assertEquals(rows.stream()
+                    .filter(p -> p.x() >= x && p.x() <= x2 && p.y() >= y && p.y() <= y2)
+                    .toList(), grid.inBox(x, y, x2, y2));
+
+            double radius = random.nextDouble(0, 3);
+            assertEquals(rows.stream()
+                    .filter(p -> distance2(p, x, y) <= radius * radius)
+                    .toList(), grid.inCircle(x, y, radius));
+
+            int k = random.nextInt(1, 40);
+            assertEquals(rows.stream()
+                    .sorted(Comparator.<ResultRow>comparingDouble(p -> distance2(p, x, y))
+                            .thenComparingLong(ResultRow::id))
+                    .limit(k)
+                    .toList(), grid.nearest(x, y, k), "x=" + x + " y=" + y + " k=" + k);
+        }
+    }
+
+    @Test
+    void nearest_FarFromPoints_ShouldStillFindThem() {
+        PointGrid grid = PointGrid.of(List.of(
+                new ResultRow(1, 0, 0.0, 1, true, null),
+                new ResultRow(2, 3, 4.0, 1, false, null)));
+
+        assertEquals(List.of(2L, 1L), grid.nearest(1e6, 1e6, 5).stream().map(ResultRow::id).toList());
+        assertEquals(List.of(1L), grid.nearest(0, 0, 1).stream().map(ResultRow::id).toList());
+        assertTrue(grid.nearest(0, 0, 0).isEmpty());
+    }
+
+    @Test
+    void add_SameIdTwice_ShouldKeepOneCopy() {
+        PointGrid grid = new PointGrid();
+        ResultRow row = new ResultRow(7, 1, 1.5, 2, true, 0b100);
+        grid.add(row);
+        grid.add(row);
+
+        assertEquals(1, grid.size());
+        assertEquals(List.of(row), grid.inBox(0, 0, 2, 2));
+    }
+
+    private static double distance2(ResultRow row, double x, double y) {
+        double dx = row.x() - x;
+        double dy = row.y() - y;
+        return dx * dx + dy * dy;
+    }
+}
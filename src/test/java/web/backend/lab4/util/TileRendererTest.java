@@ -0,0 +1,65 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+import web.backend.lab4.area.ActiveArea;
+import web.backend.lab4.area.AreaParser;
+import web.backend.lab4.area.AreaSyntaxException;
+import web.backend.lab4.area.ShapeGeometry;
+
+import javax.imageio.ImageIO;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileRendererTest {
+
+    private static final TileRenderer.Tile TOP_LEFT = new TileRenderer.Tile(0, -1, -1);
+
+    @Test
+    void tile_ShouldCoverQuarterAroundOrigin() {
+        assertEquals(-12.8, TOP_LEFT.bounds().getMinX(), 1e-9);
+        assertEquals(0, TOP_LEFT.bounds().getMaxX(), 1e-9);
+        assertEquals(0, TOP_LEFT.bounds().getMinY(), 1e-9);
+        assertEquals(12.8, TOP_LEFT.bounds().getMaxY(), 1e-9);
+        assertEquals(2 * TileRenderer.SIZE / 20.0, new TileRenderer.Tile(-1, 0, 0).bounds().getWidth(), 1e-9);
+    }
+
+    @Test
+    void render_Png_ShouldDrawAreaAndPoints() throws AreaSyntaxException, IOException {
+        Area area = ShapeGeometry.toArea(AreaParser.parse(ActiveArea.BUILT_IN), 4, TOP_LEFT.reach());
+        byte[] png = TileRenderer.render(TOP_LEFT, TileRenderer.Format.PNG, 4, area,
+                List.of(new TileRenderer.Dot(-8, 8, true), new TileRenderer.Dot(-4, 10, false)));
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals(TileRenderer.SIZE, image.getWidth());
+        assertEquals(TileRenderer.SIZE, image.getHeight());
+        // (-1, 1) внутри четверти круга, (-1, 5) снаружи
+        assertEquals(128, image.getRGB(pixel(-1), pixel(-1)) >>> 24, 2);
+        assertEquals(0, image.getRGB(pixel(-1), pixel(-5)) >>> 24);
+        assertEquals(0x0000ff, image.getRGB(pixel(-8), pixel(-8)) & 0xffffff);
+        assertEquals(0xff0000, image.getRGB(pixel(-4), pixel(-10)) & 0xffffff);
+    }
+
+    @Test
+    void render_Svg_ShouldContainPathAndCircles() throws AreaSyntaxException {
+        Area area = ShapeGeometry.toArea(AreaParser.parse("halfplane(1, 0, 0)"), 4, TOP_LEFT.reach());
+        String svg = new String(TileRenderer.render(TOP_LEFT, TileRenderer.Format.SVG, 4, area,
+                List.of(new TileRenderer.Dot(-1, 1, true))), StandardCharsets.UTF_8);
+
+        assertTrue(svg.startsWith("<svg"));
+        assertTrue(svg.contains("<path"));
+        assertTrue(svg.contains("<circle cx=\"236.00\" cy=\"236.00\" r=\"5.00\" fill=\"blue\"/>"), svg);
+    }
+
+    /**
+     * Pixel of the top left tile for a math coordinate, at zoom 0 one unit is 20 pixels.
+     */
+    private static int pixel(double value) {
+        return TileRenderer.SIZE + (int) Math.floor(value * 20);
+    }
+}
@@ -0,0 +1,127 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedIdsTest {
+    private static final long NOW = TimeOrderedIds.EPOCH + 1_000_000_000L;
+    private static final int THREADS_PER_NODE = 4;
+    private static final int IDS_PER_THREAD = 20_000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(16);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void next_WhenClockStandsStillOrGoesBack_ShouldStillGrow() {
+        long[] time = {NOW};
+        TimeOrderedIds ids = new TimeOrderedIds(3, () -> time[0]);
+
+        long previous = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (i == 500) {
+                time[0] -= 10_000;
+            }
+            long id = ids.next();
+            assertTrue(id > previous);
+            assertEquals(3, TimeOrderedIds.node(id));
+            previous = id;
+        }
+        time[0] = NOW + 60_000;
+        assertEquals(NOW + 60_000, TimeOrderedIds.timestamp(ids.next()));
+    }
+
+    @Test
+    void next_Block_ShouldContinueAfterSingleIds() {
+        TimeOrderedIds ids = new TimeOrderedIds(1, () -> NOW);
+        long first = ids.next();
+        long[] block = new long[600];
+
+        ids.next(block);
+
+        assertTrue(block[0] > first);
+        for (int i = 1; i < block.length; i++) {
+            assertTrue(block[i] > block[i - 1]);
+        }
+        assertTrue(ids.next() > block[block.length - 1]);
+    }
+
+    @Test
+    void next_ShouldFitJavaScriptNumbersAndKeepTime() {
+        long id = new TimeOrderedIds(TimeOrderedIds.MAX_NODE).next();
+
+        assertTrue(id > 0 && id < 1L << 53);
+        assertEquals(TimeOrderedIds.MAX_NODE, TimeOrderedIds.node(id));
+        assertTrue(Math.abs(TimeOrderedIds.timestamp(id) - System.currentTimeMillis()) < 60_000);
+    }
+
+    @Test
+    void constructor_WithNodeOutOfRange_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIds(-1));
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIds(TimeOrderedIds.MAX_NODE + 1));
+    }
+
+    @Test
+    void next_OnAllNodesFromManyThreads_ShouldNotCollide() throws Exception {
+        // у всех узлов одни и те же миллисекунды с дрожанием назад и вперёд, номера в миллисекунде кончаются сразу
+        LongSupplier clock = () -> NOW + ThreadLocalRandom.current().nextInt(-3, 4);
+        int nodes = TimeOrderedIds.MAX_NODE + 1;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int node = 0; node < nodes; node++) {
+            TimeOrderedIds ids = new TimeOrderedIds(node, clock);
+            for (int t = 0; t < THREADS_PER_NODE; t++) {
+                boolean blocks = t % 2 == 1;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    long[] generated = new long[IDS_PER_THREAD];
+                    long[] block = new long[50];
+                    for (int i = 0; i < IDS_PER_THREAD; ) {
+                        if (blocks) {
+                            ids.next(block);
+                            int n = Math.min(block.length, IDS_PER_THREAD - i);
+                            System.arraycopy(block, 0, generated, i, n);
+                            i += n;
+                        } else {
+                            generated[i++] = ids.next();
+                        }
+                    }
+                    return generated;
+                }));
+            }
+        }
+        start.countDown();
+
+        long[] all = new long[futures.size() * IDS_PER_THREAD];
+        for (int f = 0; f < futures.size(); f++) {
+            long[] generated = futures.get(f).get();
+            int node = f / THREADS_PER_NODE;
+            for (int i = 0; i < generated.length; i++) {
+                assertEquals(node, TimeOrderedIds.node(generated[i]));
+                if (i > 0) {
+                    assertTrue(generated[i] > generated[i - 1], "ids of a thread must grow");
+                }
+            }
+            System.arraycopy(generated, 0, all, f * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertTrue(all[i] > all[i - 1], "duplicate id");
+        }
+    }
+}
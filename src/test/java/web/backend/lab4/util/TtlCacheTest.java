@@ -0,0 +1,62 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TtlCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void get_ShouldLoadOnceUntilExpired() {
+        TtlCache<String, Integer> cache = new TtlCache<>(10, 100, now::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals(1, cache.get("a", key -> loads.incrementAndGet()));
+        now.set(99);
+        assertEquals(1, cache.get("a", key -> loads.incrementAndGet()));
+        now.set(100);
+        assertEquals(2, cache.get("a", key -> loads.incrementAndGet()));
+    }
+
+    @Test
+    void get_WhenNothingFound_ShouldNotCacheTheMiss() {
+        TtlCache<String, Integer> cache = new TtlCache<>(10, 100, now::get);
+
+        assertNull(cache.get("a", key -> null));
+        assertEquals(1, cache.get("a", key -> 1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void invalidate_ShouldDropTheEntryAndALoadInProgress() {
+        TtlCache<String, Integer> cache = new TtlCache<>(10, 100, now::get);
+        cache.get("a", key -> 1);
+        cache.invalidate("a");
+        assertEquals(2, cache.get("a", key -> 2));
+
+        // значение, загруженное до invalidate, могло устареть
+        assertEquals(3, cache.get("b", key -> {
+            cache.invalidate("b");
+            return 3;
+        }));
+        assertEquals(4, cache.get("b", key -> 4));
+    }
+
+    @Test
+    void get_WhenFull_ShouldEvictLeastRecentlyUsed() {
+        TtlCache<String, Integer> cache = new TtlCache<>(2, 100, now::get);
+        cache.get("a", key -> 1);
+        cache.get("b", key -> 2);
+        cache.get("a", key -> fail("must be cached"));
+        cache.get("c", key -> 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.get("a", key -> fail("must be cached")));
+        assertEquals(30, cache.get("b", key -> 30));
+    }
+}
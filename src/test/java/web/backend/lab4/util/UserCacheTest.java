@@ -0,0 +1,140 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    @Test
+    void get_ShouldLoadOnceAndApplyUpdates() {
+        UserCache<List<Integer>> cache = new UserCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(1L, () -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(List.of(1));
+        });
+        cache.update(1L, list -> list.add(2));
+        cache.update(2L, list -> list.add(3));
+
+        assertEquals(List.of(1, 2), cache.get(1L, () -> fail("must not load again")));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void get_WhenUpdatedDuringLoad_ShouldApplyTheUpdateAndCache() {
+        UserCache<List<Integer>> cache = new UserCache<>(10);
+
+        List<Integer> loaded = cache.get(1L, () -> {
+            // обновление, пришедшее во время загрузки, в неё не попало
+            cache.update(1L, list -> list.add(2));
+            return new ArrayList<>(List.of(1));
+        });
+
+        assertEquals(List.of(1, 2), loaded);
+        assertSame(loaded, cache.get(1L, () -> fail("must be cached")));
+    }
+
+    @Test
+    void get_FromManyThreads_ShouldLoadOnce() throws Exception {
+        UserCache<String> cache = new UserCache<>(10);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<String> first = executor.submit(() -> cache.get(1L, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "loaded";
+            }));
+            loading.await();
+            List<Future<String>> others = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                others.add(executor.submit(() -> cache.get(1L, () -> "loaded again")));
+            }
+            release.countDown();
+
+            assertEquals("loaded", first.get());
+            for (Future<String> other : others) {
+                assertEquals("loaded", other.get());
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void get_WhenLoadFails_ShouldLoadAgainNextTime() {
+        UserCache<String> cache = new UserCache<>(10);
+
+        assertThrows(IllegalStateException.class, () -> cache.get(1L, () -> {
+            throw new IllegalStateException("database is down");
+        }));
+
+        assertEquals("loaded", cache.get(1L, () -> "loaded"));
+    }
+
+    @Test
+    void get_WhenFull_ShouldEvictLeastRecentlyUsed() {
+        UserCache<String> cache = new UserCache<>(2);
+        cache.get(1L, () -> "first");
+        cache.get(2L, () -> "second");
+        cache.get(1L, () -> fail("must be cached"));
+
+        cache.get(3L, () -> "third");
+
+        assertEquals(2, cache.size());
+        assertEquals("first", cache.get(1L, () -> fail("must be cached")));
+        assertEquals("second again", cache.get(2L, () -> "second again"));
+    }
+
+    @Test
+    void update_WhenValuesGrowPastTheWeight_ShouldEvictLeastRecentlyUsed() {
+        UserCache<List<Integer>> cache = new UserCache<>(10, 5, List::size);
+        cache.get(1L, () -> new ArrayList<>(List.of(1, 2)));
+        cache.get(2L, () -> new ArrayList<>(List.of(1, 2)));
+        assertEquals(4, cache.weight());
+
+        cache.update(2L, list -> list.add(3));
+        cache.update(2L, list -> list.add(4));
+
+        assertNull(cache.getIfPresent(1L));
+        assertEquals(List.of(1, 2, 3, 4), cache.getIfPresent(2L));
+        assertEquals(4, cache.weight());
+        cache.invalidateAll();
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    void invalidate_ShouldDropOnlyThatUser() {
+        UserCache<String> cache = new UserCache<>(10);
+        cache.get(1L, () -> "first");
+        cache.get(2L, () -> "second");
+
+        cache.invalidate(1L);
+
+        assertNull(cache.getIfPresent(1L));
+        assertEquals("second", cache.getIfPresent(2L));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package web.backend.lab4.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindQueueTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void offer_SingleItem_ShouldBeWrittenWithoutWaitingForMore() throws InterruptedException {
+        CountDownLatch announced = new CountDownLatch(1);
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>(executor, 16, 10,
+                batch -> { }, batch -> announced.countDown(), (item, e) -> fail("lost " + item));
+
+        assertTrue(queue.offer(1));
+
+        assertTrue(announced.await(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.pending());
+    }
+
+    @Test
+    void offer_WhenWriterIsSlow_ShouldBatchAndRejectOverflow() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> announced = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>(executor, 8, 5, batch -> {
+            await(release);
+            batches.add(List.copyOf(batch));
+        }, announced::addAll, (item, e) -> fail("lost " + item));
+
+        // первая точка блокирует писателя, остальные копятся в буфере на 8 элементов
+        assertTrue(queue.offer(0));
+        waitUntil(() -> queue.pending() == 1 && batches.isEmpty());
+        int accepted = 1;
+        int rejected = 0;
+        for (int i = 1; i < 20; i++) {
+            if (queue.offer(i)) {
+                accepted++;
+            } else {
+                rejected++;
+            }
+        }
+        assertTrue(rejected > 0, "buffer must overflow");
+        release.countDown();
+
+        assertTrue(queue.close(5, TimeUnit.SECONDS));
+        assertEquals(accepted, announced.size());
+        assertEquals(0, queue.pending());
+        assertTrue(batches.stream().allMatch(batch -> batch.size() <= 5));
+        assertTrue(batches.size() < accepted, "items must be written in batches");
+        assertFalse(queue.offer(100));
+    }
+
+    @Test
+    void write_WhenOneItemFails_ShouldKeepTheOthers() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> announced = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> lost = Collections.synchronizedList(new ArrayList<>());
+        WriteBehindQueue<Integer> queue = new WriteBehindQueue<>(executor, 16, 10, batch -> {
+            await(release);
+            if (batch.contains(3)) {
+                throw new IllegalStateException("bad row");
+            }
+        }, announced::addAll, (item, e) -> lost.add(item));
+
+        for (int i = 0; i < 6; i++) {
+            assertTrue(queue.offer(i));
+        }
+        release.countDown();
+
+        assertTrue(queue.close(10, TimeUnit.SECONDS));
+        assertEquals(List.of(3), lost);
+        List<Integer> sorted = new ArrayList<>(announced);
+        Collections.sort(sorted);
+        assertEquals(List.of(0, 1, 2, 4, 5), sorted);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+}